@@ -0,0 +1,109 @@
+package org.folio.tlib.benchmarks;
+
+import io.vertx.sqlclient.Tuple;
+import java.util.concurrent.TimeUnit;
+import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldBoolean;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldTimestamp;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.z3950.zing.cql.CQLRelation;
+import org.z3950.zing.cql.CQLTermNode;
+
+/**
+ * Translation of a single CQL term by each of the field types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PgCqlFieldBenchmark {
+
+  @Param({"alwaysMatches", "text", "textLike", "fullText", "number", "boolean", "uuid",
+      "timestamp"})
+  String field;
+
+  PgCqlFieldType type;
+  CQLTermNode termNode;
+
+  /**
+   * Create field type and term for it.
+   */
+  @Setup
+  public void setup() {
+    String relation = "==";
+    String term;
+    switch (field) {
+      case "alwaysMatches" -> {
+        type = new PgCqlFieldAlwaysMatches();
+        relation = "=";
+        term = "";
+      }
+      case "text" -> {
+        type = new PgCqlFieldText().withExact();
+        term = "The Hitchhiker's Guide to the Galaxy";
+      }
+      case "textLike" -> {
+        type = new PgCqlFieldText().withLikeOps();
+        term = "The Hitchhiker's Guide * Galaxy 100%?";
+      }
+      case "fullText" -> {
+        type = new PgCqlFieldText().withFullText();
+        relation = "all";
+        term = "hitchhiker galaxy";
+      }
+      case "number" -> {
+        type = new PgCqlFieldNumber();
+        relation = ">=";
+        term = "42";
+      }
+      case "boolean" -> {
+        type = new PgCqlFieldBoolean();
+        relation = "=";
+        term = "true";
+      }
+      case "uuid" -> {
+        type = new PgCqlFieldUuid();
+        relation = "=";
+        term = "6b4ae089-e1ee-431f-af83-e1133f8e3da0";
+      }
+      case "timestamp" -> {
+        type = new PgCqlFieldTimestamp();
+        relation = "<";
+        term = "2024-02-03T04:05:06";
+      }
+      default -> throw new IllegalArgumentException(field);
+    }
+    type.withColumn(field.toLowerCase());
+    termNode = new CQLTermNode(field, new CQLRelation(relation), term);
+  }
+
+  @Benchmark
+  public String inline() {
+    return type.handleTermNode(termNode);
+  }
+
+  /**
+   * Term as bind parameter.
+   */
+  @Benchmark
+  public String parameter() {
+    Tuple tuple = Tuple.tuple();
+    return type.handleTermNode(termNode, tuple);
+  }
+}
@@ -0,0 +1,153 @@
+package org.folio.tlib.benchmarks;
+
+import io.vertx.sqlclient.Tuple;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlQuery;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldBoolean;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldTimestamp;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CQL parsing and translation to SQL for a number of query shapes.
+ *
+ * <p>Queries are fixed, so results are comparable between runs. Where and ORDER BY clauses
+ * are saved in the query once computed, so each benchmark parses the query first; subtract
+ * {@link #parse()} to get the cost of the translation. Use <code>-prof gc</code> to get
+ * allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PgCqlQueryBenchmark {
+
+  @Param({"term", "nested", "uuidOr", "titleOr", "masked", "sorted"})
+  String shape;
+
+  String query;
+  PgCqlDefinition definition;
+  PgCqlDefinition cachedDefinition;
+  PgCqlDefinition frozenDefinition;
+
+  static PgCqlDefinition createDefinition() {
+    return PgCqlDefinition.create()
+        .addField("cql.allRecords", new PgCqlFieldAlwaysMatches())
+        .addField("title", new PgCqlFieldText().withFullText().withLikeOps())
+        .addField("isbn", new PgCqlFieldText().withExact())
+        .addField("id", new PgCqlFieldUuid())
+        .addField("cost", new PgCqlFieldNumber())
+        .addField("paid", new PgCqlFieldBoolean())
+        .addField("date", new PgCqlFieldTimestamp());
+  }
+
+  static String nested(int depth) {
+    if (depth == 0) {
+      return "cost>1";
+    }
+    String op = depth % 3 == 0 ? " not " : depth % 2 == 0 ? " and " : " or ";
+    return "(" + nested(depth - 1) + op + "isbn==v" + depth + ")";
+  }
+
+  static String uuidOr(int count) {
+    StringBuilder s = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        s.append(" or ");
+      }
+      s.append("id=").append(new UUID(0x1234L, i));
+    }
+    return s.toString();
+  }
+
+  static String titleOr(int count) {
+    StringBuilder s = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        s.append(" or ");
+      }
+      s.append("isbn==\"Title number ").append(i).append(i % 10 == 0 ? "'s\"" : "\"");
+    }
+    return s.toString();
+  }
+
+  /**
+   * Create query and definitions.
+   */
+  @Setup
+  public void setup() {
+    query = switch (shape) {
+      case "term" -> "title=value";
+      case "nested" -> nested(32);
+      case "uuidOr" -> uuidOr(100);
+      case "titleOr" -> titleOr(500);
+      case "masked" -> "title==\"*ab?c*\" or title==\"x\\\\*y*\" or title<>\"50%*\"";
+      case "sorted" ->
+          "cost>5 and paid=true and date>=2024-01-01 sortby title/sort.descending cost";
+      default -> throw new IllegalArgumentException(shape);
+    };
+    definition = createDefinition();
+    cachedDefinition = createDefinition().withCache(10);
+    frozenDefinition = createDefinition().freeze();
+  }
+
+  @Benchmark
+  public PgCqlQuery parse() {
+    return definition.parse(query);
+  }
+
+  /**
+   * Parse with a second query, such as a filter, combined with AND; should cost about
+   * the same as {@link #parse()} plus a parse of the filter.
+   */
+  @Benchmark
+  public PgCqlQuery parseQ2() {
+    return definition.parse(query, "paid=true");
+  }
+
+  @Benchmark
+  public String where() {
+    return definition.parse(query).getWhereClause();
+  }
+
+  /**
+   * Where clause with bind parameters.
+   */
+  @Benchmark
+  public String whereParameters() {
+    Tuple tuple = Tuple.tuple();
+    return definition.parse(query).getWhereClause(tuple);
+  }
+
+  @Benchmark
+  public String orderBy() {
+    return definition.parse(query).getOrderByClause();
+  }
+
+  @Benchmark
+  public String frozenWhere() {
+    return frozenDefinition.parse(query).getWhereClause();
+  }
+
+  @Benchmark
+  public String cachedWhere() {
+    return cachedDefinition.parse(query).getWhereClause();
+  }
+}
@@ -0,0 +1,77 @@
+package org.folio.tlib.benchmarks;
+
+import io.vertx.core.Vertx;
+import java.util.concurrent.TimeUnit;
+import org.folio.tlib.postgres.TenantPgPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting a {@link TenantPgPool} for a tenant, as done per request.
+ *
+ * <p>No database is needed; the pool does not connect until used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TenantPgPoolBenchmark {
+
+  Vertx vertx;
+  TenantPgPool keepOpen;
+
+  /**
+   * Start Vert.x and keep a pool open, so the shared pool is not closed between calls.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    vertx = Vertx.vertx();
+    TenantPgPool.setModule("mod-benchmark");
+    TenantPgPool.setMaxPoolSize("5");
+    keepOpen = TenantPgPool.pool(vertx, "diku");
+  }
+
+  /**
+   * Close pools and Vert.x.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    TenantPgPool.closeAll()
+        .compose(x -> vertx.close())
+        .await();
+  }
+
+  /**
+   * Options built from the environment on every call; the saved options are discarded
+   * by the setter first. This is what every call did before options were saved.
+   */
+  @Benchmark
+  public TenantPgPool uncached() {
+    TenantPgPool.setMaxPoolSize("5");
+    TenantPgPool pool = TenantPgPool.pool(vertx, "diku");
+    pool.close();
+    return pool;
+  }
+
+  /**
+   * Saved options: a map lookup and a reference to the shared pool.
+   */
+  @Benchmark
+  public TenantPgPool cached() {
+    TenantPgPool pool = TenantPgPool.pool(vertx, "diku");
+    pool.close();
+    return pool;
+  }
+}
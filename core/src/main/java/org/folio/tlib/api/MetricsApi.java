@@ -0,0 +1,45 @@
+package org.folio.tlib.api;
+
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.Router;
+import org.folio.tlib.RouterCreator;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * Implements {@code GET /admin/metrics} in the Prometheus text format.
+ *
+ * <p>The registry is set as the registry of {@link TenantPgPool} when the router is created.
+ */
+public class MetricsApi implements RouterCreator {
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final PrometheusMeterRegistry registry;
+
+  public MetricsApi() {
+    this(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+  }
+
+  public MetricsApi(PrometheusMeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  public PrometheusMeterRegistry getRegistry() {
+    return registry;
+  }
+
+  @Override
+  public Future<Router> createRouter(Vertx vertx) {
+    TenantPgPool.setMeterRegistry(registry);
+    Router router = Router.router(vertx);
+    router.route(HttpMethod.GET, "/admin/metrics").handler(ctx -> {
+      ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, CONTENT_TYPE);
+      ctx.response().end(registry.scrape());
+    });
+    return Future.succeededFuture(router);
+  }
+}
@@ -0,0 +1,197 @@
+package org.folio.tlib.api;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.VerticleBase;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.folio.tlib.RouterCreator;
+import org.folio.tlib.postgres.PgPoolHealth;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * Implements {@code GET /admin/health/live} and {@code GET /admin/health/ready}.
+ *
+ * <p>Liveness does not touch the database. Readiness returns the cached health of
+ * {@link TenantPgPool#getPoolHealth()}, which is refreshed by a timer, so that a probe of
+ * the orchestrator never waits for the database. A pool is not ready if its last check
+ * failed, took longer than the maximum latency, or waited longer than the maximum wait for a
+ * connection, as it does when all connections are in use.
+ *
+ * <p>There is one timer per Vert.x instance, however many verticles mount the API. It runs
+ * in a verticle of its own, which is undeployed when it finds that the verticles that
+ * mounted the API have all been undeployed.
+ */
+public class PgHealthApi implements RouterCreator {
+  static final long DEFAULT_PROBE_INTERVAL_MS = 10000;
+  static final long DEFAULT_MAX_LATENCY_MS = 1000;
+  static final long DEFAULT_MAX_WAIT_MS = 100;
+
+  /**
+   * Verticle with the timer that checks the pools.
+   */
+  static final class ProbeTimer extends VerticleBase {
+    private final long intervalMs;
+    /** Deployment of each mount of the API; null if not mounted by a verticle. */
+    final List<String> users = new ArrayList<>();
+    /**
+     * Deployments of users seen listed by Vert.x; as a deployment is only listed once it has
+     * completed, a user that is still deploying is not taken for undeployed.
+     */
+    private final Set<String> deployed = new HashSet<>();
+
+    ProbeTimer(long intervalMs) {
+      this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public Future<?> start() {
+      TenantPgPool.probePools();
+      // cancelled when this verticle is undeployed
+      vertx.setPeriodic(intervalMs, id -> probe());
+      return Future.succeededFuture();
+    }
+
+    @Override
+    public Future<?> stop() {
+      synchronized (timers) {
+        timers.remove(vertx, this);
+      }
+      return Future.succeededFuture();
+    }
+
+    private void probe() {
+      boolean used;
+      synchronized (timers) {
+        Set<String> ids = vertx.deploymentIDs();
+        for (String user : users) {
+          if (user != null && ids.contains(user)) {
+            deployed.add(user);
+          }
+        }
+        users.removeIf(user -> deployed.contains(user) && !ids.contains(user));
+        deployed.retainAll(ids);
+        used = !users.isEmpty();
+        if (!used) {
+          timers.remove(vertx, this);
+        }
+      }
+      if (used) {
+        TenantPgPool.probePools();
+      } else {
+        vertx.undeploy(deploymentID());
+      }
+    }
+  }
+
+  /** Timers that check the pools, by Vert.x instance. */
+  static final Map<Vertx, ProbeTimer> timers = new HashMap<>();
+
+  private final long probeIntervalMs;
+  private final long maxLatencyMs;
+  private final long maxWaitMs;
+
+  public PgHealthApi() {
+    this(DEFAULT_PROBE_INTERVAL_MS, DEFAULT_MAX_LATENCY_MS);
+  }
+
+  /**
+   * Create health API.
+   *
+   * @param probeIntervalMs milliseconds between checks of the pools
+   * @param maxLatencyMs maximum milliseconds a check may take for the pool to be ready
+   */
+  public PgHealthApi(long probeIntervalMs, long maxLatencyMs) {
+    this(probeIntervalMs, maxLatencyMs, DEFAULT_MAX_WAIT_MS);
+  }
+
+  /**
+   * Create health API.
+   *
+   * @param probeIntervalMs milliseconds between checks of the pools; the interval of the
+   *     first API mounted on a Vert.x instance is used
+   * @param maxLatencyMs maximum milliseconds a check may take for the pool to be ready
+   * @param maxWaitMs maximum milliseconds a check may wait for a connection for the pool to
+   *     be ready
+   */
+  public PgHealthApi(long probeIntervalMs, long maxLatencyMs, long maxWaitMs) {
+    this.probeIntervalMs = probeIntervalMs;
+    this.maxLatencyMs = maxLatencyMs;
+    this.maxWaitMs = maxWaitMs;
+  }
+
+  boolean isReady(PgPoolHealth health) {
+    return health.error() == null
+        && health.latencyMillis() <= maxLatencyMs
+        && health.waitMillis() <= maxWaitMs;
+  }
+
+  JsonObject readiness(List<PgPoolHealth> healthList) {
+    boolean ready = true;
+    JsonArray pools = new JsonArray();
+    for (PgPoolHealth health : healthList) {
+      boolean poolReady = isReady(health);
+      ready = ready && poolReady;
+      pools.add(health.toJson().put("ready", poolReady));
+    }
+    return new JsonObject().put("ready", ready).put("pools", pools);
+  }
+
+  @Override
+  public Future<Router> createRouter(Vertx vertx) {
+    return startProbes(vertx, probeIntervalMs).map(x -> router(vertx));
+  }
+
+  private Router router(Vertx vertx) {
+    Router router = Router.router(vertx);
+    router.route(HttpMethod.GET, "/admin/health/live").handler(ctx -> {
+      ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, "text/plain");
+      ctx.response().end("OK");
+    });
+    router.route(HttpMethod.GET, "/admin/health/ready").handler(ctx -> {
+      JsonObject readiness = readiness(TenantPgPool.getPoolHealth());
+      ctx.response().setStatusCode(readiness.getBoolean("ready") ? 200 : 503);
+      ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      ctx.response().end(readiness.encode());
+    });
+    return router;
+  }
+
+  /**
+   * Start the timer that checks the pools, unless running for the Vert.x instance.
+   *
+   * <p>The timer is deployed as a verticle of its own, so that it outlives the verticle
+   * that started it. It is undeployed when the calling verticle, and all others that called
+   * this, are undeployed; or when Vert.x is closed, if not called from a verticle.
+   */
+  static Future<Void> startProbes(Vertx vertx, long intervalMs) {
+    Context context = Vertx.currentContext();
+    String user = context == null ? null : context.deploymentID();
+    ProbeTimer timer = new ProbeTimer(intervalMs);
+    synchronized (timers) {
+      ProbeTimer running = timers.putIfAbsent(vertx, timer);
+      if (running != null) {
+        running.users.add(user);
+        return Future.succeededFuture();
+      }
+      timer.users.add(user);
+    }
+    return vertx.deployVerticle(timer)
+        .onFailure(e -> {
+          synchronized (timers) {
+            timers.remove(vertx, timer);
+          }
+        })
+        .mapEmpty();
+  }
+}
@@ -0,0 +1,53 @@
+package org.folio.tlib.api;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import org.folio.tlib.RouterCreator;
+import org.folio.tlib.postgres.PgPoolStats;
+import org.folio.tlib.postgres.PgQueryStats;
+import org.folio.tlib.postgres.PgTenantQueueStats;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * Implements {@code GET /admin/pg-stats} and {@code DELETE /admin/pg-stats}.
+ *
+ * <p>Returns, or clears, the query statistics of {@link TenantPgPool#getQueryStats()}. GET
+ * also returns the pool statistics of {@link TenantPgPool#getPoolStats()} and
+ * {@link TenantPgPool#getTenantQueueStats()}.
+ */
+public class PgStatsApi implements RouterCreator {
+  @Override
+  public Future<Router> createRouter(Vertx vertx) {
+    Router router = Router.router(vertx);
+    router.route(HttpMethod.GET, "/admin/pg-stats").handler(ctx -> {
+      JsonArray queries = new JsonArray();
+      for (PgQueryStats stats : TenantPgPool.getQueryStats()) {
+        queries.add(stats.toJson());
+      }
+      JsonArray pools = new JsonArray();
+      for (PgPoolStats stats : TenantPgPool.getPoolStats()) {
+        pools.add(stats.toJson());
+      }
+      JsonArray tenantQueues = new JsonArray();
+      for (PgTenantQueueStats stats : TenantPgPool.getTenantQueueStats()) {
+        tenantQueues.add(stats.toJson());
+      }
+      ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+      ctx.response().end(new JsonObject()
+          .put("queries", queries)
+          .put("pools", pools)
+          .put("tenantQueues", tenantQueues)
+          .encode());
+    });
+    router.route(HttpMethod.DELETE, "/admin/pg-stats").handler(ctx -> {
+      TenantPgPool.clearQueryStats();
+      ctx.response().setStatusCode(204).end();
+    });
+    return Future.succeededFuture(router);
+  }
+}
@@ -3,6 +3,7 @@ package org.folio.tlib.api;
 import static org.folio.tlib.util.BooleanUtils.isTrue;
 
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
@@ -13,12 +14,13 @@ import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.openapi.router.RouterBuilder;
 import io.vertx.openapi.contract.OpenAPIContract;
 import io.vertx.openapi.validation.ValidatedRequest;
+import io.vertx.pgclient.pubsub.PgSubscriber;
 import io.vertx.sqlclient.Tuple;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.tlib.RouterCreator;
@@ -34,12 +36,39 @@ import org.folio.tlib.util.TenantUtil;
 public class Tenant2Api implements RouterCreator {
   private static final Logger log = LogManager.getLogger(Tenant2Api.class);
 
-  private final Map<UUID, List<Promise<Void>>> waiters = new HashMap<>();
+  /** Channel on which the id of a job is notified when the job completes. */
+  static final String JOB_CHANNEL = "folio_tenant_job";
+
+  private record Waiter(Context context, Promise<Void> promise) {
+  }
+
+  private final ConcurrentMap<UUID, List<Waiter>> waiters = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<PgSubscriber, Future<Void>> channels = new ConcurrentHashMap<>();
 
   private final TenantInitHooks hooks;
 
+  private final TenantInitScheduler scheduler;
+
+  /**
+   * Create tenant API with the default scheduler.
+   *
+   * @param hooks tenant init hooks
+   * @see TenantInitScheduler#getDefault()
+   */
   public Tenant2Api(TenantInitHooks hooks) {
+    this(hooks, TenantInitScheduler.getDefault());
+  }
+
+  /**
+   * Create tenant API.
+   *
+   * @param hooks tenant init hooks
+   * @param scheduler runs the postInit jobs
+   */
+  public Tenant2Api(TenantInitHooks hooks, TenantInitScheduler scheduler) {
     this.hooks = hooks;
+    this.scheduler = scheduler;
   }
 
   static void failHandler(RoutingContext ctx, int code, String msg) {
@@ -72,10 +101,10 @@ public class Tenant2Api implements RouterCreator {
     }
   }
 
-  private void runAsync(TenantInitConf tenantInitConf, JsonObject tenantJob) {
+  private Future<Void> runJob(TenantInitConf tenantInitConf, JsonObject tenantJob) {
     UUID jobId = UUID.fromString(tenantJob.getString("id"));
-    hooks.postInit(tenantInitConf)
-        .onComplete(x -> {
+    return hooks.postInit(tenantInitConf)
+        .transform(x -> {
           tenantJob.put("complete", true);
           if (x.failed()) {
             String msg = x.cause().getMessage();
@@ -84,32 +113,61 @@ public class Tenant2Api implements RouterCreator {
             }
             tenantJob.put("error", msg);
           }
-          updateJob(tenantInitConf.vertx(), tenantJob)
-              .onComplete(y -> {
-                List<Promise<Void>> promises = waiters.remove(jobId);
-                if (promises != null) {
-                  for (Promise<Void> promise : promises) {
-                    promise.tryComplete();
-                  }
-                }
-              });
+          return updateJob(tenantInitConf.vertx(), tenantJob)
+              .onComplete(y -> wakeWaiters(jobId));
         });
   }
 
+  /**
+   * Add the queue position to a job that is waiting to run in this instance.
+   */
+  private JsonObject withQueuePosition(JsonObject tenantJob) {
+    if (tenantJob == null) {
+      return null;
+    }
+    int position = scheduler.getQueuePosition(UUID.fromString(tenantJob.getString("id")));
+    if (position == 0) {
+      return tenantJob;
+    }
+    return tenantJob.copy().put("queuePosition", position);
+  }
+
   private Future<JsonObject> createJob(TenantInitConf tenantInitConf) {
     var vertx = tenantInitConf.vertx();
     var tenant = tenantInitConf.tenant();
     var tenantAttributes = tenantInitConf.tenantAttributes();
     log.info("postTenant got {}", tenantAttributes::encode);
     TenantPgPool tenantPgPool = TenantPgPool.pool(vertx, tenant);
+    // one request of the tenant at a time, so that an identical request finds the job
+    return scheduler.runExclusive(tenant, () -> {
+      if (!isTrue(tenantAttributes.getBoolean("purge"))) {
+        UUID existing = scheduler.findJob(tenant, tenantAttributes);
+        if (existing != null) {
+          log.info("postTenant {} is already pending as job {}", tenant, existing);
+          return getJob(vertx, tenant, existing, 0)
+              .compose(tenantJob -> tenantJob != null
+                  ? Future.succeededFuture(tenantJob)
+                  : createNewJob(tenantInitConf, tenantPgPool));
+        }
+      }
+      return createNewJob(tenantInitConf, tenantPgPool);
+    });
+  }
+
+  private Future<JsonObject> createNewJob(TenantInitConf tenantInitConf,
+      TenantPgPool tenantPgPool) {
+
+    var vertx = tenantInitConf.vertx();
+    var tenant = tenantInitConf.tenant();
+    var tenantAttributes = tenantInitConf.tenantAttributes();
     String schema = tenantPgPool.getSchema();
     return hooks.preInit(tenantInitConf)
         .compose(res -> {
           if (isTrue(tenantAttributes.getBoolean("purge"))) {
-            return tenantPgPool.execute(List.of(
+            return tenantPgPool.executeBatch(List.of(
                 "DROP SCHEMA IF EXISTS " + schema + " CASCADE",
                 "DROP ROLE IF EXISTS " + schema
-            )).map((JsonObject) null);
+            ), true).map((JsonObject) null);
           }
           return tenantPgPool.query("SELECT EXISTS(SELECT 1 FROM pg_namespace WHERE"
               + " nspname = '" + schema + "')")
@@ -119,12 +177,12 @@ public class Tenant2Api implements RouterCreator {
                 if (isTrue(exists)) {
                   return Future.succeededFuture();
                 }
-                return tenantPgPool.execute(List.of(
+                return tenantPgPool.executeBatch(List.of(
                     "CREATE ROLE " + schema + " PASSWORD 'tenant'"
                         + " NOSUPERUSER NOCREATEDB INHERIT LOGIN",
                     "GRANT " + schema + " TO CURRENT_USER",
                     "CREATE SCHEMA " + schema + " AUTHORIZATION " + schema
-                ));
+                ), true).mapEmpty();
               })
               .compose(res1 ->
                   tenantPgPool.query("CREATE TABLE IF NOT EXISTS " + schema + ".job "
@@ -137,31 +195,96 @@ public class Tenant2Api implements RouterCreator {
                 tenantJob.put("complete", false);
                 tenantJob.put("tenant", tenant);
                 tenantJob.put("tenantAttributes", tenantAttributes);
+                UUID jobId = UUID.fromString(tenantJob.getString("id"));
                 return saveJob(vertx, tenantJob)
-                    .onSuccess(x -> runAsync(tenantInitConf, tenantJob))
+                    .onSuccess(x -> scheduler.submit(jobId, tenant, tenantAttributes,
+                        () -> runJob(tenantInitConf, tenantJob)))
                     .map(tenantJob);
               });
         });
   }
 
+  private void wakeWaiters(UUID jobId) {
+    List<Waiter> list = waiters.remove(jobId);
+    if (list != null) {
+      for (Waiter waiter : list) {
+        waiter.context().runOnContext(x -> waiter.promise().tryComplete());
+      }
+    }
+  }
+
+  private void removeWaiter(UUID jobId, Waiter waiter) {
+    waiters.computeIfPresent(jobId, (id, list) -> {
+      list.remove(waiter);
+      return list.isEmpty() ? null : list;
+    });
+  }
+
+  /**
+   * Listen for job completion on the database of the pool.
+   *
+   * <p>Jobs may be run by another instance of the module, which notifies
+   * {@value JOB_CHANNEL} when a job completes. If listening fails, waiters rely on the
+   * timeout only.
+   */
+  private Future<Void> listen(TenantPgPool tenantPgPool) {
+    return tenantPgPool.getSubscriber()
+        .compose(subscriber -> {
+          Future<Void> future = channels.computeIfAbsent(subscriber, s -> {
+            Promise<Void> promise = Promise.promise();
+            s.channel(JOB_CHANNEL)
+                .subscribeHandler(x -> promise.tryComplete())
+                .exceptionHandler(promise::tryFail)
+                .handler(payload -> {
+                  try {
+                    wakeWaiters(UUID.fromString(payload));
+                  } catch (IllegalArgumentException e) {
+                    log.warn("Bad {} payload: {}", JOB_CHANNEL, payload);
+                  }
+                });
+            return promise.future();
+          });
+          return future.onFailure(e -> channels.remove(subscriber, future));
+        })
+        .recover(e -> {
+          log.warn("LISTEN {} failed: {}", JOB_CHANNEL, e.getMessage());
+          return Future.succeededFuture();
+        });
+  }
+
   private Future<JsonObject> getJob(Vertx vertx, String tenant, UUID jobId, long msToWait) {
     TenantPgPool tenantPgPool = TenantPgPool.pool(vertx, tenant);
+    if (msToWait <= 0) {
+      return selectJob(tenantPgPool, jobId);
+    }
+    // register before reading the job, so that a completion in between is not missed
+    Waiter waiter = new Waiter(vertx.getOrCreateContext(), Promise.promise());
+    waiters.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>()).add(waiter);
+    return listen(tenantPgPool)
+        .compose(x -> selectJob(tenantPgPool, jobId))
+        .compose(tenantJob -> {
+          if (tenantJob == null || Boolean.TRUE.equals(tenantJob.getBoolean("complete"))) {
+            return Future.succeededFuture(tenantJob);
+          }
+          long timer = vertx.setTimer(msToWait, x -> waiter.promise().tryComplete());
+          return waiter.promise().future()
+              .compose(x -> {
+                vertx.cancelTimer(timer);
+                return selectJob(tenantPgPool, jobId);
+              });
+        })
+        .onComplete(x -> removeWaiter(jobId, waiter));
+  }
+
+  private static Future<JsonObject> selectJob(TenantPgPool tenantPgPool, UUID jobId) {
     return tenantPgPool.preparedQuery("SELECT jsonb FROM "
             + tenantPgPool.getSchema() + ".job WHERE ID = $1")
         .execute(Tuple.of(jobId))
-        .compose(res -> {
+        .map(res -> {
           if (!res.iterator().hasNext()) {
-            return Future.succeededFuture(null);
+            return null;
           }
-          JsonObject tenantJob = res.iterator().next().getJsonObject(0);
-          if (msToWait > 0 && !Boolean.TRUE.equals(tenantJob.getBoolean("complete"))) {
-            Promise<Void> promise = Promise.promise();
-            waiters.putIfAbsent(jobId, new LinkedList<>());
-            waiters.get(jobId).add(promise);
-            vertx.setTimer(msToWait, res1 -> promise.tryComplete());
-            return promise.future().compose(res1 -> getJob(vertx, tenant, jobId, 0));
-          }
-          return Future.succeededFuture(tenantJob);
+          return res.iterator().next().getJsonObject(0);
         });
   }
 
@@ -178,8 +301,10 @@ public class Tenant2Api implements RouterCreator {
     UUID jobId = UUID.fromString(tenantJob.getString("id"));
     TenantPgPool tenantPgPool = TenantPgPool.pool(vertx, tenant);
     String schema = tenantPgPool.getSchema();
-    return tenantPgPool.preparedQuery("UPDATE " + schema + ".job SET jsonb = $2 WHERE id = $1")
-        .execute(Tuple.of(jobId, tenantJob)).mapEmpty();
+    // the notification is delivered when the update commits
+    return tenantPgPool.preparedQuery("WITH job AS (UPDATE " + schema + ".job SET jsonb = $2"
+            + " WHERE id = $1 RETURNING id) SELECT pg_notify($3, id::text) FROM job")
+        .execute(Tuple.of(jobId, tenantJob, JOB_CHANNEL)).mapEmpty();
   }
 
   private static Future<Void> saveJob(Vertx vertx, JsonObject tenantJob) {
@@ -203,6 +328,7 @@ public class Tenant2Api implements RouterCreator {
           var tenantInitConf = new TenantInitConf(vertx, ctx.request().headers(), tenantAttributes);
 
           createJob(tenantInitConf)
+              .map(this::withQueuePosition)
               .onSuccess(tenantJob -> {
                 if (tenantJob == null) {
                   ctx.response().setStatusCode(204);
@@ -235,6 +361,7 @@ public class Tenant2Api implements RouterCreator {
           long wait = waitParameter.isEmpty() ? 0 : Long.parseLong(waitParameter.get(0));
           log.info("getTenantJob handler id={} wait={}", id, wait);
           getJob(vertx, tenant, UUID.fromString(id), wait)
+              .map(this::withQueuePosition)
               .onSuccess(res -> {
                 if (res == null) {
                   failHandler(ctx, 404, "Not found: " + id);
@@ -0,0 +1,213 @@
+package org.folio.tlib.api;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs tenant init jobs with a limit on how many run at the same time.
+ *
+ * <p>Jobs beyond the limit wait in a FIFO queue. A job that is identical to a queued or
+ * running job (same tenant and tenant attributes) can be found with {@link #findJob}, so
+ * that repeated requests do not run the same migration twice. Looking for a job and
+ * submitting a new one is made atomic by doing both in {@link #runExclusive}.
+ */
+public class TenantInitScheduler {
+  private static final Logger log = LogManager.getLogger(TenantInitScheduler.class);
+
+  static final int DEFAULT_MAX_RUNNING = Integer.MAX_VALUE;
+
+  private static TenantInitScheduler defaultScheduler;
+
+  private record Job(UUID id, String tenant, JsonObject tenantAttributes, Context context,
+      Supplier<Future<Void>> task) {
+  }
+
+  private final int maxRunning;
+  private final Deque<Job> queue = new ArrayDeque<>();
+  private final List<Job> running = new ArrayList<>();
+  private final Map<String, Future<?>> exclusive = new HashMap<>();
+
+  /**
+   * Create scheduler.
+   *
+   * @param maxRunning maximum number of jobs running at the same time
+   */
+  public TenantInitScheduler(int maxRunning) {
+    if (maxRunning < 1) {
+      throw new IllegalArgumentException("maxRunning must be at least 1: " + maxRunning);
+    }
+    this.maxRunning = maxRunning;
+  }
+
+  /**
+   * Return the scheduler shared by {@link Tenant2Api} instances by default.
+   *
+   * <p>The limit is taken from environment variable {@code TENANT_INIT_CONCURRENCY};
+   * there is no limit if not set.
+   *
+   * @return shared scheduler
+   */
+  public static synchronized TenantInitScheduler getDefault() {
+    if (defaultScheduler == null) {
+      String v = System.getenv("TENANT_INIT_CONCURRENCY");
+      defaultScheduler = new TenantInitScheduler(
+          v == null ? DEFAULT_MAX_RUNNING : Integer.parseInt(v));
+    }
+    return defaultScheduler;
+  }
+
+  public int getMaxRunning() {
+    return maxRunning;
+  }
+
+  /**
+   * Find a queued or running job.
+   *
+   * @param tenant tenant of the job
+   * @param tenantAttributes tenant attributes of the job
+   * @return id of the job; null if there is no such job
+   */
+  public synchronized UUID findJob(String tenant, JsonObject tenantAttributes) {
+    for (Job job : running) {
+      if (job.tenant().equals(tenant) && job.tenantAttributes().equals(tenantAttributes)) {
+        return job.id();
+      }
+    }
+    for (Job job : queue) {
+      if (job.tenant().equals(tenant) && job.tenantAttributes().equals(tenantAttributes)) {
+        return job.id();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Return the position of a job in the queue.
+   *
+   * @param id job identifier
+   * @return 1 for the next job to run, 2 for the one after that, ...; 0 if the job is not
+   *     queued (running, completed or unknown)
+   */
+  public synchronized int getQueuePosition(UUID id) {
+    int position = 1;
+    for (Job job : queue) {
+      if (job.id().equals(id)) {
+        return position;
+      }
+      position++;
+    }
+    return 0;
+  }
+
+  public synchronized int getQueued() {
+    return queue.size();
+  }
+
+  public synchronized int getRunning() {
+    return running.size();
+  }
+
+  /**
+   * Run a task after the tasks run earlier with this for the same tenant have completed.
+   *
+   * <p>The task is run on the context of the caller.
+   *
+   * @param tenant tenant the task is for
+   * @param task the task; the returned future must complete when the task is done
+   * @param <T> result type
+   * @return result of the task
+   */
+  public <T> Future<T> runExclusive(String tenant, Supplier<Future<T>> task) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      throw new IllegalStateException("runExclusive must be called on a Vert.x context");
+    }
+    Promise<T> promise = Promise.promise();
+    Future<?> previous;
+    synchronized (this) {
+      previous = exclusive.put(tenant, promise.future());
+    }
+    Future<?> after = previous == null ? Future.succeededFuture() : previous;
+    after.onComplete(x -> context.runOnContext(y -> {
+      Future<T> future;
+      try {
+        future = task.get();
+      } catch (Exception e) {
+        future = Future.failedFuture(e);
+      }
+      future.onComplete(z -> {
+        synchronized (this) {
+          exclusive.remove(tenant, promise.future());
+        }
+        promise.handle(z);
+      });
+    }));
+    return promise.future();
+  }
+
+  /**
+   * Submit job.
+   *
+   * <p>The task is run, on the context of the caller, when fewer than the maximum number of
+   * jobs are running and all jobs submitted earlier have been started.
+   *
+   * @param id job identifier
+   * @param tenant tenant of the job
+   * @param tenantAttributes tenant attributes of the job
+   * @param task the job; the returned future must complete when the job is done
+   */
+  public void submit(UUID id, String tenant, JsonObject tenantAttributes,
+      Supplier<Future<Void>> task) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      throw new IllegalStateException("submit must be called on a Vert.x context");
+    }
+    synchronized (this) {
+      queue.addLast(new Job(id, tenant, tenantAttributes.copy(), context, task));
+    }
+    startJobs();
+  }
+
+  private void startJobs() {
+    while (true) {
+      Job job;
+      synchronized (this) {
+        if (running.size() >= maxRunning || queue.isEmpty()) {
+          return;
+        }
+        job = queue.removeFirst();
+        running.add(job);
+      }
+      log.info("Starting tenant job {} for {}", job.id(), job.tenant());
+      job.context().runOnContext(x -> run(job));
+    }
+  }
+
+  private void run(Job job) {
+    Future<Void> future;
+    try {
+      future = job.task().get();
+    } catch (Exception e) {
+      future = Future.failedFuture(e);
+    }
+    future.onComplete(x -> {
+      synchronized (this) {
+        running.remove(job);
+      }
+      startJobs();
+    });
+  }
+}
@@ -0,0 +1,27 @@
+package org.folio.tlib.postgres;
+
+import java.util.List;
+
+/**
+ * Thrown when a statement of {@link TenantPgPool#executeBatch(List, boolean)} fails.
+ *
+ * <p>The cause is the failure of the first statement that failed.
+ */
+public class PgBatchException extends RuntimeException {
+  private final transient List<PgBatchResult> results;
+
+  /**
+   * Create exception for batch results.
+   *
+   * @param results results of the statements executed
+   * @param failed the first failed statement
+   */
+  public PgBatchException(List<PgBatchResult> results, PgBatchResult failed) {
+    super(failed.sql() + " FAIL: " + failed.cause().getMessage(), failed.cause());
+    this.results = results;
+  }
+
+  public List<PgBatchResult> getResults() {
+    return results;
+  }
+}
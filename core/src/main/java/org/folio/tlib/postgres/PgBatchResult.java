@@ -0,0 +1,19 @@
+package org.folio.tlib.postgres;
+
+import java.time.Duration;
+
+/**
+ * Outcome of one statement of {@link TenantPgPool#executeBatch}.
+ *
+ * @param sql the statement
+ * @param rowCount number of rows affected or returned; 0 if failed
+ * @param duration time from the completion of the previous statement (or the start of the
+ *     batch) to the completion of this statement
+ * @param cause failure; null if the statement succeeded
+ */
+public record PgBatchResult(String sql, int rowCount, Duration duration, Throwable cause) {
+
+  public boolean succeeded() {
+    return cause == null;
+  }
+}
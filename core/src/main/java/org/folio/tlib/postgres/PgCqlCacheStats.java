@@ -0,0 +1,13 @@
+package org.folio.tlib.postgres;
+
+/**
+ * Counters of the parsed query cache of a {@link PgCqlDefinition}.
+ *
+ * @param hits number of parse calls served from the cache
+ * @param misses number of parse calls that parsed the query
+ * @param evictions number of queries removed because the cache was full
+ * @param size number of queries in the cache
+ * @param maxSize maximum number of queries in the cache; 0 if cache is disabled
+ */
+public record PgCqlCacheStats(long hits, long misses, long evictions, int size, int maxSize) {
+}
@@ -0,0 +1,10 @@
+package org.folio.tlib.postgres;
+
+/**
+ * Number of rows that match a CQL query.
+ *
+ * @param count number of rows; at least the exact limit if not exact
+ * @param exact whether counted; false if estimated by the query planner
+ */
+public record PgCqlCount(long count, boolean exact) {
+}
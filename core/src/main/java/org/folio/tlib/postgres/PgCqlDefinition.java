@@ -1,5 +1,7 @@
 package org.folio.tlib.postgres;
 
+import io.vertx.core.Future;
+import java.util.List;
 import org.folio.tlib.postgres.impl.PgCqlDefinitionImpl;
 
 /**
@@ -15,9 +17,21 @@ public interface PgCqlDefinition {
    * Add supported field.
    *
    * @param field field.
+   * @throws IllegalStateException if the definition is frozen; see {@link #freeze()}.
    */
   PgCqlDefinition addField(String name, PgCqlFieldType field);
 
+  /**
+   * Freeze the fields.
+   *
+   * <p>The fields are put in an immutable table, so that a field is looked up for each
+   * term and sort key of a query without allocating. Call this once all fields are added,
+   * such as at startup; fields can not be added afterwards.</p>
+   *
+   * @return this definition
+   */
+  PgCqlDefinition freeze();
+
   /**
    * Get CQL field.
    *
@@ -26,6 +40,29 @@ public interface PgCqlDefinition {
    */
   PgCqlFieldType getFieldType(String name);
 
+  /**
+   * Enable cache of parsed queries.
+   *
+   * <p>A query string that was parsed before is not parsed again, and the SQL generated
+   * for it is shared with earlier parse results. Queries that only differ in terms of
+   * field types with a term shape, such as UUIDs and numbers, are parsed each time but
+   * share the SQL with bind parameters; see {@link PgCqlFieldType#getTermShape}. This is
+   * meant for a definition that is created once and used for many requests. Fields must not
+   * be modified once added; adding a field clears the cache. The cache is thread safe.</p>
+   *
+   * @param maxSize maximum number of queries in cache; the least recently used queries are
+   *     evicted when full. 0 disables the cache (default).
+   * @return this definition
+   */
+  PgCqlDefinition withCache(int maxSize);
+
+  /**
+   * Get counters for the cache of parsed queries.
+   *
+   * @return cache counters; all 0 if the cache is disabled.
+   */
+  PgCqlCacheStats getCacheStats();
+
   /**
    * Parse CQL query string.
    * <p>Throws IllegalArgumentException on syntax error</p>
@@ -45,4 +82,32 @@ public interface PgCqlDefinition {
    */
   PgCqlQuery parse(String query, String q2);
 
+  /**
+   * Get SQL that creates the indexes the fields need.
+   *
+   * <p>See {@link PgCqlFieldType#getIndexes()}. The index names are derived from the table
+   * and the indexed expression. Statements are in order of field name, and an index needed
+   * by several fields is only created once. Columns the indexes are on, such as generated
+   * tsvector columns, are added first; see {@link PgCqlFieldType#getColumnStatements}.</p>
+   *
+   * @param table table, optionally with schema.
+   * @return ALTER TABLE .. ADD COLUMN IF NOT EXISTS and CREATE INDEX IF NOT EXISTS
+   *     statements.
+   */
+  List<String> getIndexStatements(String table);
+
+  /**
+   * Get the indexes the fields need that a table of a tenant does not have.
+   *
+   * <p>The indexes of the table in the schema of the pool are compared, by access method
+   * and indexed expression, to those of {@link #getIndexStatements(String)}, whatever their
+   * name. A warning is logged for each missing index; call this at tenant init to find
+   * searches that would scan the whole table.</p>
+   *
+   * @param pool pool of the tenant.
+   * @param table table without schema.
+   * @return async result with statements for the missing indexes, and the columns they
+   *     need.
+   */
+  Future<List<String>> getMissingIndexes(TenantPgPool pool, String table);
 }
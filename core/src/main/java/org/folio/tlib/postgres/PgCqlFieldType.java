@@ -1,5 +1,7 @@
 package org.folio.tlib.postgres;
 
+import io.vertx.sqlclient.Tuple;
+import java.util.List;
 import org.z3950.zing.cql.CQLTermNode;
 
 /**
@@ -36,4 +38,124 @@ public interface PgCqlFieldType {
    * @return SQL string.
    */
   String handleTermNode(CQLTermNode termNode);
+
+  /**
+   * Return SQL with bind parameters for equivalent of CQL "field relation term".
+   *
+   * <p>
+   * Like {@link #handleTermNode(CQLTermNode)}, but the term is not inlined in the SQL.
+   * Instead its value is added to the tuple and referred to by position, such as
+   * <code>$1</code>. Queries that only differ in terms then produce the same SQL and
+   * can share a prepared statement.
+   * </p><p>
+   * The default implementation inlines the term as {@link #handleTermNode(CQLTermNode)} does.
+   * </p>
+   *
+   * @param termNode for the "field relation".
+   * @param tuple values for the bind parameters; values are added to it.
+   * @return SQL string.
+   */
+  default String handleTermNode(CQLTermNode termNode, Tuple tuple) {
+    return handleTermNode(termNode);
+  }
+
+  /**
+   * Append SQL for equivalent of CQL "field relation term" to a buffer.
+   *
+   * <p>
+   * The where clause is generated by appending all terms to one buffer. The default
+   * implementation appends the result of {@link #handleTermNode(CQLTermNode)} or
+   * {@link #handleTermNode(CQLTermNode, Tuple)}; override to write to the buffer directly.
+   * </p>
+   *
+   * @param sql buffer the SQL is appended to.
+   * @param termNode for the "field relation".
+   * @param tuple values for the bind parameters; null for terms inlined in SQL.
+   * @return false if nothing was appended because the term always matches.
+   */
+  default boolean appendTermNode(StringBuilder sql, CQLTermNode termNode, Tuple tuple) {
+    String s = tuple == null ? handleTermNode(termNode) : handleTermNode(termNode, tuple);
+    if (s == null) {
+      return false;
+    }
+    sql.append(s);
+    return true;
+  }
+
+  /**
+   * Return the value of a term that is an exact match of the column.
+   *
+   * <p>Exact matches of a field that are combined with OR, such as
+   * <code>id==a OR id==b OR ..</code>, are then translated to one
+   * <code>column = ANY($1)</code> with an array of the values, or to
+   * <code>column IN (..)</code> when inlined. All values of a field type must be of the
+   * same class, which the database driver supports in arrays. The default is none, so
+   * that each term is translated on its own.</p>
+   *
+   * @param termNode for the "field relation".
+   * @return value; null if the term is not an exact match.
+   */
+  default Object getExactValue(CQLTermNode termNode) {
+    return null;
+  }
+
+  /**
+   * Return the shape of a term, for caching translated queries by shape.
+   *
+   * <p>Terms of a field with the same relation and shape must give the same SQL with bind
+   * parameters and differ only in the values bound, which must be those that
+   * {@link #appendTermNode(StringBuilder, CQLTermNode, Tuple)} binds for the term. Queries
+   * that only differ in such terms then share the translated SQL; see
+   * {@link PgCqlDefinition#withCache(int)}. The default is none, as the SQL may depend on
+   * the term, and queries with the term are cached by their text.</p>
+   *
+   * @param termNode for the "field relation".
+   * @return shape, such as the class of the value; null if the SQL depends on the term.
+   */
+  default String getTermShape(CQLTermNode termNode) {
+    return null;
+  }
+
+  /**
+   * Append SQL for a range: a term with relation <code>&gt;=</code> and one with
+   * <code>&lt;=</code>.
+   *
+   * <p>Such a pair combined with AND, as in <code>cost&gt;=1 AND cost&lt;=5</code>, is
+   * translated with this to one <code>column BETWEEN ..</code>. The default appends
+   * nothing, so that the terms are translated on their own.</p>
+   *
+   * @param sql buffer the SQL is appended to.
+   * @param lower term with relation <code>&gt;=</code>.
+   * @param upper term with relation <code>&lt;=</code>.
+   * @param tuple values for the bind parameters; null for terms inlined in SQL.
+   * @return false if nothing was appended because ranges are not supported.
+   */
+  default boolean appendRange(StringBuilder sql, CQLTermNode lower, CQLTermNode upper,
+      Tuple tuple) {
+    return false;
+  }
+
+  /**
+   * Return the indexes that the searches of this field type need.
+   *
+   * <p>Used by {@link PgCqlDefinition#getIndexStatements(String)}. The default is none.</p>
+   *
+   * @return indexes on the column.
+   */
+  default List<PgCqlIndex> getIndexes() {
+    return List.of();
+  }
+
+  /**
+   * Return SQL that adds the columns that the indexes of this field type are on, such as
+   * a generated column.
+   *
+   * <p>Used by {@link PgCqlDefinition#getIndexStatements(String)}. The default is none.</p>
+   *
+   * @param table table, optionally with schema.
+   * @return ALTER TABLE statements that do nothing if the column exists.
+   */
+  default List<String> getColumnStatements(String table) {
+    return List.of();
+  }
 }
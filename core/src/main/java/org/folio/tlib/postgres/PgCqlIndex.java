@@ -0,0 +1,22 @@
+package org.folio.tlib.postgres;
+
+/**
+ * Index recommended for the searches of a CQL field.
+ *
+ * @param method index access method, such as {@code btree} or {@code gin}
+ * @param expression indexed column or expression, with operator class if any
+ */
+public record PgCqlIndex(String method, String expression) {
+
+  /**
+   * Return SQL that creates the index if it does not exist.
+   *
+   * @param name index name
+   * @param table table, optionally with schema
+   * @return CREATE INDEX statement
+   */
+  public String toSql(String name, String table) {
+    return "CREATE INDEX IF NOT EXISTS " + name + " ON " + table
+        + " USING " + method + " (" + expression + ")";
+  }
+}
@@ -1,5 +1,8 @@
 package org.folio.tlib.postgres;
 
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+
 /**
  * Holder for SQL expressions parsed from a CQL query.
  */
@@ -21,6 +24,18 @@ public interface PgCqlQuery {
    */
   String getWhereClause();
 
+  /**
+   * Get PostgresQL where clause (without WHERE) with bind parameters.
+   *
+   * <p>CQL terms are not inlined in the SQL but added to the tuple. The
+   * parameters are numbered from the current size of the tuple, so values
+   * for parameters that precede the where clause can be added first.</p>
+   *
+   * @param tuple values for the bind parameters; values are added to it.
+   * @return where clause argument or null if "always true" (WHERE can be omitted).
+   */
+  String getWhereClause(Tuple tuple);
+
   /**
    * Get PostgresQL where ORDER BY - (without ORDER BY).
    * <p>Throws IllegalArgumentException on syntax error</p>
@@ -36,4 +51,46 @@ public interface PgCqlQuery {
    * @return order by clause argument or null if no sorting (ORDER BY can be omitted)
    */
   String getOrderByFields();
+
+  /**
+   * Get PostgresQL ORDER BY for keyset pagination - (without ORDER BY).
+   *
+   * <p>The sort keys followed by the tie-breaker, unless sorted on already. The tie-breaker
+   * is sorted in the direction of the last sort key, ascending if there is no sortby. NULL
+   * is greater than all values: NULLS LAST ascending and NULLS FIRST descending, as PostgreSQL
+   * does by default, so that plain indexes are used.</p>
+   *
+   * @param tieBreaker column with unique values, such as the primary key.
+   * @return order by clause argument.
+   */
+  String getKeysetOrderByClause(String tieBreaker);
+
+  /**
+   * Get PostgresQL condition for the rows after a cursor, for keyset pagination.
+   *
+   * <p>Combine with the where clause using AND and sort with
+   * {@link #getKeysetOrderByClause(String)}, so that a page is read from an index
+   * at the same cost however deep it is, unlike OFFSET. Sort columns may be NULL; the
+   * tie-breaker must not be.</p>
+   *
+   * @param tieBreaker column with unique values, such as the primary key.
+   * @param cursor token from {@link #getCursor(Row, String)} for the last row of the
+   *     previous page; null for the first page.
+   * @param tuple values for the bind parameters; values are added to it.
+   * @return condition; null if cursor is null.
+   * @throws PgCqlException if the cursor is invalid or for another sort.
+   */
+  String getKeysetWhereClause(String tieBreaker, String cursor, Tuple tuple);
+
+  /**
+   * Get cursor for a row, to get the rows after it.
+   *
+   * <p>The sort columns and tie-breaker must be selected under their column names.</p>
+   *
+   * @param row the last row of a page.
+   * @param tieBreaker column with unique values, such as the primary key.
+   * @return opaque cursor token, safe for use in a URL.
+   * @throws PgCqlException if a sort value is missing or the tie-breaker is null.
+   */
+  String getCursor(Row row, String tieBreaker);
 }
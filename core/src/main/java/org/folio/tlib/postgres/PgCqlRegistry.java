@@ -0,0 +1,61 @@
+package org.folio.tlib.postgres;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named CQL definitions, one for each table or resource of a module.
+ *
+ * <p>A definition is registered once, at startup, and then shared by all verticles and
+ * requests. Registering freezes it, see {@link PgCqlDefinition#freeze()}, so it can not be
+ * changed while in use, and checks it with sample queries, so that a mistake fails at
+ * startup rather than under load.
+ */
+public final class PgCqlRegistry {
+
+  private static final Map<String, PgCqlDefinition> definitions = new ConcurrentHashMap<>();
+
+  private PgCqlRegistry() {
+    throw new UnsupportedOperationException("Cannot instantiate utility class");
+  }
+
+  /**
+   * Register definition.
+   *
+   * @param name name, such as the table
+   * @param definition definition with all fields added; it is frozen
+   * @param sampleQueries CQL queries that must translate to SQL, such as one per field
+   * @return the definition
+   * @throws IllegalStateException if a definition with the name is registered already
+   * @throws PgCqlException if a sample query fails
+   */
+  public static PgCqlDefinition register(String name, PgCqlDefinition definition,
+      String... sampleQueries) {
+
+    definition.freeze();
+    for (String query : sampleQueries) {
+      PgCqlQuery pgCqlQuery = definition.parse(query);
+      pgCqlQuery.getWhereClause();
+      pgCqlQuery.getOrderByClause();
+    }
+    if (definitions.putIfAbsent(name, definition) != null) {
+      throw new IllegalStateException("CQL definition already registered: " + name);
+    }
+    return definition;
+  }
+
+  /**
+   * Get registered definition.
+   *
+   * @param name name given to {@link #register(String, PgCqlDefinition, String...)}
+   * @return definition
+   * @throws IllegalArgumentException if no definition is registered with the name
+   */
+  public static PgCqlDefinition get(String name) {
+    PgCqlDefinition definition = definitions.get(name);
+    if (definition == null) {
+      throw new IllegalArgumentException("No CQL definition registered: " + name);
+    }
+    return definition;
+  }
+}
@@ -0,0 +1,46 @@
+package org.folio.tlib.postgres;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Health of one underlying pool, from the last check with a cheap query.
+ *
+ * @param name pool name; the pool key, or the default name
+ * @param database database the pool connects to
+ * @param size open connections
+ * @param maxSize maximum number of connections
+ * @param active connections in use through withConnection and withTransaction; other uses,
+ *     such as getConnection, are not counted
+ * @param latencyMillis time the check took, including the wait for a connection, or has
+ *     taken so far if still running; -1 if the pool has not been checked
+ * @param waitMillis time the check waited for a connection of the pool, or has waited so
+ *     far if still waiting; -1 if the pool has not been checked
+ * @param error failure of the last check; null if it succeeded
+ */
+public record PgPoolHealth(String name, String database, int size, int maxSize, int active,
+    double latencyMillis, double waitMillis, String error) {
+
+  /**
+   * Return the fraction of connections in use through withConnection and withTransaction,
+   * 0 to 1. This is a lower bound; see {@link #waitMillis()} for saturation of the pool.
+   */
+  public double saturation() {
+    return maxSize > 0 ? Math.min(1.0, (double) active / maxSize) : 0.0;
+  }
+
+  /**
+   * Return the health as JSON.
+   */
+  public JsonObject toJson() {
+    return new JsonObject()
+        .put("name", name)
+        .put("database", database)
+        .put("size", size)
+        .put("maxSize", maxSize)
+        .put("active", active)
+        .put("saturation", saturation())
+        .put("latencyMillis", latencyMillis)
+        .put("waitMillis", waitMillis)
+        .put("error", error);
+  }
+}
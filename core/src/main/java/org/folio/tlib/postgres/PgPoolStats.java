@@ -0,0 +1,42 @@
+package org.folio.tlib.postgres;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Statistics for one underlying pool, shared by the {@link TenantPgPool} instances with the
+ * same connect options.
+ *
+ * @param name pool name; the pool key, or the default name
+ * @param database database the pool connects to
+ * @param user user the pool logs in as
+ * @param maxSize maximum number of connections
+ * @param tenants number of tenants that have used the pool
+ * @param contextSwitches number of times the tenant context was applied to a connection
+ */
+public record PgPoolStats(String name, String database, String user, int maxSize,
+    int tenants, long contextSwitches) {
+
+  /**
+   * Return the number of connections that are saved by sharing the pool.
+   *
+   * <p>This is the maximum number of connections that separate pools for each tenant could
+   * hold minus those of the shared pool.
+   */
+  public int connectionsSaved() {
+    return tenants > 1 ? (tenants - 1) * maxSize : 0;
+  }
+
+  /**
+   * Return the statistics as JSON.
+   */
+  public JsonObject toJson() {
+    return new JsonObject()
+        .put("name", name)
+        .put("database", database)
+        .put("user", user)
+        .put("maxSize", maxSize)
+        .put("tenants", tenants)
+        .put("connectionsSaved", connectionsSaved())
+        .put("contextSwitches", contextSwitches);
+  }
+}
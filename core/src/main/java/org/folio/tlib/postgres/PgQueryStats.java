@@ -0,0 +1,47 @@
+package org.folio.tlib.postgres;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Statistics for one SQL statement executed with {@link TenantPgPool#execute(String,
+ * io.vertx.sqlclient.Tuple)} while query profiling is enabled.
+ *
+ * <p>The percentiles are computed from the most recent executions. The buffer counters are
+ * the totals of the sampled EXPLAIN (ANALYZE, BUFFERS) runs; only SELECT statements are
+ * run with ANALYZE.
+ *
+ * @param sql the statement shape: the statement with literals replaced by {@code ?}, or
+ *     {@code (other)} for the executions of shapes beyond the number tracked
+ * @param count number of executions
+ * @param rows total number of rows returned or affected
+ * @param p50Millis median execution time in milliseconds
+ * @param p99Millis 99th percentile of execution time in milliseconds
+ * @param maxMillis maximum execution time in milliseconds
+ * @param explains number of plans captured
+ * @param sharedHitBlocks shared blocks found in the buffer cache by the captured plans
+ * @param sharedReadBlocks shared blocks read by the captured plans
+ * @param lastPlan most recently captured plan (EXPLAIN FORMAT JSON), with literals replaced by
+ *     {@code ?}; null if none
+ */
+public record PgQueryStats(String sql, long count, long rows, double p50Millis,
+    double p99Millis, double maxMillis, long explains, long sharedHitBlocks,
+    long sharedReadBlocks, JsonArray lastPlan) {
+
+  /**
+   * Return the statistics as JSON.
+   */
+  public JsonObject toJson() {
+    return new JsonObject()
+        .put("sql", sql)
+        .put("count", count)
+        .put("rows", rows)
+        .put("p50Millis", p50Millis)
+        .put("p99Millis", p99Millis)
+        .put("maxMillis", maxMillis)
+        .put("explains", explains)
+        .put("sharedHitBlocks", sharedHitBlocks)
+        .put("sharedReadBlocks", sharedReadBlocks)
+        .put("lastPlan", lastPlan);
+  }
+}
@@ -0,0 +1,39 @@
+package org.folio.tlib.postgres;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Statistics for the connections of one tenant in a pool with per-tenant limits.
+ *
+ * @param pool pool name; the pool key, or the default name
+ * @param tenant tenant
+ * @param limit maximum number of connections for the tenant
+ * @param weight share of the tenant when connections are scarce
+ * @param active connections in use by the tenant
+ * @param queued requests waiting for a connection
+ * @param waited number of requests that had to wait
+ * @param totalWaitMillis total time that requests waited, in milliseconds
+ * @param maxWaitMillis longest time a request waited, in milliseconds
+ * @param timedOut number of requests that failed because the wait timed out
+ */
+public record PgTenantQueueStats(String pool, String tenant, int limit, int weight,
+    int active, int queued, long waited, double totalWaitMillis, double maxWaitMillis,
+    long timedOut) {
+
+  /**
+   * Return the statistics as JSON.
+   */
+  public JsonObject toJson() {
+    return new JsonObject()
+        .put("pool", pool)
+        .put("tenant", tenant)
+        .put("limit", limit)
+        .put("weight", weight)
+        .put("active", active)
+        .put("queued", queued)
+        .put("waited", waited)
+        .put("totalWaitMillis", totalWaitMillis)
+        .put("maxWaitMillis", maxWaitMillis)
+        .put("timedOut", timedOut);
+  }
+}
@@ -1,15 +1,19 @@
 package org.folio.tlib.postgres;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.pubsub.PgSubscriber;
 import io.vertx.sqlclient.Pool;
 import io.vertx.sqlclient.PoolOptions;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.RowStream;
 import io.vertx.sqlclient.Tuple;
 import jakarta.validation.constraints.NotNull;
 import java.util.List;
+import java.util.function.Function;
 import org.folio.tlib.postgres.impl.TenantPgPoolImpl;
 
 /**
@@ -20,6 +24,10 @@ public interface TenantPgPool extends Pool {
   /**
    * create shared tenant pool for tenant.
    *
+   * <p>Each call returns a new pool with its own reference to the underlying pool, which
+   * is shared; {@link #close()} releases only that reference. A pool that is never closed
+   * keeps the underlying pool open until {@link #closeAll()}.
+   *
    * @param vertx vert.x instance
    * @param tenant tenant name.
    * @return pool.
@@ -31,6 +39,8 @@ public interface TenantPgPool extends Pool {
   /**
    * create key-identified pool for tenant.
    *
+   * <p>Each call returns a new pool with its own reference to the underlying pool.
+   *
    * @param vertx vert.x instance
    * @param tenant tenant name.
    * @param poolKey pool key.
@@ -48,6 +58,79 @@ public interface TenantPgPool extends Pool {
 
   Future<RowSet<Row>> execute(String sql, Tuple tuple);
 
+  /**
+   * Execute statements on a single connection.
+   *
+   * <p>With transaction, the statements are sent without waiting for the result of the
+   * previous one (pipelined), so the batch costs about one round trip rather than one per
+   * statement. If a statement fails, the rest fail too and the transaction is rolled back.
+   *
+   * <p>Without transaction, the statements are executed one at a time, and processing stops
+   * at the first failure, like {@link #execute(List)}. Use this for statements that cannot
+   * run in a transaction.
+   *
+   * @param queries statements executed in order
+   * @param transaction whether to run the statements in a transaction
+   * @return async result with one result per statement executed; fails with
+   *     {@link PgBatchException}, that holds the results, if a statement failed
+   */
+  Future<List<PgBatchResult>> executeBatch(List<String> queries, boolean transaction);
+
+  /**
+   * Execute prepared query and process the rows as a stream.
+   *
+   * <p>The rows are read with a cursor, at most fetchSize rows at a time, and only while the
+   * stream has demand: pausing the stream stops the fetching, so the rows in memory are bounded
+   * by the fetch size rather than the size of the result. The query runs in a transaction on
+   * a connection that is held until the future returned by the handler completes; the stream
+   * is closed then. The handler should set the stream's handler, end handler and exception
+   * handler and complete the future when done (or pipe the stream somewhere).
+   *
+   * @param sql query
+   * @param tuple parameters
+   * @param fetchSize number of rows to fetch per round trip
+   * @param handler processes the stream
+   * @param <T> result type of handler
+   * @return async result of handler
+   */
+  <T> Future<T> withRowStream(String sql, Tuple tuple, int fetchSize,
+      Function<RowStream<Row>, Future<T>> handler);
+
+  /**
+   * Count the rows of a table that match a CQL query.
+   *
+   * <p>Rows are counted up to the exact limit, so the cost of the count is bounded by it.
+   * If more rows match, the number estimated by the query planner with EXPLAIN is returned
+   * instead, but not less than the rows counted, so that a broad query does not pay for
+   * reading all rows.
+   *
+   * @param table table, or any FROM item, such as {@code schema.table}
+   * @param query CQL query; its where clause is used with bind parameters
+   * @param exactLimit count exactly up to this many rows
+   * @return async result with count and whether it is exact
+   */
+  Future<PgCqlCount> count(String table, PgCqlQuery query, int exactLimit);
+
+  /**
+   * Get subscriber for LISTEN/NOTIFY.
+   *
+   * <p>The subscriber is shared by the pools with the same connect options and has its own
+   * connection, which is reconnected, with the channels, if lost. It is closed by
+   * {@link #closeAll()}.
+   *
+   * @return async result with connected subscriber
+   */
+  Future<PgSubscriber> getSubscriber();
+
+  /**
+   * Get the pool to use with other APIs.
+   *
+   * <p>For a shared pool, see {@link #setSharedPool(boolean)}, this is the TenantPgPool
+   * itself, so that the tenant context applies; the underlying pool is not exposed. This
+   * can then not be passed to SqlTemplate.
+   *
+   * @return pool
+   */
   Pool getPool();
 
   String getSchema();
@@ -74,6 +157,97 @@ public interface TenantPgPool extends Pool {
     TenantPgPoolImpl.setMaxPoolSize(maxPoolSize);
   }
 
+  /**
+   * Set registry for metrics.
+   *
+   * <p>When set, the pools record query latency, rows, failures, connection wait time and
+   * connections in use, tagged by tenant, module and pool key. The query meters cover the
+   * query methods of the TenantPgPool, including {@link #execute(String, Tuple)}, but not
+   * statements run on a connection. Set this before the first pool is created, as is done
+   * by {@link org.folio.tlib.api.MetricsApi}.
+   *
+   * @param meterRegistry registry; null for no metrics
+   */
+  static void setMeterRegistry(MeterRegistry meterRegistry) {
+    TenantPgPoolImpl.setMeterRegistry(meterRegistry);
+  }
+
+  /**
+   * Set the maximum number of connections of a tenant in a pool.
+   *
+   * <p>When set, a tenant that has this many connections in use waits for one of them to be
+   * released, and when the pool is exhausted, a released connection is given to the waiting
+   * tenant with the fewest connections per weight; see {@link #setTenantWeights(String)}.
+   * This applies to connections used through {@code withConnection}, {@code withTransaction}
+   * and the query methods of the TenantPgPool, not to those of {@code getConnection}. The
+   * default is environment variable {@code DB_MAXPOOLSIZE_TENANT}; null for no limit.
+   *
+   * @param maxPoolSizeTenant maximum number of connections; null for no limit
+   */
+  static void setMaxPoolSizeTenant(String maxPoolSizeTenant) {
+    TenantPgPoolImpl.setMaxPoolSizeTenant(maxPoolSizeTenant);
+  }
+
+  /**
+   * Set the weights of tenants for the per-tenant connection limit.
+   *
+   * <p>The default is environment variable {@code DB_TENANT_WEIGHTS}. Tenants not listed
+   * have weight 1.
+   *
+   * @param tenantWeights comma separated tenant:weight pairs, such as {@code diku:2,other:3}
+   */
+  static void setTenantWeights(String tenantWeights) {
+    TenantPgPoolImpl.setTenantWeights(tenantWeights);
+  }
+
+  /**
+   * Set whether tenants on the same database share one pool.
+   *
+   * <p>When shared, the pool logs in as {@code DB_SHARED_USERNAME} (or {@code DB_USERNAME} if
+   * that does not contain {tenant}), and the tenant context is applied to each connection
+   * borrowed through the TenantPgPool: search_path is set to the schema, and role to
+   * {@code DB_USERNAME} if that contains {tenant}. The default is environment variable
+   * {@code DB_SHARED_POOL}.
+   *
+   * @param sharedPool whether to share
+   */
+  static void setSharedPool(boolean sharedPool) {
+    TenantPgPoolImpl.setSharedPool(sharedPool);
+  }
+
+  /**
+   * Return statistics of statements executed with {@link #execute(String, Tuple)}.
+   *
+   * <p>Statistics are recorded when the {@code explain_sample_rate} or {@code explain_slow_ms}
+   * Verticle config is set. The plan is captured, in the background, for that fraction of the
+   * executions and for executions that take at least that many milliseconds.
+   *
+   * @return statistics, slowest (by 99th percentile) first
+   */
+  static List<PgQueryStats> getQueryStats() {
+    return TenantPgPoolImpl.getQueryStats();
+  }
+
+  static void clearQueryStats() {
+    TenantPgPoolImpl.clearQueryStats();
+  }
+
+  static List<PgPoolStats> getPoolStats() {
+    return TenantPgPoolImpl.getPoolStats();
+  }
+
+  static List<PgTenantQueueStats> getTenantQueueStats() {
+    return TenantPgPoolImpl.getTenantQueueStats();
+  }
+
+  static Future<Void> probePools() {
+    return TenantPgPoolImpl.probePools();
+  }
+
+  static List<PgPoolHealth> getPoolHealth() {
+    return TenantPgPoolImpl.getPoolHealth();
+  }
+
   static Future<Void> closeAll() {
     return TenantPgPoolImpl.closeAll();
   }
@@ -17,4 +17,9 @@ public class PgCqlFieldAlwaysMatches extends PgCqlFieldBase implements PgCqlFiel
   public String handleTermNode(CQLTermNode termNode) {
     return null;
   }
+
+  @Override
+  public String getTermShape(CQLTermNode termNode) {
+    return "*";
+  }
 }
@@ -1,5 +1,6 @@
 package org.folio.tlib.postgres.cqlfield;
 
+import io.vertx.sqlclient.Tuple;
 import org.folio.tlib.postgres.PgCqlException;
 import org.folio.tlib.postgres.PgCqlFieldType;
 import org.z3950.zing.cql.CQLTermNode;
@@ -22,6 +23,44 @@ public abstract class PgCqlFieldBase implements PgCqlFieldType {
     return this;
   }
 
+  /**
+   * Add bind parameter value.
+   *
+   * @param tuple values for bind parameters.
+   * @param value value to add.
+   * @return SQL parameter referring to the value, such as <code>$1</code>.
+   */
+  public static String bindValue(Tuple tuple, Object value) {
+    tuple.addValue(value);
+    return "$" + tuple.size();
+  }
+
+  /**
+   * Add bind parameter value and append the SQL parameter referring to it.
+   *
+   * @param sql SQL buffer.
+   * @param tuple values for bind parameters.
+   * @param value value to add.
+   */
+  public static void appendBindValue(StringBuilder sql, Tuple tuple, Object value) {
+    tuple.addValue(value);
+    sql.append('$').append(tuple.size());
+  }
+
+  /**
+   * Return SQL using {@link #appendTermNode(StringBuilder, CQLTermNode, Tuple)}.
+   *
+   * <p>For field types that implement appendTermNode.</p>
+   *
+   * @param termNode for the "field relation".
+   * @param tuple values for the bind parameters; null for terms inlined in SQL.
+   * @return SQL string; null if the term always matches.
+   */
+  protected String termNodeToString(CQLTermNode termNode, Tuple tuple) {
+    StringBuilder sql = new StringBuilder();
+    return appendTermNode(sql, termNode, tuple) ? sql.toString() : null;
+  }
+
   /**
    * If CQL term is empty, apply special semantics.
    *
@@ -1,5 +1,6 @@
 package org.folio.tlib.postgres.cqlfield;
 
+import io.vertx.sqlclient.Tuple;
 import org.folio.tlib.postgres.PgCqlException;
 import org.folio.tlib.postgres.PgCqlFieldType;
 import org.z3950.zing.cql.CQLTermNode;
@@ -10,19 +11,49 @@ import org.z3950.zing.cql.CQLTermNode;
 public class PgCqlFieldBoolean extends PgCqlFieldBase implements PgCqlFieldType {
   @Override
   public String handleTermNode(CQLTermNode termNode) {
+    return termNodeToString(termNode, null);
+  }
+
+  @Override
+  public String handleTermNode(CQLTermNode termNode, Tuple tuple) {
+    return termNodeToString(termNode, tuple);
+  }
+
+  @Override
+  public boolean appendTermNode(StringBuilder sql, CQLTermNode termNode, Tuple tuple) {
     String s = handleEmptyTerm(termNode);
     if (s != null) {
-      return s;
+      sql.append(s);
+      return true;
+    }
+    boolean value = getBoolean(termNode);
+    sql.append(column).append(handleUnorderedRelation(termNode));
+    if (tuple == null) {
+      sql.append(value ? "TRUE" : "FALSE");
+    } else {
+      appendBindValue(sql, tuple, value);
     }
+    return true;
+  }
+
+  @Override
+  public String getTermShape(CQLTermNode termNode) {
+    String cqlTerm = termNode.getTerm();
+    if (cqlTerm.isEmpty()) {
+      return "";
+    }
+    return "true".equalsIgnoreCase(cqlTerm) || "false".equalsIgnoreCase(cqlTerm)
+        ? "boolean" : null;
+  }
+
+  static boolean getBoolean(CQLTermNode termNode) {
     String cqlTerm = termNode.getTerm();
-    String pgTerm;
     if ("false".equalsIgnoreCase(cqlTerm)) {
-      pgTerm = "FALSE";
+      return false;
     } else if ("true".equalsIgnoreCase(cqlTerm)) {
-      pgTerm = "TRUE";
+      return true;
     } else {
       throw new PgCqlException("Bad boolean", termNode);
     }
-    return column + handleUnorderedRelation(termNode) + pgTerm;
   }
 }
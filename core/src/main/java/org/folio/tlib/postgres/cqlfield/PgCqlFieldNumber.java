@@ -1,8 +1,12 @@
 package org.folio.tlib.postgres.cqlfield;
 
+import io.vertx.sqlclient.Tuple;
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.regex.Pattern;
 import org.folio.tlib.postgres.PgCqlException;
 import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.PgCqlIndex;
 import org.z3950.zing.cql.CQLTermNode;
 
 /**
@@ -20,16 +24,114 @@ public class PgCqlFieldNumber extends PgCqlFieldBase implements PgCqlFieldType {
           + "(?:[eE][+-]?\\d+)?"
   );
 
+  private static final Pattern POSTGRES_INTEGER_REGEXP = Pattern.compile("[+-]?\\d+");
+
   @Override
   public String handleTermNode(CQLTermNode termNode) {
+    return termNodeToString(termNode, null);
+  }
+
+  @Override
+  public String handleTermNode(CQLTermNode termNode, Tuple tuple) {
+    return termNodeToString(termNode, tuple);
+  }
+
+  @Override
+  public boolean appendTermNode(StringBuilder sql, CQLTermNode termNode, Tuple tuple) {
     String s = handleEmptyTerm(termNode);
     if (s != null) {
-      return s;
+      sql.append(s);
+      return true;
     }
+    String cqlTerm = getNumber(termNode);
+    sql.append(column).append(handleOrderedRelation(termNode));
+    appendValue(sql, tuple, cqlTerm);
+    return true;
+  }
+
+  @Override
+  public boolean appendRange(StringBuilder sql, CQLTermNode lower, CQLTermNode upper,
+      Tuple tuple) {
+    String lowerTerm = getNumber(lower);
+    String upperTerm = getNumber(upper);
+    appendValue(sql.append(column).append(" BETWEEN "), tuple, lowerTerm);
+    appendValue(sql.append(" AND "), tuple, upperTerm);
+    return true;
+  }
+
+  private static void appendValue(StringBuilder sql, Tuple tuple, String cqlTerm) {
+    if (tuple == null) {
+      sql.append(cqlTerm);
+    } else {
+      appendNumber(sql, tuple, cqlTerm);
+    }
+  }
+
+  /**
+   * Return the type the number is bound with, as that is part of the SQL.
+   */
+  @Override
+  public String getTermShape(CQLTermNode termNode) {
+    String cqlTerm = termNode.getTerm();
+    if (cqlTerm.isEmpty()) {
+      return "";
+    }
+    if (!POSTGRES_NUMBER_REGEXP.matcher(cqlTerm).matches()) {
+      return null;
+    }
+    return getType(getValue(cqlTerm));
+  }
+
+  static String getNumber(CQLTermNode termNode) {
     String cqlTerm = termNode.getTerm();
     if (!POSTGRES_NUMBER_REGEXP.matcher(cqlTerm).matches()) {
       throw new PgCqlException("Bad numeric", termNode);
     }
-    return column + handleOrderedRelation(termNode) + cqlTerm;
+    return cqlTerm;
+  }
+
+  /**
+   * Bind number with the same type that PostgreSQL uses for the number as a constant.
+   *
+   * <p>An integer constant is integer, bigint or numeric depending on its size; other
+   * constants are numeric. The cast makes the comparison the same as with an inlined
+   * constant; the value is not coerced to the type of the column.
+   *
+   * @param sql SQL buffer that the parameter with cast is appended to.
+   * @param tuple values for bind parameters.
+   * @param cqlTerm number as validated by {@link #getNumber(CQLTermNode)}.
+   */
+  static void appendNumber(StringBuilder sql, Tuple tuple, String cqlTerm) {
+    Object value = getValue(cqlTerm);
+    appendBindValue(sql, tuple, value);
+    sql.append("::").append(getType(value));
+  }
+
+  private static Object getValue(String cqlTerm) {
+    if (POSTGRES_INTEGER_REGEXP.matcher(cqlTerm).matches()) {
+      try {
+        return Integer.parseInt(cqlTerm);
+      } catch (NumberFormatException e) {
+        // fall through to bigint
+      }
+      try {
+        return Long.parseLong(cqlTerm);
+      } catch (NumberFormatException e) {
+        // fall through to numeric
+      }
+    }
+    return new BigDecimal(cqlTerm);
+  }
+
+  private static String getType(Object value) {
+    if (value instanceof Integer) {
+      return "integer";
+    }
+    return value instanceof Long ? "bigint" : "numeric";
+  }
+
+  @Override
+  public List<PgCqlIndex> getIndexes() {
+    return List.of(new PgCqlIndex("btree", column));
   }
 }
@@ -1,7 +1,11 @@
 package org.folio.tlib.postgres.cqlfield;
 
+import io.vertx.sqlclient.Tuple;
+import java.util.ArrayList;
+import java.util.List;
 import org.folio.tlib.postgres.PgCqlException;
 import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.PgCqlIndex;
 import org.z3950.zing.cql.CQLTermNode;
 
 /**
@@ -18,6 +22,8 @@ public class PgCqlFieldText extends PgCqlFieldBase implements PgCqlFieldType {
 
   private String language;
 
+  private String tsvectorColumn;
+
   private boolean enableLike;
 
   private boolean enableExact;
@@ -60,6 +66,26 @@ public class PgCqlFieldText extends PgCqlFieldBase implements PgCqlFieldType {
     return withFullText("simple");
   }
 
+  /**
+   * Search a precomputed tsvector column for full text.
+   *
+   * <p>Full-text searches use the column instead of computing <code>to_tsvector</code>
+   * of the field's column for each row, so a GIN index on it is used without an exactly
+   * matching expression, and rows are not tokenized again on recheck. The column is meant
+   * to be a stored generated column; see {@link #getColumnStatements(String)}.
+   * Call {@link #withFullText(String)} first for the language.</p>
+   *
+   * @param tsvectorColumn column of type tsvector
+   * @return this.
+   */
+  public PgCqlFieldText withTsvectorColumn(String tsvectorColumn) {
+    if (language == null) {
+      throw new PgCqlException("withFullText must be called before withTsvectorColumn");
+    }
+    this.tsvectorColumn = tsvectorColumn;
+    return this;
+  }
+
   /**
    * Allow masking for field.
    * <p>This is triggered for relations {@code ==}, {@code <>} when at least one of the masking
@@ -94,83 +120,78 @@ public class PgCqlFieldText extends PgCqlFieldBase implements PgCqlFieldType {
   }
 
   /**
-   * CQL text term to PostgresSQL equality / inequality match.
-   * <p>Unrecognized backslash sequences are treated as errors; see
-   * <a href="https://docs.oasis-open.org/search-ws/searchRetrieve/v1.0/os/part5-cql/searchRetrieve-v1.0-os-part5-cql.html#_Toc235849921">B3.3 Masking</a>
-   * of the CQL standard.
-   * </p>
+   * Check whether CQL term has masking operators that require LIKE.
    *
-   * @param termNode which includes term and relation.
-   * @return PostgresQL term
-   * @see <a href="https://www.postgresql.org/docs/13/sql-syntax-lexical.html#SQL-SYNTAX-STRINGS">
-   * String Constants section</a>
+   * @param cqlTerm CQL term.
+   * @return true if there is at least one unescaped {@code *} or {@code ?}.
    */
-  static String maskedExact(CQLTermNode termNode) {
-    String cqlTerm = termNode.getTerm();
-    StringBuilder pgTerm = new StringBuilder();
-    boolean backslash = false;
+  static boolean hasMaskingOps(String cqlTerm) {
     for (int i = 0; i < cqlTerm.length(); i++) {
-      char c = cqlTerm.charAt(i);
-      if (backslash) {
-        switch (c) {
-          case '*', '\"', '?', '^', '\\':
-            pgTerm.append(c);
-            break;
-          default:
-            throw new PgCqlException("A masking backslash in a CQL string must be followed by"
-                + " *, ?, ^, \" or \\", termNode);
-        }
-        backslash = false;
-      } else {
-        switch (c) {
-          case '*':
-            throw new PgCqlException("Masking op * unsupported", termNode);
-          case '?':
-            throw new PgCqlException("Masking op ? unsupported", termNode);
-          case '^':
-            throw new PgCqlException("Anchor op ^ unsupported", termNode);
-          case '\\':
-            break;
-          case '\'':
-            pgTerm.append("''");
-            break;
-          default:
-            pgTerm.append(c);
-        }
-        backslash = c == '\\';
+      switch (cqlTerm.charAt(i)) {
+        case '\\':
+          i++; // skip masked character
+          break;
+        case '*', '?':
+          return true;
+        default:
+          break;
       }
     }
-    if (backslash) {
-      throw new PgCqlException("A CQL string must not end with a masking backslash", termNode);
+    return false;
+  }
+
+  /**
+   * Check whether CQL term can be used as is.
+   *
+   * @param cqlTerm CQL term.
+   * @param quote whether the term is to be a string constant.
+   * @return true if there are no masking operators, backslashes or (for string constant) quotes.
+   */
+  static boolean isPlain(String cqlTerm, boolean quote) {
+    for (int i = 0; i < cqlTerm.length(); i++) {
+      switch (cqlTerm.charAt(i)) {
+        case '*', '?', '^', '\\':
+          return false;
+        case '\'':
+          if (quote) {
+            return false;
+          }
+          break;
+        default:
+          break;
+      }
     }
-    return pgTerm.toString();
+    return true;
   }
 
   /**
-   * CQL masked text term to Postgres term with LIKE operator.
+   * CQL text term to PostgresSQL term for equality / inequality match or LIKE.
    * <p>Unrecognized backslash sequences are treated as errors; see
    * <a href="https://docs.oasis-open.org/search-ws/searchRetrieve/v1.0/os/part5-cql/searchRetrieve-v1.0-os-part5-cql.html#_Toc235849921">B3.3 Masking</a>
-   * of the CQL standard.
+   * of the CQL standard. For LIKE, the masking operators {@code *}, {@code ?} are
+   * converted to {@code %}, {@code _}; for equality they are rejected.
    * </p>
    *
+   * @param pgTerm buffer that the PostgresSQL term is appended to.
    * @param termNode which includes term and relation.
-   * @param pgTerm   PostgresSQL term argument for LIKE upon completion.
-   *                 Should be empty before this call.
-   * @return true if LIKE must be used to honor masking operators.
+   * @param like whether the term is argument for LIKE.
+   * @param quote whether quotes are to be doubled for a string constant.
+   * @see <a href="https://www.postgresql.org/docs/13/sql-syntax-lexical.html#SQL-SYNTAX-STRINGS">
+   * String Constants section</a>
    */
-  static boolean maskedLike(CQLTermNode termNode, StringBuilder pgTerm) {
-    boolean ops = false;
+  static void appendMasked(StringBuilder pgTerm, CQLTermNode termNode, boolean like,
+      boolean quote) {
     String cqlTerm = termNode.getTerm();
     boolean backslash = false;
     for (int i = 0; i < cqlTerm.length(); i++) {
       char c = cqlTerm.charAt(i);
       if (backslash) {
         switch (c) {
-          case '*', '?', '^', '\"':
+          case '*', '\"', '?', '^':
             pgTerm.append(c);
             break;
           case '\\':
-            pgTerm.append("\\\\");
+            pgTerm.append(like ? "\\\\" : "\\");
             break;
           default:
             throw new PgCqlException("A masking backslash in a CQL string must be followed by"
@@ -180,23 +201,29 @@ public class PgCqlFieldText extends PgCqlFieldBase implements PgCqlFieldType {
       } else {
         switch (c) {
           case '*':
+            if (!like) {
+              throw new PgCqlException("Masking op * unsupported", termNode);
+            }
             pgTerm.append('%');
-            ops = true;
             break;
           case '?':
+            if (!like) {
+              throw new PgCqlException("Masking op ? unsupported", termNode);
+            }
             pgTerm.append('_');
-            ops = true;
             break;
           case '^':
             throw new PgCqlException("Anchor op ^ unsupported", termNode);
           case '\\':
             break;
           case '%', '_':
-            pgTerm.append('\\');
+            if (like) {
+              pgTerm.append('\\');
+            }
             pgTerm.append(c);
             break;
           case '\'':
-            pgTerm.append("''");
+            pgTerm.append(quote ? "''" : "'");
             break;
           default:
             pgTerm.append(c);
@@ -207,58 +234,180 @@ public class PgCqlFieldText extends PgCqlFieldBase implements PgCqlFieldType {
     if (backslash) {
       throw new PgCqlException("A CQL string must not end with a masking backslash", termNode);
     }
-    return ops;
   }
 
   /**
-   * CQL masked full text term to Postgres term.
+   * Append CQL term as string constant or bind parameter.
    *
-   * <p>At this stage masking is unsupported and rejected.</p>
+   * <p>A term without masking operators, backslashes and (for string constant) quotes is
+   * appended or bound as is.</p>
    *
+   * @param sql SQL buffer.
    * @param termNode which includes term and relation.
-   * @return Postgres term.
-   * @see <a href="https://www.postgresql.org/docs/13/sql-syntax-lexical.html#SQL-SYNTAX-STRINGS">
-   * String Constants section</a>
+   * @param like whether the term is argument for LIKE.
+   * @param tuple values for bind parameters; null for string constant.
    */
-  static String maskedFulltext(CQLTermNode termNode) {
-    return maskedExact(termNode);
+  static void appendTerm(StringBuilder sql, CQLTermNode termNode, boolean like, Tuple tuple) {
+    String cqlTerm = termNode.getTerm();
+    if (tuple == null) {
+      sql.append('\'');
+      if (!like && isPlain(cqlTerm, true)) {
+        sql.append(cqlTerm);
+      } else {
+        appendMasked(sql, termNode, like, true);
+      }
+      sql.append('\'');
+    } else if (!like && isPlain(cqlTerm, false)) {
+      appendBindValue(sql, tuple, cqlTerm);
+    } else {
+      StringBuilder pgTerm = new StringBuilder(cqlTerm.length() + 8);
+      appendMasked(pgTerm, termNode, like, false);
+      appendBindValue(sql, tuple, pgTerm.toString());
+    }
   }
 
   @Override
   public String handleTermNode(CQLTermNode termNode) {
+    return termNodeToString(termNode, null);
+  }
+
+  @Override
+  public String handleTermNode(CQLTermNode termNode, Tuple tuple) {
+    return termNodeToString(termNode, tuple);
+  }
+
+  @Override
+  public boolean appendTermNode(StringBuilder sql, CQLTermNode termNode, Tuple tuple) {
     String s = handleEmptyTerm(termNode);
     if (s != null) {
       if (!enableExact) {
         throw new PgCqlException("= \"\" (not null test) is not supported", termNode);
       }
-      return s;
+      sql.append(s);
+      return true;
     }
-    boolean fulltext = language != null;
     String base = termNode.getRelation().getBase();
-    String func = null;
-    if (fulltext) {
-      if ("adj".equals(base) || "=".equals(base)) {
-        func = "phraseto_tsquery";
-      } else if ("all".equals(base)) {
-        func = "plainto_tsquery";
-      }
-    }
+    String func = fullTextFunction(base);
     if (func != null) {
-      String pgTerm = maskedFulltext(termNode);
-      return "to_tsvector('" + language + "', " + column + ") @@ " + func + "('"
-          + language + "', '" + pgTerm + "')";
+      if (tsvectorColumn != null) {
+        sql.append(tsvectorColumn);
+      } else {
+        sql.append(tsvectorExpression());
+      }
+      sql.append(" @@ ").append(func).append("('").append(language).append("', ");
+      appendTerm(sql, termNode, false, tuple);
+      sql.append(')');
+      return true;
     }
     if (!enableExact) {
       throw new PgCqlException("Unsupported operator", termNode);
     }
-    if (enableLike && ("=".equals(base) || "==".equals(base) || "<>".equals(base))) {
-      StringBuilder cqlTerm = new StringBuilder();
-      if (maskedLike(termNode, cqlTerm)) {
-        String op = "<>".equals(base) ? "NOT LIKE" : "LIKE";
-        return column + " " + op + " '" + cqlTerm + "'";
-      }
+    if (isLike(termNode)) {
+      sql.append(column).append("<>".equals(base) ? " NOT LIKE " : " LIKE ");
+      appendTerm(sql, termNode, true, tuple);
+      return true;
+    }
+    String op = handleUnorderedRelation(termNode);
+    sql.append(column).append(' ').append(op).append(' ');
+    appendTerm(sql, termNode, false, tuple);
+    return true;
+  }
+
+  private String fullTextFunction(String base) {
+    if (language == null) {
+      return null;
+    }
+    if ("adj".equals(base) || "=".equals(base)) {
+      return "phraseto_tsquery";
+    }
+    if ("all".equals(base)) {
+      return "plainto_tsquery";
+    }
+    return null;
+  }
+
+  private boolean isLike(CQLTermNode termNode) {
+    String base = termNode.getRelation().getBase();
+    return enableLike && ("=".equals(base) || "==".equals(base) || "<>".equals(base))
+        && hasMaskingOps(termNode.getTerm());
+  }
+
+  /**
+   * Return whether the term is empty, and for exact searches whether it is searched with
+   * LIKE, as that is part of the SQL; a term is otherwise always bound as one string.
+   */
+  @Override
+  public String getTermShape(CQLTermNode termNode) {
+    if (termNode.getTerm().isEmpty()) {
+      return "";
+    }
+    boolean like = fullTextFunction(termNode.getRelation().getBase()) == null
+        && isLike(termNode);
+    try {
+      appendMasked(new StringBuilder(), termNode, like, false);
+    } catch (PgCqlException e) {
+      return null;
+    }
+    return like ? "like" : "text";
+  }
+
+  /**
+   * Return the term of an exact match: relation <code>==</code>, or <code>=</code> without
+   * full text, and no masking.
+   */
+  @Override
+  public Object getExactValue(CQLTermNode termNode) {
+    String base = termNode.getRelation().getBase();
+    String cqlTerm = termNode.getTerm();
+    if (!enableExact
+        || !("==".equals(base) || ("=".equals(base) && language == null && !cqlTerm.isEmpty()))
+        || (enableLike && hasMaskingOps(cqlTerm))) {
+      return null;
+    }
+    if (isPlain(cqlTerm, false)) {
+      return cqlTerm;
+    }
+    StringBuilder pgTerm = new StringBuilder(cqlTerm.length());
+    appendMasked(pgTerm, termNode, false, false);
+    return pgTerm.toString();
+  }
+
+  /**
+   * Return the indexes for the searches enabled.
+   *
+   * <p>A GIN index of the tsvector, or of the tsvector column if set, for full text, and a
+   * B-Tree index with operator class <code>text_pattern_ops</code> for masking, which also
+   * serves exact searches, or else a plain B-Tree index for exact searches.</p>
+   */
+  @Override
+  public List<PgCqlIndex> getIndexes() {
+    List<PgCqlIndex> indexes = new ArrayList<>();
+    if (tsvectorColumn != null) {
+      indexes.add(new PgCqlIndex("gin", tsvectorColumn));
+    } else if (language != null) {
+      indexes.add(new PgCqlIndex("gin", tsvectorExpression()));
+    }
+    if (enableLike) {
+      indexes.add(new PgCqlIndex("btree", column + " text_pattern_ops"));
+    } else if (enableExact) {
+      indexes.add(new PgCqlIndex("btree", column));
+    }
+    return indexes;
+  }
+
+  private String tsvectorExpression() {
+    return "to_tsvector('" + language + "', " + column + ")";
+  }
+
+  /**
+   * Return SQL that adds the tsvector column, if set, as a stored generated column.
+   */
+  @Override
+  public List<String> getColumnStatements(String table) {
+    if (tsvectorColumn == null) {
+      return List.of();
     }
-    return column + " " + handleUnorderedRelation(termNode)
-        + " '" + maskedExact(termNode) + "'";
+    return List.of("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS " + tsvectorColumn
+        + " tsvector GENERATED ALWAYS AS (" + tsvectorExpression() + ") STORED");
   }
 }
@@ -1,8 +1,12 @@
 package org.folio.tlib.postgres.cqlfield;
 
+import io.vertx.sqlclient.Tuple;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.PgCqlIndex;
 import org.z3950.zing.cql.CQLTermNode;
 
 /**
@@ -11,19 +15,71 @@ import org.z3950.zing.cql.CQLTermNode;
 public class PgCqlFieldTimestamp extends PgCqlFieldBase implements PgCqlFieldType {
   @Override
   public String handleTermNode(CQLTermNode termNode) {
+    return termNodeToString(termNode, null);
+  }
+
+  @Override
+  public String handleTermNode(CQLTermNode termNode, Tuple tuple) {
+    return termNodeToString(termNode, tuple);
+  }
+
+  @Override
+  public boolean appendTermNode(StringBuilder sql, CQLTermNode termNode, Tuple tuple) {
     String s = handleEmptyTerm(termNode);
     if (s != null) {
-      return s;
+      sql.append(s);
+      return true;
     }
-    String dateStr = termNode.getTerm();
-    String dateParsed;
-    if (dateStr.length() > 10) {
-      LocalDateTime localDateTime = LocalDateTime.parse(dateStr);
-      dateParsed = localDateTime.toString();
+    Object date = getDate(termNode.getTerm());
+    sql.append(getColumn()).append(handleOrderedRelation(termNode));
+    appendValue(sql, tuple, date);
+    return true;
+  }
+
+  @Override
+  public boolean appendRange(StringBuilder sql, CQLTermNode lower, CQLTermNode upper,
+      Tuple tuple) {
+    Object lowerDate = getDate(lower.getTerm());
+    Object upperDate = getDate(upper.getTerm());
+    appendValue(sql.append(getColumn()).append(" BETWEEN "), tuple, lowerDate);
+    appendValue(sql.append(" AND "), tuple, upperDate);
+    return true;
+  }
+
+  private static void appendValue(StringBuilder sql, Tuple tuple, Object date) {
+    if (tuple == null) {
+      sql.append('\'').append(date).append('\'');
     } else {
-      LocalDate localDate = LocalDate.parse(dateStr);
-      dateParsed = localDate.toString();
+      appendBindValue(sql, tuple, date);
+      // cast so that the parameter type is not taken from the column (DATE, TIMESTAMP, ..)
+      sql.append(date instanceof LocalDate ? "::date" : "::timestamp");
     }
-    return getColumn() + handleOrderedRelation(termNode) + "'" + dateParsed + "'";
+  }
+
+  /**
+   * Return the type the date is bound with, as that is part of the SQL.
+   */
+  @Override
+  public String getTermShape(CQLTermNode termNode) {
+    if (termNode.getTerm().isEmpty()) {
+      return "";
+    }
+    try {
+      return getDate(termNode.getTerm()) instanceof LocalDate ? "date" : "timestamp";
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  static Object getDate(String dateStr) {
+    if (dateStr.length() > 10) {
+      return LocalDateTime.parse(dateStr);
+    }
+    return LocalDate.parse(dateStr);
+  }
+
+  @Override
+  public List<PgCqlIndex> getIndexes() {
+    return List.of(new PgCqlIndex("btree", column));
   }
 }
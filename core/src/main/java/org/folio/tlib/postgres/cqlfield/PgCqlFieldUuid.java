@@ -1,8 +1,11 @@
 package org.folio.tlib.postgres.cqlfield;
 
+import io.vertx.sqlclient.Tuple;
+import java.util.List;
 import java.util.UUID;
 import org.folio.tlib.postgres.PgCqlException;
 import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.PgCqlIndex;
 import org.z3950.zing.cql.CQLTermNode;
 
 /**
@@ -11,20 +14,66 @@ import org.z3950.zing.cql.CQLTermNode;
 public class PgCqlFieldUuid extends PgCqlFieldBase implements PgCqlFieldType {
   @Override
   public String handleTermNode(CQLTermNode termNode) {
+    return termNodeToString(termNode, null);
+  }
+
+  @Override
+  public String handleTermNode(CQLTermNode termNode, Tuple tuple) {
+    return termNodeToString(termNode, tuple);
+  }
+
+  @Override
+  public boolean appendTermNode(StringBuilder sql, CQLTermNode termNode, Tuple tuple) {
     String s = handleEmptyTerm(termNode);
     if (s != null) {
-      return s;
+      sql.append(s);
+      return true;
+    }
+    UUID id = getUuid(termNode);
+    String op = handleUnorderedRelation(termNode);
+    sql.append(column).append(op);
+    if (tuple == null) {
+      sql.append('\'').append(id).append('\'');
+    } else {
+      appendBindValue(sql, tuple, id);
+    }
+    return true;
+  }
+
+  @Override
+  public Object getExactValue(CQLTermNode termNode) {
+    String base = termNode.getRelation().getBase();
+    if (termNode.getTerm().isEmpty() || !("=".equals(base) || "==".equals(base))) {
+      return null;
+    }
+    return getUuid(termNode);
+  }
+
+  @Override
+  public String getTermShape(CQLTermNode termNode) {
+    if (termNode.getTerm().isEmpty()) {
+      return "";
+    }
+    try {
+      UUID.fromString(termNode.getTerm());
+      return "uuid";
+    } catch (IllegalArgumentException e) {
+      return null;
     }
+  }
+
+  static UUID getUuid(CQLTermNode termNode) {
     // convert to UUID so IllegalArgumentException is thrown if invalid
     // this also down-cases uppercase hex digits.
     try {
-      UUID id = UUID.fromString(termNode.getTerm());
-
-      String pgTerm = "'" + id + "'";
-      String op = handleUnorderedRelation(termNode);
-      return column + op + pgTerm;
+      return UUID.fromString(termNode.getTerm());
     } catch (IllegalArgumentException e) {
       throw new PgCqlException("Invalid UUID", termNode);
     }
   }
+
+  @Override
+  public List<PgCqlIndex> getIndexes() {
+    return List.of(new PgCqlIndex("btree", column));
+  }
 }
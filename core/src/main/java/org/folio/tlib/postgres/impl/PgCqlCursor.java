@@ -0,0 +1,109 @@
+package org.folio.tlib.postgres.impl;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import org.folio.tlib.postgres.PgCqlException;
+
+/**
+ * Opaque cursor with the sort values of the last row of a page.
+ *
+ * <p>The token is base64url of a JSON array with a hash of the sort, then a type and a value
+ * for each sort key, so that the values are bound with the same Java type as they were read,
+ * and a cursor of another sort with as many keys is rejected.
+ */
+final class PgCqlCursor {
+
+  private PgCqlCursor() {
+  }
+
+  /**
+   * Return cursor token.
+   *
+   * @param sort the sort the values are of, such as the ORDER BY arguments
+   * @param values sort values; null for NULL
+   * @return token
+   */
+  static String encode(String sort, List<Object> values) {
+    JsonArray array = new JsonArray().add(sortHash(sort));
+    for (Object value : values) {
+      JsonArray pair = switch (value) {
+        case null -> new JsonArray().add("z");
+        case String s -> new JsonArray().add("s").add(s);
+        case Boolean b -> new JsonArray().add("b").add(b);
+        case Short n -> new JsonArray().add("i").add(n.longValue());
+        case Integer n -> new JsonArray().add("i").add(n.longValue());
+        case Long n -> new JsonArray().add("i").add(n);
+        case Float n -> new JsonArray().add("f").add(n.doubleValue());
+        case Double n -> new JsonArray().add("f").add(n);
+        case BigDecimal n -> new JsonArray().add("n").add(n.toString());
+        case UUID u -> new JsonArray().add("u").add(u.toString());
+        case LocalDate d -> new JsonArray().add("d").add(d.toString());
+        case LocalDateTime d -> new JsonArray().add("t").add(d.toString());
+        case OffsetDateTime d -> new JsonArray().add("o").add(d.toString());
+        default -> throw new PgCqlException("Unsupported type for cursor: "
+            + value.getClass().getName());
+      };
+      array.add(pair);
+    }
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(array.encode().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Return the values of a cursor token.
+   *
+   * @param cursor token
+   * @param sort the sort the values must be of
+   * @param size number of sort keys
+   * @return sort values; null for NULL
+   * @throws PgCqlException if the token is invalid or of another sort
+   */
+  static List<Object> decode(String cursor, String sort, int size) {
+    try {
+      JsonArray array = new JsonArray(
+          new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+      if (array.size() != size + 1 || !sortHash(sort).equals(array.getString(0))) {
+        throw new PgCqlException("Invalid cursor");
+      }
+      List<Object> values = new ArrayList<>(size);
+      for (int i = 1; i <= size; i++) {
+        JsonArray pair = array.getJsonArray(i);
+        Object value = switch (pair.getString(0)) {
+          case "z" -> null;
+          case "s" -> pair.getString(1);
+          case "b" -> pair.getBoolean(1);
+          case "i" -> pair.getLong(1);
+          case "f" -> pair.getDouble(1);
+          case "n" -> new BigDecimal(pair.getString(1));
+          case "u" -> UUID.fromString(pair.getString(1));
+          case "d" -> LocalDate.parse(pair.getString(1));
+          case "t" -> LocalDateTime.parse(pair.getString(1));
+          case "o" -> OffsetDateTime.parse(pair.getString(1));
+          default -> throw new PgCqlException("Invalid cursor");
+        };
+        values.add(value);
+      }
+      return values;
+    } catch (PgCqlException e) {
+      throw e;
+    } catch (DecodeException | ClassCastException | NullPointerException
+             | IndexOutOfBoundsException | IllegalArgumentException
+             | DateTimeException e) {
+      throw new PgCqlException("Invalid cursor");
+    }
+  }
+
+  private static String sortHash(String sort) {
+    return Integer.toHexString(sort.hashCode());
+  }
+}
@@ -1,30 +1,88 @@
 package org.folio.tlib.postgres.impl;
 
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.tlib.postgres.PgCqlCacheStats;
 import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlException;
 import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.PgCqlIndex;
 import org.folio.tlib.postgres.PgCqlQuery;
+import org.folio.tlib.postgres.TenantPgPool;
 
 /**
  * PostgreSQL table definition.
  */
 public class PgCqlDefinitionImpl implements PgCqlDefinition {
+  private static final Logger log = LogManager.getLogger(PgCqlDefinitionImpl.class);
+
+  /** Maximum length of identifiers in PostgreSQL. */
+  static final int MAX_IDENTIFIER_LENGTH = 63;
+
+  /** Access method and key of a definition in pg_indexes; partial indexes do not match. */
+  private static final Pattern INDEX_DEF = Pattern.compile(" USING (\\w+) \\((.*)\\)$");
 
   final Map<String, PgCqlFieldType> types = new HashMap<>();
 
+  PgCqlQueryCache cache;
+
+  volatile PgCqlFieldTable frozen;
+
   @Override
   public PgCqlDefinition addField(String name, PgCqlFieldType field) {
+    if (frozen != null) {
+      throw new IllegalStateException("Fields can not be added to a frozen definition");
+    }
     // if column not specified, it defaults to CQL field name.
     if (field.getColumn() == null) {
       field.withColumn(name.toLowerCase());
     }
     types.put(name.toLowerCase(), field);
+    if (cache != null) {
+      cache.clear(); // SQL of cached queries may refer to the previous field
+    }
+    return this;
+  }
+
+  @Override
+  public PgCqlDefinition withCache(int maxSize) {
+    cache = maxSize > 0 ? new PgCqlQueryCache(maxSize) : null;
+    return this;
+  }
+
+  @Override
+  public PgCqlCacheStats getCacheStats() {
+    if (cache == null) {
+      return new PgCqlCacheStats(0, 0, 0, 0, 0);
+    }
+    return cache.getStats();
+  }
+
+  @Override
+  public PgCqlDefinition freeze() {
+    frozen = new PgCqlFieldTable(types);
     return this;
   }
 
   @Override
   public PgCqlFieldType getFieldType(String name) {
+    PgCqlFieldTable table = frozen;
+    if (table != null) {
+      return table.get(name);
+    }
     return types.get(name.toLowerCase());
   }
 
@@ -35,8 +93,127 @@ public class PgCqlDefinitionImpl implements PgCqlDefinition {
 
   @Override
   public PgCqlQuery parse(String query, String q2) {
-    PgCqlQuery pgCqlQuery = new PgCqlQueryImpl();
-    pgCqlQuery.parse(this, query, q2);
+    if (cache == null || (query == null && q2 == null)) {
+      PgCqlQuery pgCqlQuery = new PgCqlQueryImpl();
+      pgCqlQuery.parse(this, query, q2);
+      return pgCqlQuery;
+    }
+    PgCqlQueryCache.Key key = new PgCqlQueryCache.Key(query, q2);
+    PgCqlQueryCache.Entry entry = cache.get(key);
+    if (entry != null) {
+      cache.count(true);
+      return new PgCqlQueryImpl(this, entry.root(), entry.clauses());
+    }
+    PgCqlQueryImpl pgCqlQuery = new PgCqlQueryImpl();
+    try {
+      pgCqlQuery.parse(this, query, q2);
+    } catch (PgCqlException e) {
+      cache.count(false);
+      throw e;
+    }
+    String shape = PgCqlShape.key(pgCqlQuery.cqlNodeRoot, this);
+    if (shape == null) {
+      cache.count(false);
+      cache.put(key, new PgCqlQueryCache.Entry(pgCqlQuery.cqlNodeRoot, pgCqlQuery.clauses));
+      return pgCqlQuery;
+    }
+    // terms differ between queries of a shape, so only the shape's SQL is shared
+    PgCqlQueryCache.ShapeKey shapeKey = new PgCqlQueryCache.ShapeKey(shape);
+    entry = cache.get(shapeKey);
+    cache.count(entry != null);
+    if (entry == null) {
+      entry = new PgCqlQueryCache.Entry(pgCqlQuery.cqlNodeRoot,
+          new PgCqlQueryImpl.Clauses(new PgCqlQueryImpl.Shape(), true));
+      cache.put(shapeKey, entry);
+    }
+    pgCqlQuery.clauses = new PgCqlQueryImpl.Clauses(entry.clauses().shape, true);
     return pgCqlQuery;
   }
+
+  /**
+   * Return the statements that add the columns of the fields, and the indexes of the fields,
+   * in order of field name and without duplicates.
+   *
+   * @param table table, optionally with schema
+   * @param existing indexes that exist, with normalized key; they are left out
+   * @return statements, columns first
+   */
+  List<String> getStatements(String table, Set<PgCqlIndex> existing) {
+    Set<String> columns = new LinkedHashSet<>();
+    Set<String> indexes = new LinkedHashSet<>();
+    for (PgCqlFieldType type : new TreeMap<>(types).values()) {
+      for (PgCqlIndex index : type.getIndexes()) {
+        if (!existing.contains(
+            new PgCqlIndex(index.method(), normalizeIndexKey(index.expression())))) {
+          // an index on a generated column needs the column first
+          columns.addAll(type.getColumnStatements(table));
+          indexes.add(index.toSql(indexName(table, index), table));
+        }
+      }
+    }
+    List<String> statements = new ArrayList<>(columns);
+    statements.addAll(indexes);
+    return statements;
+  }
+
+  static String indexName(String table, PgCqlIndex index) {
+    String name = (table.substring(table.lastIndexOf('.') + 1) + "_" + index.expression())
+        .toLowerCase()
+        .replaceAll("[^a-z0-9]+", "_")
+        .replaceAll("^_|_$", "")
+        + "_idx";
+    if (name.length() > MAX_IDENTIFIER_LENGTH) {
+      // keep it unique when truncated
+      String hash = String.format("%08x", name.hashCode());
+      name = name.substring(0, MAX_IDENTIFIER_LENGTH - hash.length() - 1) + "_" + hash;
+    }
+    return name;
+  }
+
+  /**
+   * Normalize an index key for comparison: without casts, quotes and white space.
+   */
+  static String normalizeIndexKey(String key) {
+    return key.toLowerCase()
+        .replaceAll("::[a-z_]+( varying)?", "")
+        .replaceAll("[\\s\"]", "");
+  }
+
+  /**
+   * Return the access method and normalized key of an index definition.
+   *
+   * @param indexDef definition, as in pg_indexes
+   * @return method and key; null if not recognized
+   */
+  static PgCqlIndex parseIndexDef(String indexDef) {
+    Matcher matcher = INDEX_DEF.matcher(indexDef);
+    if (!matcher.find()) {
+      return null;
+    }
+    return new PgCqlIndex(matcher.group(1).toLowerCase(), normalizeIndexKey(matcher.group(2)));
+  }
+
+  @Override
+  public List<String> getIndexStatements(String table) {
+    return getStatements(table, Set.of());
+  }
+
+  @Override
+  public Future<List<String>> getMissingIndexes(TenantPgPool pool, String table) {
+    return pool.preparedQuery(
+            "SELECT indexdef FROM pg_indexes WHERE schemaname = $1 AND tablename = $2")
+        .execute(Tuple.of(pool.getSchema(), table))
+        .map(rowSet -> {
+          Set<PgCqlIndex> existing = new HashSet<>();
+          for (Row row : rowSet) {
+            PgCqlIndex index = parseIndexDef(row.getString(0));
+            if (index != null) {
+              existing.add(index);
+            }
+          }
+          List<String> missing = getStatements(pool.getSchema() + "." + table, existing);
+          missing.forEach(sql -> log.warn("Missing index for CQL searches: {}", sql));
+          return missing;
+        });
+  }
 }
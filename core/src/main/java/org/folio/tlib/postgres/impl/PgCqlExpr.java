@@ -0,0 +1,83 @@
+package org.folio.tlib.postgres.impl;
+
+import java.util.List;
+import java.util.Objects;
+import org.folio.tlib.postgres.PgCqlFieldType;
+import org.z3950.zing.cql.CQLTermNode;
+
+/**
+ * Where clause of a query as a tree of boolean operators over terms.
+ *
+ * <p>Made from the CQL parse tree by {@link PgCqlOptimizer}; the SQL is generated from this
+ * by {@link PgCqlQueryImpl}.</p>
+ */
+sealed interface PgCqlExpr {
+
+  /**
+   * Always matches or never matches.
+   */
+  enum Constant implements PgCqlExpr {
+    TRUE,
+    FALSE
+  }
+
+  /**
+   * CQL "field relation term".
+   *
+   * <p>Two terms are equal if they are of the same field type and have the same relation
+   * and term, even if the field is written differently.</p>
+   *
+   * @param type field type of the index
+   * @param node term node
+   * @param ordinal number of the term in the query, from 0
+   */
+  record Term(PgCqlFieldType type, CQLTermNode node, int ordinal) implements PgCqlExpr {
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Term term
+          && type == term.type
+          && node.getRelation().toCQL().equals(term.node.getRelation().toCQL())
+          && node.getTerm().equals(term.node.getTerm());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(type), node.getRelation().toCQL(),
+          node.getTerm());
+    }
+  }
+
+  /**
+   * Terms with relation {@code >=} and {@code <=} of the same field, combined with AND.
+   *
+   * @param lower term with relation {@code >=}
+   * @param upper term with relation {@code <=}
+   */
+  record Range(Term lower, Term upper) implements PgCqlExpr {
+  }
+
+  /**
+   * Negation of a term or range.
+   *
+   * @param operand term or range
+   */
+  record Not(PgCqlExpr operand) implements PgCqlExpr {
+  }
+
+  /**
+   * Two or more operands that must all match; none of them AND.
+   *
+   * @param operands operands
+   */
+  record And(List<PgCqlExpr> operands) implements PgCqlExpr {
+  }
+
+  /**
+   * Two or more operands of which one must match; none of them OR.
+   *
+   * @param operands operands
+   */
+  record Or(List<PgCqlExpr> operands) implements PgCqlExpr {
+  }
+}
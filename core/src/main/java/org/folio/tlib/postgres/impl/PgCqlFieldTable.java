@@ -0,0 +1,60 @@
+package org.folio.tlib.postgres.impl;
+
+import java.util.Map;
+import org.folio.tlib.postgres.PgCqlFieldType;
+
+/**
+ * Immutable case-insensitive lookup of field types by CQL index.
+ *
+ * <p>Open addressing with linear probing in a table at most half full. The hash and the
+ * comparison work on the characters of the name, so a lookup does not allocate, unlike
+ * lower-casing the name for a HashMap.
+ */
+final class PgCqlFieldTable {
+  private final String[] names;
+  private final PgCqlFieldType[] types;
+  private final int mask;
+
+  /**
+   * Create table.
+   *
+   * @param fields field types by lower-case name
+   */
+  PgCqlFieldTable(Map<String, PgCqlFieldType> fields) {
+    int capacity = Integer.highestOneBit(Math.max(1, fields.size()) * 2) * 2;
+    names = new String[capacity];
+    types = new PgCqlFieldType[capacity];
+    mask = capacity - 1;
+    fields.forEach((name, type) -> {
+      int i = hash(name) & mask;
+      while (names[i] != null) {
+        i = (i + 1) & mask;
+      }
+      names[i] = name;
+      types[i] = type;
+    });
+  }
+
+  /**
+   * Hash that is the same for names that are {@link String#equalsIgnoreCase}.
+   */
+  static int hash(String name) {
+    int h = 0;
+    for (int i = 0; i < name.length(); i++) {
+      h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+    }
+    return h ^ (h >>> 16);
+  }
+
+  PgCqlFieldType get(String name) {
+    int i = hash(name) & mask;
+    String candidate;
+    while ((candidate = names[i]) != null) {
+      if (candidate.equalsIgnoreCase(name)) {
+        return types[i];
+      }
+      i = (i + 1) & mask;
+    }
+    return null;
+  }
+}
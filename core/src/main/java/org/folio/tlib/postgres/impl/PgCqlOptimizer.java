@@ -0,0 +1,200 @@
+package org.folio.tlib.postgres.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlException;
+import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.impl.PgCqlExpr.And;
+import org.folio.tlib.postgres.impl.PgCqlExpr.Constant;
+import org.folio.tlib.postgres.impl.PgCqlExpr.Not;
+import org.folio.tlib.postgres.impl.PgCqlExpr.Or;
+import org.folio.tlib.postgres.impl.PgCqlExpr.Range;
+import org.folio.tlib.postgres.impl.PgCqlExpr.Term;
+import org.z3950.zing.cql.CQLBoolean;
+import org.z3950.zing.cql.CQLBooleanNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLPrefixNode;
+import org.z3950.zing.cql.CQLSortNode;
+import org.z3950.zing.cql.CQLTermNode;
+
+/**
+ * Translates a CQL parse tree to a simplified {@link PgCqlExpr}.
+ *
+ * <ul>
+ *   <li>nested AND and OR are flattened, so a chain is one list;</li>
+ *   <li>terms of {@link PgCqlFieldAlwaysMatches} are TRUE, and TRUE and FALSE are folded
+ *     into the operators above them;</li>
+ *   <li>duplicate operands of AND and OR are removed;</li>
+ *   <li>NOT is pushed down to the terms, removing double negation;</li>
+ *   <li>{@code >=} and {@code <=} of the same field in AND become a {@link Range}.</li>
+ * </ul>
+ *
+ * <p>The SQL is then smaller, and equivalent queries more often give the same SQL and so
+ * the same prepared statement.</p>
+ */
+final class PgCqlOptimizer {
+
+  private final PgCqlDefinition definition;
+  /** Number of terms seen so far. */
+  private int terms;
+
+  private PgCqlOptimizer(PgCqlDefinition definition) {
+    this.definition = definition;
+  }
+
+  /**
+   * Return simplified expression for CQL node.
+   *
+   * @param node CQL node; null for no query
+   * @param definition fields of the query
+   * @return expression
+   * @throws PgCqlException for unsupported CQL constructs and indexes
+   */
+  static PgCqlExpr optimize(CQLNode node, PgCqlDefinition definition) {
+    return new PgCqlOptimizer(definition).translate(node);
+  }
+
+  private PgCqlExpr translate(CQLNode node) {
+    if (node == null) {
+      return Constant.TRUE;
+    }
+    return switch (node) {
+      case CQLBooleanNode booleanNode -> switch (booleanNode.getOperator()) {
+        case AND -> and(operands(booleanNode));
+        case OR -> or(operands(booleanNode));
+        case NOT -> and(List.of(translate(booleanNode.getLeftOperand()),
+            not(translate(booleanNode.getRightOperand()))));
+        default -> throw new PgCqlException("Unsupported operator "
+            + booleanNode.getOperator().name());
+      };
+      case CQLTermNode termNode -> {
+        PgCqlFieldType type = definition.getFieldType(termNode.getIndex());
+        if (type == null) {
+          throw new PgCqlException("Unsupported CQL index: " + termNode.getIndex());
+        }
+        int ordinal = terms++;
+        yield type instanceof PgCqlFieldAlwaysMatches ? Constant.TRUE
+            : new Term(type, termNode, ordinal);
+      }
+      case CQLSortNode sortNode -> translate(sortNode.getSubtree());
+      case CQLPrefixNode prefixNode -> translate(prefixNode.getSubtree());
+      default -> throw new PgCqlException("Unsupported CQL construct: " + node.toCQL());
+    };
+  }
+
+  /**
+   * Return the operands of a chain of the operator of a node, such as a, b, c for
+   * a OR (b OR c), each optimized.
+   *
+   * <p>Iterative, so that a long chain does not recurse deeply.</p>
+   */
+  private List<PgCqlExpr> operands(CQLBooleanNode node) {
+    CQLBoolean operator = node.getOperator();
+    List<PgCqlExpr> operands = new ArrayList<>();
+    Deque<CQLNode> stack = new ArrayDeque<>();
+    stack.push(node);
+    while (!stack.isEmpty()) {
+      CQLNode next = stack.pop();
+      if (next instanceof CQLBooleanNode booleanNode && booleanNode.getOperator() == operator) {
+        stack.push(booleanNode.getRightOperand());
+        stack.push(booleanNode.getLeftOperand());
+      } else {
+        operands.add(translate(next));
+      }
+    }
+    return operands;
+  }
+
+  static PgCqlExpr and(List<PgCqlExpr> operands) {
+    Set<PgCqlExpr> set = new LinkedHashSet<>();
+    for (PgCqlExpr operand : operands) {
+      if (operand == Constant.FALSE) {
+        return Constant.FALSE;
+      }
+      if (operand instanceof And and) {
+        set.addAll(and.operands());
+      } else if (operand != Constant.TRUE) {
+        set.add(operand);
+      }
+    }
+    List<PgCqlExpr> list = ranges(new ArrayList<>(set));
+    return switch (list.size()) {
+      case 0 -> Constant.TRUE;
+      case 1 -> list.getFirst();
+      default -> new And(List.copyOf(list));
+    };
+  }
+
+  static PgCqlExpr or(List<PgCqlExpr> operands) {
+    Set<PgCqlExpr> set = new LinkedHashSet<>();
+    for (PgCqlExpr operand : operands) {
+      if (operand == Constant.TRUE) {
+        return Constant.TRUE;
+      }
+      if (operand instanceof Or or) {
+        set.addAll(or.operands());
+      } else if (operand != Constant.FALSE) {
+        set.add(operand);
+      }
+    }
+    return switch (set.size()) {
+      case 0 -> Constant.FALSE;
+      case 1 -> set.iterator().next();
+      default -> new Or(List.copyOf(set));
+    };
+  }
+
+  static PgCqlExpr not(PgCqlExpr operand) {
+    return switch (operand) {
+      case Constant constant -> constant == Constant.TRUE ? Constant.FALSE : Constant.TRUE;
+      case Not not -> not.operand();
+      case And and -> or(and.operands().stream().map(PgCqlOptimizer::not).toList());
+      case Or or -> and(or.operands().stream().map(PgCqlOptimizer::not).toList());
+      case Term term -> new Not(term);
+      case Range range -> new Not(range);
+    };
+  }
+
+  /**
+   * Replace a term with relation {@code >=} and one with {@code <=} of the same field type
+   * with a range at the position of the first.
+   */
+  private static List<PgCqlExpr> ranges(List<PgCqlExpr> operands) {
+    Map<PgCqlFieldType, Integer> lowers = new HashMap<>();
+    Map<PgCqlFieldType, Integer> uppers = new HashMap<>();
+    boolean merged = false;
+    for (int i = 0; i < operands.size(); i++) {
+      if (!(operands.get(i) instanceof Term term)
+          || term.node().getTerm().isEmpty()
+          || !term.node().getRelation().getModifiers().isEmpty()) {
+        continue;
+      }
+      String base = term.node().getRelation().getBase();
+      boolean lower = ">=".equals(base);
+      if (!lower && !"<=".equals(base)) {
+        continue;
+      }
+      Integer other = (lower ? uppers : lowers).remove(term.type());
+      if (other == null) {
+        (lower ? lowers : uppers).putIfAbsent(term.type(), i);
+        continue;
+      }
+      Term first = (Term) operands.get(other);
+      operands.set(other, lower ? new Range(term, first) : new Range(first, term));
+      operands.set(i, null);
+      merged = true;
+    }
+    if (merged) {
+      operands.removeIf(operand -> operand == null);
+    }
+    return operands;
+  }
+}
@@ -0,0 +1,125 @@
+package org.folio.tlib.postgres.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.folio.tlib.postgres.PgCqlCacheStats;
+import org.z3950.zing.cql.CQLNode;
+
+/**
+ * Bounded cache of parsed CQL queries; the least recently used queries are evicted first.
+ *
+ * <p>A query with a shape, see {@link PgCqlShape}, is cached by shape, and shares the SQL
+ * with other queries of the shape; other queries are cached by their text.</p>
+ *
+ * <p>Lookups do not lock: each entry records when it was last used, and when the cache is
+ * over its size, one thread at a time evicts the least recently used tenth of the entries.
+ * The size may be exceeded briefly while another thread evicts.</p>
+ */
+class PgCqlQueryCache {
+
+  record Key(String query, String q2) {
+  }
+
+  record ShapeKey(String shape) {
+  }
+
+  record Entry(CQLNode root, PgCqlQueryImpl.Clauses clauses) {
+  }
+
+  private static final class Node {
+    final Entry entry;
+    volatile long lastUsed;
+
+    Node(Entry entry, long lastUsed) {
+      this.entry = entry;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  private final int maxSize;
+  private final Map<Object, Node> entries = new ConcurrentHashMap<>();
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  PgCqlQueryCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Return cached entry; the caller counts one hit or miss for each query, see
+   * {@link #count(boolean)}.
+   *
+   * @param key {@link Key} or {@link ShapeKey}
+   * @return entry; null if not cached
+   */
+  Entry get(Object key) {
+    Node node = entries.get(key);
+    if (node == null) {
+      return null;
+    }
+    node.lastUsed = clock.incrementAndGet();
+    return node.entry;
+  }
+
+  void count(boolean hit) {
+    if (hit) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+  }
+
+  void put(Object key, Entry entry) {
+    entries.put(key, new Node(entry, clock.incrementAndGet()));
+    if (entries.size() > maxSize && evicting.compareAndSet(false, true)) {
+      try {
+        evict();
+      } finally {
+        evicting.set(false);
+      }
+    }
+  }
+
+  private void evict() {
+    int excess = entries.size() - maxSize;
+    if (excess <= 0) {
+      return;
+    }
+    long[] stamps = new long[entries.size()];
+    int n = 0;
+    for (Node node : entries.values()) {
+      if (n == stamps.length) {
+        break;
+      }
+      stamps[n++] = node.lastUsed;
+    }
+    if (n == 0) {
+      return;
+    }
+    Arrays.sort(stamps, 0, n);
+    int remove = Math.min(n, Math.max(excess, maxSize / 10));
+    long oldest = stamps[remove - 1];
+    for (Map.Entry<Object, Node> e : entries.entrySet()) {
+      Node node = e.getValue();
+      if (node.lastUsed <= oldest && entries.remove(e.getKey(), node)) {
+        evictions.increment();
+      }
+    }
+  }
+
+  void clear() {
+    entries.clear();
+  }
+
+  PgCqlCacheStats getStats() {
+    return new PgCqlCacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(),
+        maxSize);
+  }
+}
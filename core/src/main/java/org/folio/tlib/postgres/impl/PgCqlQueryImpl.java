@@ -1,13 +1,24 @@
 package org.folio.tlib.postgres.impl;
 
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import io.vertx.sqlclient.data.Numeric;
 import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.tlib.postgres.PgCqlDefinition;
 import org.folio.tlib.postgres.PgCqlException;
 import org.folio.tlib.postgres.PgCqlFieldType;
 import org.folio.tlib.postgres.PgCqlQuery;
-import org.z3950.zing.cql.CQLBooleanNode;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldBase;
+import org.z3950.zing.cql.CQLAndNode;
 import org.z3950.zing.cql.CQLNode;
 import org.z3950.zing.cql.CQLParseException;
 import org.z3950.zing.cql.CQLParser;
@@ -23,35 +34,118 @@ import org.z3950.zing.cql.ModifierSet;
 public class PgCqlQueryImpl implements PgCqlQuery {
   private static final Logger log = LogManager.getLogger(PgCqlQueryImpl.class);
 
-  final CQLParser parser = new CQLParser(CQLParser.V1POINT2);
+  /**
+   * Parser for each thread; a parser can be reused, but not by two threads at a time.
+   */
+  private static final ThreadLocal<CQLParser> PARSER =
+      ThreadLocal.withInitial(() -> new CQLParser(CQLParser.V1POINT2));
 
   CQLNode cqlNodeRoot;
 
   PgCqlDefinition pgCqlDefinition;
 
+  Clauses clauses = new Clauses();
+
+  /**
+   * SQL generated for a parsed query.
+   *
+   * <p>The parsed query is not modified once parsed, so the SQL can be saved and shared
+   * by queries with the same parse tree, such as those from {@link PgCqlQueryCache}.
+   * Each member is computed on first use; concurrent use may compute it more than once,
+   * but the result is the same.</p>
+   */
+  static final class Clauses {
+    final Shape shape;
+    /** Whether the query has a shape, see {@link PgCqlShape}. */
+    final boolean shaped;
+    volatile Clause where;
+    volatile Clause whereParameters;
+    volatile PgCqlExpr expr;
+
+    Clauses() {
+      this(new Shape(), false);
+    }
+
+    Clauses(Shape shape, boolean shaped) {
+      this.shape = shape;
+      this.shaped = shaped;
+    }
+  }
+
+  /**
+   * SQL that is the same for queries of the same shape; shared by those queries.
+   */
+  static final class Shape {
+    volatile Clause orderBy;
+    volatile Clause orderByFields;
+    volatile Template template;
+  }
+
+  /**
+   * Where clause with bind parameters for queries of a shape.
+   *
+   * @param sql SQL
+   * @param sources where each bind parameter value comes from; null if the values can not
+   *     be found without generating the SQL
+   */
+  record Template(String sql, List<ParamSource> sources) {
+  }
+
+  /**
+   * Where a bind parameter value comes from.
+   *
+   * @param terms term numbers, see {@link PgCqlExpr.Term#ordinal()}
+   * @param any true for an array of the exact values of the terms; false for the value
+   *     at offset of those bound for the one term
+   * @param offset offset in the values bound for the term
+   */
+  record ParamSource(int[] terms, boolean any, int offset) {
+  }
+
+  /**
+   * Saved SQL that may be null.
+   *
+   * @param sql SQL
+   * @param values bind parameter values for the SQL numbered from $1; null if inlined
+   */
+  record Clause(String sql, List<Object> values) {
+  }
+
+  PgCqlQueryImpl() {
+  }
+
+  PgCqlQueryImpl(PgCqlDefinition definition, CQLNode root, Clauses clauses) {
+    this.pgCqlDefinition = definition;
+    this.cqlNodeRoot = root;
+    this.clauses = clauses;
+  }
+
   @Override
   public void parse(PgCqlDefinition definition, String query, String q2) {
-    String resultingQuery;
-
     pgCqlDefinition = definition;
+    clauses = new Clauses();
     try {
       if (query == null && q2 == null) {
         cqlNodeRoot = null;
         return;
       }
+      CQLParser parser = PARSER.get();
       if (query != null && q2 != null) {
-        // get rid of sortby as it can't be combined and we don't
-        // it for sorting anyway.
+        // combine the parse trees, rather than the strings, so each is parsed once.
+        // Get rid of sortby as it can't be combined and we don't need it for sorting anyway.
+        log.debug("Parsing {} and {}", query, q2);
         CQLNode node = parser.parse(query);
         if (node instanceof CQLSortNode cqlSortNode) {
           node = cqlSortNode.getSubtree();
         }
-        resultingQuery = "(" + node.toCQL() + ") AND (" + q2 + ")";
-      } else if (query != null) {
-        resultingQuery = query;
-      } else {
-        resultingQuery = q2;
+        CQLNode node2 = parser.parse(q2);
+        if (node2 instanceof CQLSortNode) {
+          throw new PgCqlException("sortby not allowed in second query: " + q2);
+        }
+        cqlNodeRoot = new CQLAndNode(node, node2, new ModifierSet("and"));
+        return;
       }
+      String resultingQuery = query != null ? query : q2;
       log.debug("Parsing {}", resultingQuery);
       cqlNodeRoot = parser.parse(resultingQuery);
     } catch (CQLParseException | IOException e) {
@@ -61,106 +155,580 @@ public class PgCqlQueryImpl implements PgCqlQuery {
 
   @Override
   public String getWhereClause() {
-    return handleWhere(cqlNodeRoot);
+    Clause clause = clauses.where;
+    if (clause == null) {
+      clause = new Clause(handleWhere(expr(), null), null);
+      clauses.where = clause;
+    }
+    return clause.sql();
+  }
+
+  @Override
+  public String getWhereClause(Tuple tuple) {
+    if (tuple.size() > 0) {
+      // numbering depends on the tuple, so only the common case of $1.. is saved
+      return handleWhere(expr(), tuple);
+    }
+    Clause clause = clauses.whereParameters;
+    if (clause == null) {
+      clause = clauses.shaped ? handleShapedWhere() : handleWhereParameters(null);
+      clauses.whereParameters = clause;
+    }
+    clause.values().forEach(tuple::addValue);
+    return clause.sql();
+  }
+
+  private Clause handleWhereParameters(List<ParamSource> sources) {
+    Tuple values = Tuple.tuple();
+    String sql = handleWhere(expr(), values, sources);
+    List<Object> list = new ArrayList<>(values.size());
+    for (int i = 0; i < values.size(); i++) {
+      list.add(values.getValue(i));
+    }
+    return new Clause(sql, Collections.unmodifiableList(list));
+  }
+
+  /**
+   * Return where clause with bind parameters of a query with a shape.
+   *
+   * <p>The SQL is that of the first query of the shape; only the values are taken from the
+   * terms of this query. The template is only saved if the values so found are those of the
+   * generated SQL.</p>
+   */
+  private Clause handleShapedWhere() {
+    Template template = clauses.shape.template;
+    if (template != null && template.sources() != null) {
+      List<Object> values = extractValues(template.sources());
+      if (values != null) {
+        return new Clause(template.sql(), values);
+      }
+    }
+    List<ParamSource> sources = new ArrayList<>();
+    Clause clause = handleWhereParameters(sources);
+    if (template == null) {
+      boolean valid = !sources.contains(null)
+          && Objects.deepEquals(clause.values().toArray(), toArray(extractValues(sources)));
+      clauses.shape.template = new Template(clause.sql(), valid ? List.copyOf(sources) : null);
+    }
+    return clause;
+  }
+
+  private static Object[] toArray(List<Object> values) {
+    return values == null ? null : values.toArray();
+  }
+
+  /**
+   * Return bind parameter values from the terms of the query.
+   *
+   * @param sources where each value comes from
+   * @return values; null if not found
+   */
+  List<Object> extractValues(List<ParamSource> sources) {
+    List<CQLTermNode> terms = PgCqlShape.terms(cqlNodeRoot);
+    List<Object> termValues = new ArrayList<>(Collections.nCopies(terms.size(), null));
+    List<Object> values = new ArrayList<>(sources.size());
+    for (ParamSource source : sources) {
+      for (int term : source.terms()) {
+        if (term >= terms.size()) {
+          return null;
+        }
+      }
+      Object value = source.any()
+          ? exactValues(terms, source.terms())
+          : termValue(terms, termValues, source.terms()[0], source.offset());
+      if (value == null) {
+        return null;
+      }
+      values.add(value);
+    }
+    return Collections.unmodifiableList(values);
+  }
+
+  private Object exactValues(List<CQLTermNode> terms, int[] ordinals) {
+    Object[] array = null;
+    for (int i = 0; i < ordinals.length; i++) {
+      CQLTermNode termNode = terms.get(ordinals[i]);
+      Object value = pgCqlDefinition.getFieldType(termNode.getIndex()).getExactValue(termNode);
+      if (value == null) {
+        return null;
+      }
+      if (array == null) {
+        array = (Object[]) Array.newInstance(value.getClass(), ordinals.length);
+      }
+      array[i] = value;
+    }
+    return array;
+  }
+
+  /**
+   * Return a value bound for a term, binding the values of the term on first use.
+   */
+  private Object termValue(List<CQLTermNode> terms, List<Object> termValues, int ordinal,
+      int offset) {
+
+    Tuple tuple = (Tuple) termValues.get(ordinal);
+    if (tuple == null) {
+      CQLTermNode termNode = terms.get(ordinal);
+      tuple = Tuple.tuple();
+      pgCqlDefinition.getFieldType(termNode.getIndex())
+          .appendTermNode(new StringBuilder(), termNode, tuple);
+      termValues.set(ordinal, tuple);
+    }
+    return offset < tuple.size() ? tuple.getValue(offset) : null;
   }
 
   @Override
   public String getOrderByClause() {
-    return handleOrderBy(cqlNodeRoot, true);
+    Clause clause = clauses.shape.orderBy;
+    if (clause == null) {
+      clause = new Clause(handleOrderBy(cqlNodeRoot, true), null);
+      clauses.shape.orderBy = clause;
+    }
+    return clause.sql();
   }
 
   @Override
   public String getOrderByFields() {
-    return handleOrderBy(cqlNodeRoot, false);
+    Clause clause = clauses.shape.orderByFields;
+    if (clause == null) {
+      clause = new Clause(handleOrderBy(cqlNodeRoot, false), null);
+      clauses.shape.orderByFields = clause;
+    }
+    return clause.sql();
   }
 
   String handleWhere(CQLNode node) {
-    if (node == null) {
-      return null;
+    return handleWhere(node, null);
+  }
+
+  /**
+   * Return SQL for CQL node.
+   *
+   * @param node CQL node
+   * @param tuple bind parameter values; null for terms inlined in SQL
+   * @return SQL; null if "always true"
+   */
+  String handleWhere(CQLNode node, Tuple tuple) {
+    return handleWhere(PgCqlOptimizer.optimize(node, pgCqlDefinition), tuple, null);
+  }
+
+  private String handleWhere(PgCqlExpr expr, Tuple tuple) {
+    return handleWhere(expr, tuple, null);
+  }
+
+  private String handleWhere(PgCqlExpr expr, Tuple tuple, List<ParamSource> sources) {
+    StringBuilder sql = new StringBuilder();
+    return appendWhere(sql, expr, tuple, sources) ? sql.toString() : null;
+  }
+
+  /**
+   * Return the optimized expression of the query, computed on first use.
+   */
+  private PgCqlExpr expr() {
+    PgCqlExpr expr = clauses.expr;
+    if (expr == null) {
+      expr = PgCqlOptimizer.optimize(cqlNodeRoot, pgCqlDefinition);
+      clauses.expr = expr;
     }
-    return switch (node) {
-      case CQLBooleanNode booleanNode -> handle(booleanNode);
-      case CQLTermNode termNode -> {
-        PgCqlFieldType type = pgCqlDefinition.getFieldType(termNode.getIndex());
-        if (type == null) {
-          throw new PgCqlException("Unsupported CQL index: " + termNode.getIndex());
+    return expr;
+  }
+
+  /**
+   * Append SQL for expression.
+   *
+   * <p>All of the where clause is written to one buffer. If a term turns out to be
+   * "always true", what was appended for it is removed again, both SQL and parameters.
+   *
+   * @param sql SQL buffer
+   * @param expr expression
+   * @param tuple bind parameter values; null for terms inlined in SQL
+   * @param sources where each bind parameter value comes from; null if not needed
+   * @return false if "always true" and nothing appended
+   */
+  boolean appendWhere(StringBuilder sql, PgCqlExpr expr, Tuple tuple,
+      List<ParamSource> sources) {
+
+    return switch (expr) {
+      case PgCqlExpr.Constant constant -> {
+        if (constant == PgCqlExpr.Constant.TRUE) {
+          yield false;
+        }
+        sql.append("FALSE");
+        yield true;
+      }
+      case PgCqlExpr.Term term -> {
+        int size = tuple == null ? 0 : tuple.size();
+        boolean appended = term.type().appendTermNode(sql, term.node(), tuple);
+        for (int i = size; sources != null && i < tuple.size(); i++) {
+          sources.add(new ParamSource(new int[] {term.ordinal()}, false, i - size));
         }
-        yield type.handleTermNode(termNode);
+        yield appended;
       }
-      case CQLSortNode sortNode -> handleWhere(sortNode.getSubtree());
-      case CQLPrefixNode prefixNode -> handleWhere(prefixNode.getSubtree());
-      default -> throw new PgCqlException("Unsupported CQL construct: " + node.toCQL());
+      case PgCqlExpr.Range range -> {
+        PgCqlExpr.Term lower = range.lower();
+        int size = tuple == null ? 0 : tuple.size();
+        if (lower.type().appendRange(sql, lower.node(), range.upper().node(), tuple)) {
+          addRangeSources(sources, range, tuple == null ? 0 : tuple.size() - size);
+          yield true;
+        }
+        yield appendList(sql, List.of(lower, range.upper()), true, tuple, sources);
+      }
+      case PgCqlExpr.Not not -> appendNot(sql, not, tuple, sources);
+      case PgCqlExpr.And and -> appendList(sql, and.operands(), true, tuple, sources);
+      case PgCqlExpr.Or or -> appendList(sql, or.operands(), false, tuple, sources);
     };
   }
 
-  private String handle(CQLBooleanNode booleanNode) {
-    String left = handleWhere(booleanNode.getLeftOperand());
-    String right = handleWhere(booleanNode.getRightOperand());
-    switch (booleanNode.getOperator()) {
-      case OR:
-        if (right != null && left != null) {
-          return "(" + left + " OR " + right + ")";
-        }
-        return null;
-      case AND:
-        if (right != null && left != null) {
-          return "(" + left + " AND " + right + ")";
-        } else if (right != null) {
-          return right;
-        } else {
-          return left;
+  /**
+   * Add sources of the values bound for a range; the first value of each term if there is
+   * one value for each, otherwise unknown.
+   */
+  private static void addRangeSources(List<ParamSource> sources, PgCqlExpr.Range range,
+      int count) {
+
+    if (sources == null) {
+      return;
+    }
+    if (count == 2) {
+      sources.add(new ParamSource(new int[] {range.lower().ordinal()}, false, 0));
+      sources.add(new ParamSource(new int[] {range.upper().ordinal()}, false, 0));
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      sources.add(null);
+    }
+  }
+
+  private boolean appendNot(StringBuilder sql, PgCqlExpr.Not not, Tuple tuple,
+      List<ParamSource> sources) {
+
+    final int start = sql.length();
+    final int tupleSize = tuple == null ? 0 : tuple.size();
+    sql.append("NOT ");
+    if (!appendWhere(sql, not.operand(), tuple, sources)) {
+      // NOT "always true"
+      truncate(sql, start, tuple, tupleSize, sources);
+      sql.append("FALSE");
+    }
+    return true;
+  }
+
+  /**
+   * Append operands joined by AND or OR.
+   *
+   * <p>Exact-match terms of a field in OR are combined into one
+   * {@code column = ANY($1)}, or {@code column IN (..)} when inlined; negated exact-match
+   * terms of a field in AND likewise into one {@code NOT column = ANY($1)}. See
+   * {@link PgCqlFieldType#getExactValue(CQLTermNode)}. A field with one exact-match
+   * term is translated as usual.</p>
+   *
+   * @param sql SQL buffer
+   * @param operands operands
+   * @param and true for AND; false for OR
+   * @param tuple bind parameter values; null for terms inlined in SQL
+   * @param sources where each bind parameter value comes from; null if not needed
+   * @return false if "always true" and nothing appended
+   */
+  private boolean appendList(StringBuilder sql, List<PgCqlExpr> operands, boolean and,
+      Tuple tuple, List<ParamSource> sources) {
+
+    final int start = sql.length();
+    final int tupleSize = tuple == null ? 0 : tuple.size();
+    PgCqlFieldType[] exactTypes = new PgCqlFieldType[operands.size()];
+    Map<PgCqlFieldType, List<Object>> exactValues = new HashMap<>();
+    Map<PgCqlFieldType, List<Integer>> exactTerms = new HashMap<>();
+    for (int i = 0; i < operands.size(); i++) {
+      PgCqlExpr operand = operands.get(i);
+      if (and) {
+        operand = operand instanceof PgCqlExpr.Not not ? not.operand() : null;
+      }
+      if (operand instanceof PgCqlExpr.Term term) {
+        Object value = term.type().getExactValue(term.node());
+        if (value != null) {
+          exactTypes[i] = term.type();
+          exactValues.computeIfAbsent(term.type(), x -> new ArrayList<>()).add(value);
+          exactTerms.computeIfAbsent(term.type(), x -> new ArrayList<>()).add(term.ordinal());
         }
-      case NOT:
-        if (right != null && left != null) {
-          return "(" + left + " AND NOT " + right + ")";
-        } else if (right != null) {
-          return "NOT (" + right + ")";
+      }
+    }
+    final String operator = and ? " AND " : " OR ";
+    int count = 0;
+    sql.append('(');
+    for (int i = 0; i < operands.size(); i++) {
+      PgCqlFieldType type = exactTypes[i];
+      List<Object> values = type == null ? null : exactValues.get(type);
+      if (values != null && values.size() != 1) {
+        // all terms of the field at the first one; empty when already appended
+        if (!values.isEmpty()) {
+          sql.append(count++ > 0 ? operator : "");
+          appendAny(sql, type.getColumn(), values, and, tuple);
+          if (sources != null && tuple != null) {
+            int[] terms = exactTerms.get(type).stream().mapToInt(Integer::intValue).toArray();
+            sources.add(new ParamSource(terms, true, 0));
+          }
+          exactValues.put(type, List.of());
         }
-        return "FALSE";
-      default:
-        throw new PgCqlException("Unsupported operator "
-            + booleanNode.getOperator().name());
+        continue;
+      }
+      final int mark = sql.length();
+      final int tupleMark = tuple == null ? 0 : tuple.size();
+      sql.append(count > 0 ? operator : "");
+      if (appendWhere(sql, operands.get(i), tuple, sources)) {
+        count++;
+      } else if (and) {
+        // an operand that is always true is left out of AND
+        truncate(sql, mark, tuple, tupleMark, sources);
+      } else {
+        // OR is always true if any operand is
+        truncate(sql, start, tuple, tupleSize, sources);
+        return false;
+      }
+    }
+    if (count == 0) {
+      sql.setLength(start);
+      return false;
+    }
+    if (count == 1) {
+      sql.deleteCharAt(start);
+    } else {
+      sql.append(')');
     }
+    return true;
+  }
+
+  private static void appendAny(StringBuilder sql, String column, List<Object> values,
+      boolean negate, Tuple tuple) {
+
+    sql.append(negate ? "NOT " : "").append(column);
+    if (tuple != null) {
+      Object[] array = (Object[]) Array.newInstance(values.getFirst().getClass(), values.size());
+      sql.append(" = ANY(");
+      PgCqlFieldBase.appendBindValue(sql, tuple, values.toArray(array));
+      sql.append(')');
+      return;
+    }
+    sql.append(" IN (");
+    for (int i = 0; i < values.size(); i++) {
+      sql.append(i > 0 ? ", '" : "'")
+          .append(values.get(i).toString().replace("'", "''"))
+          .append('\'');
+    }
+    sql.append(')');
+  }
+
+  /**
+   * Remove SQL and bind parameter values appended after a point.
+   *
+   * @param sql SQL buffer
+   * @param length length of SQL to keep
+   * @param tuple bind parameter values; null for terms inlined in SQL
+   * @param size number of values to keep
+   * @param sources where each bind parameter value comes from; null if not needed
+   */
+  static void truncate(StringBuilder sql, int length, Tuple tuple, int size,
+      List<ParamSource> sources) {
+
+    sql.setLength(length);
+    if (sources != null && sources.size() > size) {
+      sources.subList(size, sources.size()).clear();
+    }
+    if (tuple == null || tuple.size() == size) {
+      return;
+    }
+    List<Object> keep = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      keep.add(tuple.getValue(i));
+    }
+    tuple.clear();
+    keep.forEach(tuple::addValue);
+  }
+
+  /**
+   * Sort key of the sortby part of the query.
+   *
+   * @param column SQL column
+   * @param descending whether sorted in descending order
+   */
+  record SortKey(String column, boolean descending) {
   }
 
   String handleOrderBy(CQLNode node, boolean includeOps) {
-    if (node == null) {
+    List<SortKey> keys = sortKeys(node);
+    if (keys.isEmpty()) {
       return null;
     }
+    StringBuilder res = new StringBuilder();
+    for (SortKey key : keys) {
+      if (!res.isEmpty()) {
+        res.append(", ");
+      }
+      res.append(key.column());
+      if (includeOps) {
+        res.append(key.descending() ? " DESC" : " ASC");
+      }
+    }
+    return res.toString();
+  }
+
+  List<SortKey> sortKeys(CQLNode node) {
+    if (node == null) {
+      return List.of();
+    }
     return switch (node) {
       case CQLSortNode sortNode -> {
-        StringBuilder res = new StringBuilder();
+        List<SortKey> keys = new ArrayList<>();
         for (ModifierSet modifierSet : sortNode.getSortIndexes()) {
-          if (!res.isEmpty()) {
-            res.append(", ");
-          }
           PgCqlFieldType type = pgCqlDefinition.getFieldType(modifierSet.getBase());
           if (type == null) {
             throw new PgCqlException("Unsupported CQL index: " + modifierSet.getBase());
           }
-          res.append(type.getColumn());
-          if (includeOps) {
-            res.append(" ");
-            String desc = "ASC";
-            for (Modifier modifier : modifierSet.getModifiers()) {
-              switch (modifier.getType()) {
-                case "sort.ascending":
-                  break;
-                case "sort.descending":
-                  desc = "DESC";
-                  break;
-                default:
-                  throw new PgCqlException("Unsupported sort modifier: "
-                      + modifier.getType());
-              }
+          boolean descending = false;
+          for (Modifier modifier : modifierSet.getModifiers()) {
+            switch (modifier.getType()) {
+              case "sort.ascending":
+                break;
+              case "sort.descending":
+                descending = true;
+                break;
+              default:
+                throw new PgCqlException("Unsupported sort modifier: "
+                    + modifier.getType());
             }
-            res.append(desc);
           }
+          keys.add(new SortKey(type.getColumn(), descending));
         }
-        yield res.toString();
+        yield keys;
       }
-      case CQLPrefixNode prefixNode -> handleOrderBy(prefixNode.getSubtree(), includeOps);
-      default -> null;
+      case CQLPrefixNode prefixNode -> sortKeys(prefixNode.getSubtree());
+      default -> List.of();
     };
   }
+
+  /**
+   * Return the sort keys followed by the tie-breaker, unless it is sorted on already.
+   *
+   * <p>The tie-breaker is sorted in the direction of the last sort key, so that a sort in
+   * one direction stays in one direction.
+   */
+  List<SortKey> keysetKeys(String tieBreaker) {
+    List<SortKey> keys = new ArrayList<>(sortKeys(cqlNodeRoot));
+    if (keys.stream().noneMatch(key -> key.column().equals(tieBreaker))) {
+      keys.add(new SortKey(tieBreaker, !keys.isEmpty() && keys.getLast().descending()));
+    }
+    return keys;
+  }
+
+  @Override
+  public String getKeysetOrderByClause(String tieBreaker) {
+    return keysetOrderBy(keysetKeys(tieBreaker));
+  }
+
+  /**
+   * Return ORDER BY arguments for keys.
+   *
+   * <p>NULL is greater than all values, so it is last ascending and first descending; this
+   * is the default of PostgreSQL, so that plain indexes are used, made explicit.
+   */
+  private static String keysetOrderBy(List<SortKey> keys) {
+    StringBuilder res = new StringBuilder();
+    for (SortKey key : keys) {
+      if (!res.isEmpty()) {
+        res.append(", ");
+      }
+      res.append(key.column()).append(key.descending() ? " DESC NULLS FIRST" : " ASC NULLS LAST");
+    }
+    return res.toString();
+  }
+
+  @Override
+  public String getKeysetWhereClause(String tieBreaker, String cursor, Tuple tuple) {
+    if (cursor == null) {
+      return null;
+    }
+    List<SortKey> keys = keysetKeys(tieBreaker);
+    List<Object> values = PgCqlCursor.decode(cursor, keysetOrderBy(keys), keys.size());
+    List<String> params = new ArrayList<>(keys.size());
+    for (Object value : values) {
+      params.add(value == null ? null : PgCqlFieldBase.bindValue(tuple, value));
+    }
+    boolean descending = keys.getFirst().descending();
+    if (!params.contains(null)
+        && keys.stream().allMatch(key -> key.descending() == descending)) {
+      // row comparison can use a multicolumn index
+      StringBuilder sql = new StringBuilder("(");
+      for (int i = 0; i < keys.size(); i++) {
+        sql.append(i == 0 ? "" : ", ").append(keys.get(i).column());
+      }
+      sql.append(descending ? ") < (" : ") > (").append(String.join(", ", params)).append(')');
+      if (descending) {
+        // NULL sorts before the values, and the comparison is NULL for it
+        return sql.toString();
+      }
+      // NULL sorts after the values: a IS NULL OR (a = $1 AND b IS NULL) ..
+      StringBuilder nulls = new StringBuilder();
+      for (int i = 0; i < keys.size(); i++) {
+        if (keys.get(i).column().equals(tieBreaker)) {
+          continue; // not null
+        }
+        nulls.append(" OR ").append(i == 0 ? "" : "(");
+        for (int j = 0; j < i; j++) {
+          nulls.append(keys.get(j).column()).append(" = ").append(params.get(j)).append(" AND ");
+        }
+        nulls.append(keys.get(i).column()).append(i == 0 ? " IS NULL" : " IS NULL)");
+      }
+      return nulls.isEmpty() ? sql.toString() : "(" + sql + nulls + ")";
+    }
+    // mixed directions or NULL in cursor: a > $1 OR (a = $1 AND (b < $2 OR (b = $2 AND ..)))
+    String sql = null; // null for no rows
+    for (int i = keys.size() - 1; i >= 0; i--) {
+      SortKey key = keys.get(i);
+      String param = params.get(i);
+      String after = keysetAfter(key, param, !key.column().equals(tieBreaker));
+      if (sql != null) {
+        String equal = key.column() + (param == null ? " IS NULL" : " = " + param);
+        sql = after == null ? "(" + equal + " AND " + sql + ")"
+            : "(" + after + " OR (" + equal + " AND " + sql + "))";
+      } else {
+        sql = after;
+      }
+    }
+    return sql == null ? "FALSE" : sql;
+  }
+
+  /**
+   * Return condition for the values of key after param, NULL being greater than all values.
+   *
+   * @param param bind parameter; null for NULL
+   * @param nullable whether the column may be NULL
+   * @return condition; null if no value is after
+   */
+  private static String keysetAfter(SortKey key, String param, boolean nullable) {
+    if (param == null) {
+      return key.descending() ? key.column() + " IS NOT NULL" : null;
+    }
+    if (key.descending()) {
+      return key.column() + " < " + param;
+    }
+    return nullable ? "(" + key.column() + " > " + param + " OR " + key.column() + " IS NULL)"
+        : key.column() + " > " + param;
+  }
+
+  @Override
+  public String getCursor(Row row, String tieBreaker) {
+    List<SortKey> keys = keysetKeys(tieBreaker);
+    List<Object> values = new ArrayList<>(keys.size());
+    for (SortKey key : keys) {
+      String column = key.column().substring(key.column().lastIndexOf('.') + 1);
+      int pos = row.getColumnIndex(column);
+      if (pos == -1) {
+        throw new PgCqlException("Sort column not in row: " + column);
+      }
+      Object value = row.getValue(pos);
+      if (value == null && key.column().equals(tieBreaker)) {
+        throw new PgCqlException("Tie-breaker is null: " + column);
+      }
+      values.add(value instanceof Numeric numeric ? numeric.bigDecimalValue() : value);
+    }
+    return PgCqlCursor.encode(keysetOrderBy(keys), values);
+  }
 }
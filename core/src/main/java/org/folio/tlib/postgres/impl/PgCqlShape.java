@@ -0,0 +1,126 @@
+package org.folio.tlib.postgres.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlFieldType;
+import org.z3950.zing.cql.CQLBooleanNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLPrefixNode;
+import org.z3950.zing.cql.CQLSortNode;
+import org.z3950.zing.cql.CQLTermNode;
+import org.z3950.zing.cql.Modifier;
+import org.z3950.zing.cql.ModifierSet;
+
+/**
+ * Shape of a CQL query: boolean structure, indexes, relations and sort keys, with the terms
+ * abstracted out.
+ *
+ * <p>Queries of the same shape give the same SQL with bind parameters; only the values
+ * differ. A query only has a shape if the field type of every term has a term shape; see
+ * {@link PgCqlFieldType#getTermShape(CQLTermNode)}. As duplicate terms are removed when
+ * translating, the shape also tells which terms are the same.</p>
+ *
+ * <p>Terms are numbered from 0 in the order they appear in the query, as in
+ * {@link PgCqlExpr.Term#ordinal()}.</p>
+ */
+final class PgCqlShape {
+
+  private record TermKey(PgCqlFieldType type, String relation, String term) {
+  }
+
+  private PgCqlShape() {
+  }
+
+  /**
+   * Return the shape of a query.
+   *
+   * @param root parsed query
+   * @param definition fields of the query
+   * @return shape; null if the query has none
+   */
+  static String key(CQLNode root, PgCqlDefinition definition) {
+    StringBuilder key = new StringBuilder();
+    Map<TermKey, Integer> seen = new HashMap<>();
+    int ordinal = 0;
+    Deque<Object> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      switch (stack.pop()) {
+        case String token -> key.append(token);
+        case CQLBooleanNode booleanNode -> {
+          key.append('(').append(booleanNode.getOperator().name());
+          for (Modifier modifier : booleanNode.getModifiers()) {
+            key.append('/').append(modifier.toCQL());
+          }
+          stack.push(")");
+          stack.push(booleanNode.getRightOperand());
+          stack.push(" ");
+          stack.push(booleanNode.getLeftOperand());
+          stack.push(" ");
+        }
+        case CQLTermNode termNode -> {
+          PgCqlFieldType type = definition.getFieldType(termNode.getIndex());
+          String termShape = type == null ? null : type.getTermShape(termNode);
+          if (termShape == null) {
+            return null;
+          }
+          String relation = termNode.getRelation().toCQL();
+          key.append(termNode.getIndex().toLowerCase()).append(' ').append(relation)
+              .append(" <").append(termShape).append('>');
+          Integer first = seen.putIfAbsent(new TermKey(type, relation, termNode.getTerm()),
+              ordinal);
+          if (first != null) {
+            key.append('#').append(first);
+          }
+          ordinal++;
+        }
+        case CQLSortNode sortNode -> {
+          StringBuilder sortBy = new StringBuilder(" sortby");
+          for (ModifierSet modifierSet : sortNode.getSortIndexes()) {
+            sortBy.append(' ').append(modifierSet.toCQL());
+          }
+          stack.push(sortBy.toString());
+          stack.push(sortNode.getSubtree());
+        }
+        default -> {
+          return null;
+        }
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Return the terms of a query, in order.
+   *
+   * @param root parsed query
+   * @return terms
+   */
+  static List<CQLTermNode> terms(CQLNode root) {
+    List<CQLTermNode> terms = new ArrayList<>();
+    Deque<CQLNode> stack = new ArrayDeque<>();
+    if (root != null) {
+      stack.push(root);
+    }
+    while (!stack.isEmpty()) {
+      switch (stack.pop()) {
+        case CQLBooleanNode booleanNode -> {
+          stack.push(booleanNode.getRightOperand());
+          stack.push(booleanNode.getLeftOperand());
+        }
+        case CQLTermNode termNode -> terms.add(termNode);
+        case CQLSortNode sortNode -> stack.push(sortNode.getSubtree());
+        case CQLPrefixNode prefixNode -> stack.push(prefixNode.getSubtree());
+        default -> {
+          // not translated
+        }
+      }
+    }
+    return terms;
+  }
+}
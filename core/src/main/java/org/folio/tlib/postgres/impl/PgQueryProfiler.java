@@ -0,0 +1,201 @@
+package org.folio.tlib.postgres.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.folio.tlib.postgres.PgQueryStats;
+
+/**
+ * Execution statistics per SQL statement shape, and the plans captured for them.
+ *
+ * <p>The shape of a statement is the statement with its literals replaced, so that statements
+ * that only differ in inlined values are counted together. The number of shapes tracked is
+ * bounded; executions of shapes beyond that are counted together in an entry of their own,
+ * {@value OTHER}. The durations of the most recent executions of each shape are kept for
+ * percentiles.
+ */
+class PgQueryProfiler {
+
+  static final int MAX_QUERIES = 1000;
+  static final int MAX_SAMPLES = 1024;
+  static final int MAX_EXPLAINS_RUNNING = 2;
+  /** Statement of the entry for the shapes beyond {@link #MAX_QUERIES}. */
+  static final String OTHER = "(other)";
+
+  /** Quoted literal, or number that is not part of a name or parameter, in a plan. */
+  private static final Pattern LITERAL = Pattern.compile(
+      "'(?:[^']|'')*'|(?<![\\w$.])\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?(?![\\w.])");
+  /** Two or more replaced literals separated by commas, as of an IN list. */
+  private static final Pattern LIST = Pattern.compile("('\\?'|\\?)(?:\\s*,\\s*(?:'\\?'|\\?))+");
+
+  static final class Entry {
+    final String sql;
+    final long[] samples = new long[MAX_SAMPLES];
+    long count;
+    long rows;
+    long maxNanos;
+    long explains;
+    long sharedHitBlocks;
+    long sharedReadBlocks;
+    JsonArray lastPlan;
+
+    Entry(String sql) {
+      this.sql = sql;
+    }
+
+    synchronized void add(long nanos, int rowCount) {
+      samples[(int) (count % MAX_SAMPLES)] = nanos;
+      count++;
+      rows += rowCount;
+      maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    synchronized void addPlan(JsonArray plan) {
+      explains++;
+      lastPlan = plan;
+      JsonObject top = plan.getJsonObject(0).getJsonObject("Plan");
+      sharedHitBlocks += top.getLong("Shared Hit Blocks", 0L);
+      sharedReadBlocks += top.getLong("Shared Read Blocks", 0L);
+    }
+
+    synchronized PgQueryStats getStats() {
+      long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, MAX_SAMPLES));
+      Arrays.sort(sorted);
+      return new PgQueryStats(sql, count, rows, millis(percentile(sorted, 0.5)),
+          millis(percentile(sorted, 0.99)), millis(maxNanos), explains,
+          sharedHitBlocks, sharedReadBlocks, lastPlan);
+    }
+  }
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicInteger explainsRunning = new AtomicInteger();
+
+  static long percentile(long[] sorted, double q) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[Math.max(0, (int) Math.ceil(q * sorted.length) - 1)];
+  }
+
+  static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  /**
+   * Return the shape of a statement: literals are replaced as by {@link #redactString},
+   * and lists of them by the first one and {@code ...}.
+   *
+   * @param sql statement
+   * @return shape
+   */
+  static String shape(String sql) {
+    return LIST.matcher(redactString(sql)).replaceAll("$1, ...");
+  }
+
+  private Entry entry(String shape) {
+    Entry entry = entries.get(shape);
+    if (entry != null) {
+      return entry;
+    }
+    if (entries.size() >= MAX_QUERIES) {
+      return entries.computeIfAbsent(OTHER, Entry::new);
+    }
+    return entries.computeIfAbsent(shape, Entry::new);
+  }
+
+  void record(String sql, long nanos, int rowCount) {
+    entry(shape(sql)).add(nanos, rowCount);
+  }
+
+  /**
+   * Save plan of a statement, with the literals redacted.
+   *
+   * <p>Nothing is saved if the shape of the statement is not tracked.
+   *
+   * @param sql statement
+   * @param plan EXPLAIN FORMAT JSON output
+   */
+  void recordPlan(String sql, JsonArray plan) {
+    Entry entry = entries.get(shape(sql));
+    if (entry != null) {
+      entry.addPlan(redact(plan));
+    }
+  }
+
+  /**
+   * Return copy of plan with the literals of the conditions and expressions replaced, so
+   * that values of the statement are not shown; {@code 'abc'::text} becomes
+   * {@code '?'::text}, and {@code 42} becomes {@code ?}.
+   *
+   * @param plan EXPLAIN FORMAT JSON output
+   * @return redacted plan
+   */
+  static JsonArray redact(JsonArray plan) {
+    JsonArray copy = new JsonArray();
+    for (Object value : plan) {
+      copy.add(redactValue(value));
+    }
+    return copy;
+  }
+
+  private static Object redactValue(Object value) {
+    return switch (value) {
+      case JsonObject object -> {
+        JsonObject copy = new JsonObject();
+        object.forEach(e -> copy.put(e.getKey(), redactValue(e.getValue())));
+        yield copy;
+      }
+      case JsonArray array -> redact(array);
+      case String s -> redactString(s);
+      case null, default -> value;
+    };
+  }
+
+  static String redactString(String s) {
+    Matcher matcher = LITERAL.matcher(s);
+    StringBuilder sb = new StringBuilder();
+    while (matcher.find()) {
+      matcher.appendReplacement(sb, matcher.group().startsWith("'") ? "'?'" : "?");
+    }
+    return matcher.appendTail(sb).toString();
+  }
+
+  /**
+   * Reserve a slot for running an EXPLAIN.
+   *
+   * @return true if reserved and {@link #endExplain()} must be called; false if too many
+   *     are running already
+   */
+  boolean tryStartExplain() {
+    if (explainsRunning.incrementAndGet() > MAX_EXPLAINS_RUNNING) {
+      explainsRunning.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  void endExplain() {
+    explainsRunning.decrementAndGet();
+  }
+
+  List<PgQueryStats> getStats() {
+    List<PgQueryStats> stats = new ArrayList<>(entries.size());
+    for (Entry entry : entries.values()) {
+      stats.add(entry.getStats());
+    }
+    stats.sort(Comparator.comparingDouble(PgQueryStats::p99Millis).reversed());
+    return stats;
+  }
+
+  void clear() {
+    entries.clear();
+  }
+}
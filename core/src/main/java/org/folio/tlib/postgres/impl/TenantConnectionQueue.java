@@ -0,0 +1,203 @@
+package org.folio.tlib.postgres.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import org.folio.tlib.postgres.PgTenantQueueStats;
+
+/**
+ * Limits the connections each tenant holds in a shared pool.
+ *
+ * <p>A tenant holds at most its limit of connections, and all tenants together at most the
+ * size of the pool. Requests beyond that wait. When a connection is released, it is given to
+ * the waiting tenant with the fewest connections per weight, so a tenant with many requests
+ * can not starve the others; requests of the same tenant are served in order.
+ *
+ * <p>Slots are not reentrant: a request that waits for a slot while holding one, such as a
+ * query on the pool inside withTransaction, can wait forever once the tenant is at its
+ * limit. With a timeout, such a wait fails instead.
+ */
+class TenantConnectionQueue {
+
+  private static final class Waiter {
+    final Promise<Void> promise = Promise.promise();
+    final Context context = Vertx.currentContext();
+    final long queued = System.nanoTime();
+    /** Timer that fails the wait; -1 if none. */
+    volatile long timer = -1;
+  }
+
+  private static final class TenantState {
+    final String tenant;
+    final Deque<Waiter> waiters = new ArrayDeque<>();
+    int limit;
+    int weight;
+    int active;
+    long waited;
+    long totalWaitNanos;
+    long maxWaitNanos;
+    long timedOut;
+
+    TenantState(String tenant) {
+      this.tenant = tenant;
+    }
+
+    boolean eligible() {
+      return !waiters.isEmpty() && active < limit;
+    }
+  }
+
+  private final String name;
+  private final int maxTotal;
+  private final long timeoutMillis;
+  private final Map<String, TenantState> tenants = new HashMap<>();
+  private int total;
+
+  /**
+   * Create queue.
+   *
+   * @param name pool name, for statistics
+   * @param maxTotal connections of all tenants; the size of the pool
+   */
+  TenantConnectionQueue(String name, int maxTotal) {
+    this(name, maxTotal, 0);
+  }
+
+  /**
+   * Create queue with wait timeout.
+   *
+   * @param name pool name, for statistics
+   * @param maxTotal connections of all tenants; the size of the pool
+   * @param timeoutMillis maximum time to wait for a slot; 0 for no limit. The timeout only
+   *     applies to requests made on a Vert.x context.
+   */
+  TenantConnectionQueue(String name, int maxTotal, long timeoutMillis) {
+    this.name = name;
+    this.maxTotal = maxTotal;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Wait for a connection slot.
+   *
+   * @param tenant tenant
+   * @param limit maximum number of connections for the tenant
+   * @param weight share of the tenant when connections are scarce; at least 1
+   * @return async result that succeeds when the tenant may use a connection; the caller must
+   *     then call {@link #release(String)} when done. Fails with TimeoutException if the
+   *     timeout expires first.
+   */
+  Future<Void> acquire(String tenant, int limit, int weight) {
+    Waiter waiter = new Waiter();
+    TenantState state;
+    synchronized (this) {
+      state = tenants.computeIfAbsent(tenant, TenantState::new);
+      state.limit = limit;
+      state.weight = weight;
+      if (state.waiters.isEmpty() && state.active < limit && total < maxTotal) {
+        state.active++;
+        total++;
+        return Future.succeededFuture();
+      }
+      state.waiters.addLast(waiter);
+    }
+    if (timeoutMillis > 0 && waiter.context != null) {
+      waiter.timer = waiter.context.owner().setTimer(timeoutMillis, id -> timeout(state, waiter));
+    }
+    return waiter.promise.future();
+  }
+
+  private void timeout(TenantState state, Waiter waiter) {
+    synchronized (this) {
+      if (!state.waiters.remove(waiter)) {
+        return; // granted meanwhile
+      }
+      state.timedOut++;
+    }
+    waiter.promise.fail(new TimeoutException("Timeout after " + timeoutMillis
+        + " ms waiting for a connection of tenant " + state.tenant + " (limit " + state.limit
+        + "); queries on the pool inside withConnection or withTransaction need a slot of"
+        + " their own, use the connection passed instead"));
+  }
+
+  /**
+   * Release a connection slot and give it to a waiting tenant, if any.
+   *
+   * @param tenant tenant that called {@link #acquire(String, int, int)}
+   */
+  void release(String tenant) {
+    List<Waiter> granted = new ArrayList<>();
+    synchronized (this) {
+      TenantState state = tenants.get(tenant);
+      state.active--;
+      total--;
+      long now = System.nanoTime();
+      while (total < maxTotal) {
+        TenantState next = next();
+        if (next == null) {
+          break;
+        }
+        Waiter waiter = next.waiters.removeFirst();
+        long wait = now - waiter.queued;
+        next.active++;
+        next.waited++;
+        next.totalWaitNanos += wait;
+        next.maxWaitNanos = Math.max(next.maxWaitNanos, wait);
+        total++;
+        granted.add(waiter);
+      }
+    }
+    for (Waiter waiter : granted) {
+      if (waiter.context == null) {
+        waiter.promise.complete();
+      } else {
+        if (waiter.timer != -1) {
+          waiter.context.owner().cancelTimer(waiter.timer);
+        }
+        waiter.context.runOnContext(x -> waiter.promise.complete());
+      }
+    }
+  }
+
+  /**
+   * Return the eligible tenant with the fewest connections per weight; the one that has
+   * waited longest if several.
+   */
+  private TenantState next() {
+    TenantState best = null;
+    for (TenantState state : tenants.values()) {
+      if (!state.eligible()) {
+        continue;
+      }
+      if (best == null) {
+        best = state;
+        continue;
+      }
+      long cmp = (long) state.active * best.weight - (long) best.active * state.weight;
+      if (cmp < 0 || (cmp == 0
+          && state.waiters.getFirst().queued < best.waiters.getFirst().queued)) {
+        best = state;
+      }
+    }
+    return best;
+  }
+
+  synchronized List<PgTenantQueueStats> getStats() {
+    List<PgTenantQueueStats> stats = new ArrayList<>(tenants.size());
+    for (TenantState state : tenants.values()) {
+      stats.add(new PgTenantQueueStats(name, state.tenant, state.limit, state.weight,
+          state.active, state.waiters.size(), state.waited,
+          state.totalWaitNanos / 1_000_000.0, state.maxWaitNanos / 1_000_000.0,
+          state.timedOut));
+    }
+    return stats;
+  }
+}
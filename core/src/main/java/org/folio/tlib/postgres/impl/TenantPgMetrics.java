@@ -0,0 +1,138 @@
+package org.folio.tlib.postgres.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.SqlResult;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for a tenant and pool key.
+ *
+ * <p>All meters are tagged with tenant, module and poolKey, so that a latency spike can be
+ * traced to a tenant.
+ */
+class TenantPgMetrics {
+  private record ActiveKey(MeterRegistry registry, Tags tags) {
+  }
+
+  /**
+   * Connections in use by registry and tags; metrics built again for the same tenant, such
+   * as after {@code setMeterRegistry}, count with the gauge that is registered already.
+   */
+  private static final ConcurrentMap<ActiveKey, AtomicInteger> ACTIVE = new ConcurrentHashMap<>();
+
+  static final String QUERY = "folio.pg.query";
+  static final String QUERY_ROWS = "folio.pg.query.rows";
+  static final String QUERY_FAILURES = "folio.pg.query.failures";
+  static final String CONNECTION_WAIT = "folio.pg.connection.wait";
+  static final String CONNECTIONS_ACTIVE = "folio.pg.connections.active";
+  static final String POOL_SIZE = "folio.pg.pool.size";
+  static final String POOL_ACTIVE = "folio.pg.pool.active";
+  static final String POOL_IDLE = "folio.pg.pool.idle";
+
+  private final Timer query;
+  private final DistributionSummary rows;
+  private final Counter failures;
+  private final Timer wait;
+  private final AtomicInteger active;
+
+  TenantPgMetrics(MeterRegistry registry, String tenant, String module, String poolKey) {
+    Tags tags = Tags.of("tenant", tenant, "module", module, "poolKey", poolKey);
+    query = Timer.builder(QUERY)
+        .description("Execution time of queries")
+        .tags(tags)
+        .publishPercentileHistogram()
+        .register(registry);
+    rows = DistributionSummary.builder(QUERY_ROWS)
+        .description("Rows returned or affected by queries")
+        .tags(tags)
+        .register(registry);
+    failures = Counter.builder(QUERY_FAILURES)
+        .description("Queries that failed")
+        .tags(tags)
+        .register(registry);
+    wait = Timer.builder(CONNECTION_WAIT)
+        .description("Time waited for a connection")
+        .tags(tags)
+        .publishPercentileHistogram()
+        .register(registry);
+    active = ACTIVE.computeIfAbsent(new ActiveKey(registry, tags), k -> {
+      AtomicInteger counter = new AtomicInteger();
+      Gauge.builder(CONNECTIONS_ACTIVE, counter, AtomicInteger::get)
+          .description("Connections in use")
+          .tags(tags)
+          .strongReference(true)
+          .register(registry);
+      return counter;
+    });
+  }
+
+  /**
+   * Register the gauges of a pool.
+   *
+   * <p>The active connections are those used through {@code withConnection} and
+   * {@code withTransaction} of the TenantPgPool instances of the pool. The gauges are
+   * tagged with the user, as pools of different users may have the same other tags.
+   *
+   * @return the gauges; remove them from the registry when the pool is closed
+   */
+  static List<Meter> registerPool(MeterRegistry registry, TenantPgPoolImpl.PoolRef ref,
+      String module, String poolKey, String database, String user) {
+
+    Tags tags = Tags.of("module", module, "poolKey", poolKey,
+        "database", database == null ? "" : database, "user", user == null ? "" : user);
+    return List.of(
+        Gauge.builder(POOL_SIZE, ref, r -> r.pool.size())
+            .description("Open connections")
+            .tags(tags)
+            .register(registry),
+        Gauge.builder(POOL_ACTIVE, ref, r -> r.active.get())
+            .description("Connections in use")
+            .tags(tags)
+            .register(registry),
+        Gauge.builder(POOL_IDLE, ref, r -> Math.max(0, r.pool.size() - r.active.get()))
+            .description("Open connections not in use")
+            .tags(tags)
+            .register(registry));
+  }
+
+  void acquired(long waitNanos) {
+    wait.record(waitNanos, TimeUnit.NANOSECONDS);
+    active.incrementAndGet();
+  }
+
+  void released() {
+    active.decrementAndGet();
+  }
+
+  /**
+   * Record the execution of a query.
+   *
+   * @param execute executes the query
+   * @param <T> result type
+   * @return async result of the query
+   */
+  <T> Future<T> record(Supplier<Future<T>> execute) {
+    long start = System.nanoTime();
+    return execute.get()
+        .andThen(ar -> {
+          query.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+          if (ar.failed()) {
+            failures.increment();
+          } else if (ar.result() instanceof SqlResult<?> result) {
+            rows.record(result.rowCount());
+          }
+        });
+  }
+}
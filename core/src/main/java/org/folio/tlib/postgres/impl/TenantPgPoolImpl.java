@@ -1,14 +1,19 @@
 package org.folio.tlib.postgres.impl;
 
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.ClientSSLOptions;
 import io.vertx.core.net.PemTrustOptions;
 import io.vertx.pgclient.PgBuilder;
 import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.pgclient.SslMode;
+import io.vertx.pgclient.pubsub.PgSubscriber;
 import io.vertx.sqlclient.Pool;
 import io.vertx.sqlclient.PoolOptions;
 import io.vertx.sqlclient.PrepareOptions;
@@ -16,17 +21,38 @@ import io.vertx.sqlclient.PreparedQuery;
 import io.vertx.sqlclient.Query;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.RowStream;
+import io.vertx.sqlclient.SqlClient;
 import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Transaction;
 import io.vertx.sqlclient.Tuple;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.tlib.postgres.PgBatchException;
+import org.folio.tlib.postgres.PgBatchResult;
+import org.folio.tlib.postgres.PgCqlCount;
+import org.folio.tlib.postgres.PgCqlQuery;
+import org.folio.tlib.postgres.PgPoolHealth;
+import org.folio.tlib.postgres.PgPoolStats;
+import org.folio.tlib.postgres.PgQueryStats;
+import org.folio.tlib.postgres.PgTenantQueueStats;
 import org.folio.tlib.postgres.TenantPgPool;
 
 /**
@@ -69,28 +95,270 @@ public class TenantPgPoolImpl implements TenantPgPool {
     }
   }
 
+  /**
+   * Pool shared by the {@link TenantPgPoolImpl} instances with the same {@link ConnectKey}.
+   *
+   * <p>The pool is closed when the last reference is released. A reference that has
+   * dropped to 0 is dead and can not be acquired again; it is replaced in the map.
+   */
+  static final class PoolRef {
+    final ConnectKey key;
+    final Pool pool;
+    /** References; a long, as callers that never close may take one for each request. */
+    final AtomicLong refs = new AtomicLong(1);
+    final Set<String> tenants = ConcurrentHashMap.newKeySet();
+    final AtomicLong contextSwitches = new AtomicLong();
+    /** Options the pool was built with; null if not known. */
+    volatile PoolOptions poolOptions;
+    /** Connections in use through withConnection and withTransaction. */
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicBoolean probing = new AtomicBoolean();
+    /** Start of the running health probe, from System.nanoTime. */
+    volatile long probeStart;
+    /** Duration of the last completed health probe; -1 if none. */
+    volatile long probeNanos = -1;
+    /** Failure of the last completed health probe; null if it succeeded. */
+    volatile String probeError;
+    /** Time the last completed health probe waited for a connection; -1 if none. */
+    volatile long probeWaitNanos = -1;
+    /** Whether the running health probe is still waiting for a connection. */
+    volatile boolean probeWaiting;
+    private TenantConnectionQueue queue;
+    private volatile MeterRegistry gaugeRegistry;
+    private List<Meter> gauges = List.of();
+
+    PoolRef(ConnectKey key, Pool pool) {
+      this.key = key;
+      this.pool = pool;
+    }
+
+    boolean tryAcquire() {
+      while (true) {
+        long n = refs.get();
+        if (n <= 0) {
+          return false;
+        }
+        if (refs.compareAndSet(n, n + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * Release reference.
+     *
+     * @return true if this was the last reference; the caller must close the pool.
+     */
+    boolean release() {
+      while (true) {
+        long n = refs.get();
+        if (n <= 0) {
+          return false;
+        }
+        if (refs.compareAndSet(n, n - 1)) {
+          return n == 1;
+        }
+      }
+    }
+
+    /**
+     * Return the per-tenant connection queue of the pool, creating it if necessary.
+     *
+     * @param poolOptions options of the pool
+     * @return queue
+     */
+    synchronized TenantConnectionQueue getQueue(PoolOptions poolOptions) {
+      if (queue == null) {
+        queue = new TenantConnectionQueue(poolOptions.getName(), poolOptions.getMaxSize(),
+            poolOptions.getConnectionTimeoutUnit()
+                .toMillis(poolOptions.getConnectionTimeout()));
+      }
+      return queue;
+    }
+
+    synchronized TenantConnectionQueue getQueue() {
+      return queue;
+    }
+
+    /**
+     * Check the pool with a cheap query, unless a check is running already.
+     *
+     * <p>The query waits for a connection of the pool like any other, whichever way the
+     * other connections are used, so the wait tells whether the pool is saturated; it is
+     * recorded apart from the time taken.
+     *
+     * @return async result; always succeeds
+     */
+    Future<Void> probe() {
+      if (!probing.compareAndSet(false, true)) {
+        return Future.succeededFuture();
+      }
+      long start = System.nanoTime();
+      probeStart = start;
+      probeWaiting = true;
+      return pool.getConnection()
+          .compose(conn -> {
+            probeWaitNanos = System.nanoTime() - start;
+            probeWaiting = false;
+            return conn.query("SELECT 1").execute().eventually(conn::close);
+          })
+          .transform(ar -> {
+            probeNanos = System.nanoTime() - start;
+            if (probeWaiting) {
+              probeWaitNanos = probeNanos;
+              probeWaiting = false;
+            }
+            probeError = ar.failed() ? String.valueOf(ar.cause().getMessage()) : null;
+            probing.set(false);
+            return Future.succeededFuture();
+          });
+    }
+
+    void registerGauges(MeterRegistry registry, String module, String poolKey) {
+      if (registry != gaugeRegistry) {
+        registerGaugesSync(registry, module, poolKey);
+      }
+    }
+
+    private synchronized void registerGaugesSync(MeterRegistry registry, String module,
+        String poolKey) {
+
+      if (registry != gaugeRegistry) {
+        unregisterGauges();
+        gauges = TenantPgMetrics.registerPool(registry, this, module, poolKey,
+            key.options.getDatabase(), key.options.getUser());
+        gaugeRegistry = registry;
+      }
+    }
+
+    /**
+     * Remove the gauges of the pool from the registry, so that a closed pool is not reported
+     * and not kept reachable by the registry.
+     */
+    synchronized void unregisterGauges() {
+      for (Meter gauge : gauges) {
+        gaugeRegistry.remove(gauge);
+      }
+      gauges = List.of();
+      gaugeRegistry = null;
+    }
+
+    /**
+     * Release all references.
+     *
+     * @return true if there were references; the caller must close the pool.
+     */
+    boolean kill() {
+      return refs.getAndSet(0) > 0;
+    }
+  }
+
+  record SettingsKey(String tenant, String poolKey) {
+  }
+
+  /**
+   * Options for a tenant and pool key, built once from the environment.
+   *
+   * <p>The options are shared by all TenantPgPoolImpl instances for the tenant and pool key
+   * and must not be modified.
+   */
+  static final class Settings {
+    final String tenant;
+    final PoolOptions poolOptions;
+    final PgConnectOptions connectOptions;
+    final ConnectKey connectKey;
+    /** Statement that applies the tenant context to a connection; null if not shared. */
+    final String contextSql;
+    /** Statement that applies the tenant context to a transaction; null if not shared. */
+    final String localContextSql;
+    /** Maximum number of connections of the tenant; 0 for no limit. */
+    final int tenantLimit;
+    final int weight;
+    /** Meters; null if there is no meter registry. */
+    final TenantPgMetrics metrics;
+    /** Most recently acquired pool; may have been released since. */
+    volatile PoolRef poolRef;
+
+    Settings(String tenant, PoolOptions poolOptions, PgConnectOptions connectOptions,
+        String contextSql, String localContextSql, int tenantLimit, int weight,
+        TenantPgMetrics metrics) {
+
+      this.tenant = tenant;
+      this.poolOptions = poolOptions;
+      this.connectOptions = connectOptions;
+      this.connectKey = new ConnectKey(connectOptions);
+      this.contextSql = contextSql;
+      this.localContextSql = localContextSql;
+      this.tenantLimit = tenantLimit;
+      this.weight = weight;
+      this.metrics = metrics;
+    }
+  }
+
 
   private static final Logger log = LogManager.getLogger(TenantPgPoolImpl.class);
+
+  /** Config: fraction (0 to 1) of executions for which the plan is captured. */
+  public static final String EXPLAIN_SAMPLE_RATE = "explain_sample_rate";
+  /** Config: capture the plan of executions that take at least this many milliseconds. */
+  public static final String EXPLAIN_SLOW_MS = "explain_slow_ms";
+  private static final Pattern ANALYZABLE = Pattern.compile("(?is)\\s*(?:\\(\\s*)*SELECT\\b.*");
+  private static final Pattern ROW_LOCK = Pattern.compile(
+      "(?i)\\bFOR\\s+(?:NO\\s+KEY\\s+UPDATE|UPDATE|KEY\\s+SHARE|SHARE)\\b");
+  /** Name followed by a parenthesis: a function call, or a keyword. */
+  private static final Pattern CALL = Pattern.compile("([A-Za-z_][\\w.]*)\\s*\\(");
+  /**
+   * Keywords that may be followed by a parenthesis, and functions that have no side effects;
+   * a SELECT that calls any other function, such as nextval, is not run again.
+   */
+  private static final Set<String> READ_ONLY_CALLS = Set.of(
+      "select", "from", "where", "and", "or", "not", "in", "exists", "any", "all", "some",
+      "as", "on", "using", "join", "lateral", "values", "union", "intersect", "except",
+      "over", "filter", "row", "array", "cast", "case", "when", "then", "else", "limit",
+      "offset", "coalesce", "nullif", "greatest", "least", "count", "sum", "min", "max",
+      "avg", "lower", "upper", "length", "substring", "to_tsvector", "to_tsquery",
+      "plainto_tsquery", "phraseto_tsquery", "websearch_to_tsquery");
+
   final String tenant;
   final PoolOptions poolOptions;
   final PgConnectOptions connectOptions;
 
-  static Map<ConnectKey, Pool> pgPoolMap = new HashMap<>();
+  static final ConcurrentMap<ConnectKey, PoolRef> pgPoolMap = new ConcurrentHashMap<>();
+  static final ConcurrentMap<SettingsKey, Settings> settingsMap = new ConcurrentHashMap<>();
+  static final PgQueryProfiler profiler = new PgQueryProfiler();
+  static final ConcurrentMap<ConnectKey, Future<PgSubscriber>> subscriberMap =
+      new ConcurrentHashMap<>();
+  static final long SUBSCRIBER_RECONNECT_MS = 1000;
   static String host = System.getenv("DB_HOST");
   static String port = System.getenv("DB_PORT");
   static String user = System.getenv("DB_USERNAME");
   static String password = System.getenv("DB_PASSWORD");
   static String database = System.getenv("DB_DATABASE");
   static String maxPoolSize = System.getenv("DB_MAXPOOLSIZE");
+  static String maxPoolSizeTenant = System.getenv("DB_MAXPOOLSIZE_TENANT");
+  static String tenantWeights = System.getenv("DB_TENANT_WEIGHTS");
   static String reconnectAttempts = System.getenv("DB_RECONNECTATTEMPTS");
   static String reconnectInterval = System.getenv("DB_RECONNECTINTERVAL");
   static String connectionReleaseDelay = System.getenv("DB_CONNECTIONRELEASEDELAY");
   static String serverPem = System.getenv("DB_SERVER_PEM");
   static String maxLifetime = System.getenv("DB_MAX_LIFETIME");
+  static boolean sharedPool = Boolean.parseBoolean(System.getenv("DB_SHARED_POOL"));
+  static String sharedUser = System.getenv("DB_SHARED_USERNAME");
+  static String sharedPassword = System.getenv("DB_SHARED_PASSWORD");
   static String module;
+  static MeterRegistry meterRegistry;
   static PgConnectOptions defaultConnectOptions = new PgConnectOptions();
 
-  Pool pgPool;
+  final Vertx vertx;
+  final Pool pgPool;
+  final PoolRef poolRef;
+  final String contextSql;
+  final String localContextSql;
+  final TenantConnectionQueue connectionQueue;
+  final int tenantLimit;
+  final int weight;
+  final TenantPgMetrics metrics;
+  final AtomicBoolean closed = new AtomicBoolean();
   JsonObject config;
 
   static String substTenant(String v, String tenant) {
@@ -110,27 +378,69 @@ public class TenantPgPoolImpl implements TenantPgPool {
 
   public static void setDefaultConnectOptions(PgConnectOptions connectOptions) {
     TenantPgPoolImpl.defaultConnectOptions = connectOptions;
+    settingsMap.clear();
   }
 
   public static void setModule(String module) {
     TenantPgPoolImpl.module = module != null ? sanitize(module) : null;
+    settingsMap.clear();
   }
 
+  /**
+   * Set server certificate for TLS connections.
+   *
+   * @param serverPem certificate in PEM format; null for no TLS
+   */
   public static void setServerPem(String serverPem) {
     defaultConnectOptions.setSslMode(SslMode.DISABLE);
     TenantPgPoolImpl.serverPem = serverPem;
+    settingsMap.clear();
   }
 
   public static void setMaxPoolSize(String maxPoolSize) {
     TenantPgPoolImpl.maxPoolSize = maxPoolSize;
+    settingsMap.clear();
   }
 
-  private TenantPgPoolImpl(Vertx vertx, String tenant, PoolOptions poolOptions,
-      PgConnectOptions connectOptions) {
+  public static void setMaxPoolSizeTenant(String maxPoolSizeTenant) {
+    TenantPgPoolImpl.maxPoolSizeTenant = maxPoolSizeTenant;
+    settingsMap.clear();
+  }
+
+  public static void setTenantWeights(String tenantWeights) {
+    TenantPgPoolImpl.tenantWeights = tenantWeights;
+    settingsMap.clear();
+  }
+
+  /**
+   * Set registry for metrics.
+   *
+   * @param meterRegistry registry; null for no metrics
+   */
+  public static void setMeterRegistry(MeterRegistry meterRegistry) {
+    TenantPgPoolImpl.meterRegistry = meterRegistry;
+    settingsMap.clear();
+  }
+
+  public static void setSharedPool(boolean sharedPool) {
+    TenantPgPoolImpl.sharedPool = sharedPool;
+    settingsMap.clear();
+  }
+
+  private TenantPgPoolImpl(Vertx vertx, Settings settings, PoolRef poolRef) {
     config = vertx.getOrCreateContext().config();
-    this.tenant = tenant;
-    this.poolOptions = poolOptions;
-    this.connectOptions = connectOptions;
+    this.vertx = vertx;
+    this.tenant = settings.tenant;
+    this.poolOptions = settings.poolOptions;
+    this.connectOptions = settings.connectOptions;
+    this.poolRef = poolRef;
+    this.pgPool = poolRef.pool;
+    this.contextSql = settings.contextSql;
+    this.localContextSql = settings.localContextSql;
+    this.tenantLimit = settings.tenantLimit;
+    this.weight = settings.weight;
+    this.connectionQueue = tenantLimit > 0 ? poolRef.getQueue(settings.poolOptions) : null;
+    this.metrics = settings.metrics;
   }
 
   /**
@@ -140,6 +450,13 @@ public class TenantPgPoolImpl implements TenantPgPool {
    * TenantPgPool.setModule *must* be called before the queries are executed, since schema is
    * based on module name.
    *
+   * <p>Each call returns a new TenantPgPool with its own reference to the underlying pool,
+   * which {@link #close()} releases. The options for tenant and pool key are built on first
+   * use and saved, so a call for each request only takes a reference; a TenantPgPool that
+   * is never closed keeps the underlying pool open until {@link #closeAll()}. The saved
+   * options are discarded by the static setters and {@link #closeAll()}; TenantPgPool
+   * instances returned before keep working with the options they were built with.
+   *
    * @param vertx Vert.x handle
    * @param tenant Tenant
    * @param poolKey pool
@@ -149,6 +466,41 @@ public class TenantPgPoolImpl implements TenantPgPool {
     if (module == null) {
       throw new IllegalStateException("TenantPgPool.setModule must be called");
     }
+    SettingsKey key = new SettingsKey(tenant, poolKey);
+    Settings settings = settingsMap.get(key);
+    if (settings == null) {
+      settings = settingsMap.computeIfAbsent(key, k -> createSettings(k.tenant(), k.poolKey()));
+    }
+    PoolRef ref = settings.poolRef;
+    if (ref == null || !ref.tryAcquire()) {
+      PoolOptions poolOptions = settings.poolOptions;
+      PgConnectOptions connectOptions = settings.connectOptions;
+      ref = acquire(settings.connectKey, () ->
+          PgBuilder
+            .pool()
+            .using(vertx)
+            .connectingTo(connectOptions)
+            .with(poolOptions)
+            .build());
+      ref.poolOptions = poolOptions;
+      settings.poolRef = ref;
+    }
+    ref.tenants.add(settings.tenant);
+    MeterRegistry registry = meterRegistry;
+    if (registry != null) {
+      ref.registerGauges(registry, module, poolKey);
+    }
+    return new TenantPgPoolImpl(vertx, settings, ref);
+  }
+
+  /**
+   * Build options for tenant and pool key from environment and defaults.
+   *
+   * @param tenant Tenant
+   * @param poolKey pool
+   * @return settings
+   */
+  static Settings createSettings(String tenant, String poolKey) {
     PgConnectOptions connectOptions = new PgConnectOptions(defaultConnectOptions);
     // overwrite default "vertx-pg-client" shown in pg_stat_activity
     // https://www.postgresql.org/docs/current/runtime-config-logging.html#GUC-APPLICATION-NAME
@@ -159,10 +511,22 @@ public class TenantPgPoolImpl implements TenantPgPool {
     if (port != null) {
       connectOptions.setPort(Integer.parseInt(port));
     }
-    if (user != null) {
+    String role = null;
+    if (sharedPool && sharedUser != null) {
+      connectOptions.setUser(sharedUser);
+    } else if (user != null) {
+      if (sharedPool && user.contains("{tenant}")) {
+        throw new IllegalStateException(
+            "DB_SHARED_USERNAME must be set when DB_USERNAME contains {tenant}: " + user);
+      }
       connectOptions.setUser(substTenant(user, tenant));
     }
-    if (password != null) {
+    if (sharedPool && user != null && user.contains("{tenant}")) {
+      role = substTenant(user, tenant);
+    }
+    if (sharedPool && sharedPassword != null) {
+      connectOptions.setPassword(sharedPassword);
+    } else if (password != null) {
       connectOptions.setPassword(password);
     }
     if (database != null) {
@@ -202,16 +566,89 @@ public class TenantPgPoolImpl implements TenantPgPool {
     } else {
       poolOptions.setIdleTimeout(60000);  // one minute
     }
-    TenantPgPoolImpl tenantPgPool =
-        new TenantPgPoolImpl(vertx, sanitize(tenant), poolOptions, connectOptions);
-    tenantPgPool.pgPool = pgPoolMap.computeIfAbsent(new ConnectKey(connectOptions), key ->
-        PgBuilder
-          .pool()
-          .using(vertx)
-          .connectingTo(connectOptions)
-          .with(poolOptions)
-          .build());
-    return tenantPgPool;
+    String sanitizedTenant = sanitize(tenant);
+    String contextSql = null;
+    String localContextSql = null;
+    if (sharedPool) {
+      contextSql = contextSql(sanitizedTenant + "_" + module, role, false);
+      localContextSql = contextSql(sanitizedTenant + "_" + module, role, true);
+    }
+    int tenantLimit = maxPoolSizeTenant != null ? Integer.parseInt(maxPoolSizeTenant) : 0;
+    TenantPgMetrics metrics = meterRegistry == null ? null
+        : new TenantPgMetrics(meterRegistry, sanitizedTenant, module, poolKey);
+    return new Settings(sanitizedTenant, poolOptions, connectOptions, contextSql,
+        localContextSql, tenantLimit, tenantWeight(tenantWeights, tenant), metrics);
+  }
+
+  /**
+   * Return statement that applies the tenant context.
+   *
+   * @param schema schema of the tenant
+   * @param role role to set; null for none
+   * @param local whether the context only lasts until the end of the current transaction
+   * @return SELECT statement
+   */
+  static String contextSql(String schema, String role, boolean local) {
+    String sql = "SELECT set_config('search_path', '" + schema + ", public', " + local + ")";
+    if (role != null) {
+      sql += ", set_config('role', '" + role.replace("'", "''") + "', " + local + ")";
+    }
+    return sql;
+  }
+
+  /**
+   * Return the weight of a tenant.
+   *
+   * @param weights comma separated tenant:weight pairs; null for none
+   * @param tenant tenant
+   * @return weight; 1 if not given
+   */
+  static int tenantWeight(String weights, String tenant) {
+    if (weights == null) {
+      return 1;
+    }
+    for (String pair : weights.split(",")) {
+      int colon = pair.lastIndexOf(':');
+      if (colon == -1) {
+        throw new IllegalArgumentException("Expected tenant:weight: " + pair);
+      }
+      if (pair.substring(0, colon).trim().equals(tenant)) {
+        int weight = Integer.parseInt(pair.substring(colon + 1).trim());
+        if (weight < 1) {
+          throw new IllegalArgumentException("Weight must be at least 1: " + pair);
+        }
+        return weight;
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * Get a reference to the shared pool for key, creating the pool if necessary.
+   *
+   * @param key connect key
+   * @param factory creates the pool if there is no live pool for key
+   * @return acquired reference
+   */
+  static PoolRef acquire(ConnectKey key, Supplier<Pool> factory) {
+    while (true) {
+      PoolRef ref = pgPoolMap.get(key);
+      if (ref == null) {
+        PoolRef[] created = new PoolRef[1];
+        ref = pgPoolMap.computeIfAbsent(key, k -> {
+          created[0] = new PoolRef(k, factory.get());
+          return created[0];
+        });
+        if (ref == created[0]) {
+          return ref;
+        }
+      }
+      if (ref.tryAcquire()) {
+        return ref;
+      }
+      // last reference released while we got it; remove unless already replaced
+      pgPoolMap.remove(key, ref);
+    }
   }
 
   @Override
@@ -224,21 +661,217 @@ public class TenantPgPoolImpl implements TenantPgPool {
     return poolOptions;
   }
 
+  /**
+   * Get the pool to use with other APIs.
+   *
+   * <p>For a shared pool this is the TenantPgPool itself, so that the tenant context is
+   * applied; otherwise it is the underlying pool. The TenantPgPool can not be passed to
+   * SqlTemplate, which needs the internals of the Vert.x pools; use
+   * {@link #preparedQuery(String)} with a Tuple instead.
+   */
   @Override
   public Pool getPool() {
-    return pgPool;
+    return contextSql == null ? pgPool : this;
   }
 
-
+  /**
+   * Get a connection.
+   *
+   * <p>For a shared pool, the tenant context (search_path, and role if DB_USERNAME
+   * contains {tenant}) is applied to the connection before it is returned. The context is
+   * not reset on close: every connection of a shared pool gets the context of its tenant
+   * before it is used. The connection is not subject to the per-tenant connection limit,
+   * as it is not known when it is closed.
+   *
+   * @return async result with connection
+   */
   @Override
   public Future<SqlConnection> getConnection() {
-    return pgPool.getConnection();
+    if (contextSql == null) {
+      return pgPool.getConnection();
+    }
+    return pgPool.getConnection().compose(conn -> applyContext(conn)
+        .<SqlConnection>map(conn)
+        .recover(e -> conn.close().transform(x -> Future.failedFuture(e))));
+  }
+
+  private Future<Void> applyContext(SqlConnection conn) {
+    poolRef.contextSwitches.incrementAndGet();
+    return conn.query(contextSql).execute().mapEmpty();
+  }
+
+  /**
+   * Run function with a connection.
+   *
+   * <p>If there is a per-tenant connection limit, this waits until the tenant is below its
+   * limit and it is the tenant's turn. The connection is counted as active until the
+   * function's future completes; with metrics, the wait is recorded. For a shared pool,
+   * the tenant context is applied to the connection as with {@link #getConnection()}.
+   *
+   * <p>The function must run its queries on the connection it is passed, not on this pool:
+   * a nested query on the pool needs another slot of the tenant, and so waits for itself
+   * once the tenant is at its limit. Such a wait fails with TimeoutException after the
+   * connection timeout of the pool options.
+   */
+  @Override
+  public <T> Future<T> withConnection(Function<SqlConnection, Future<T>> function) {
+    if (contextSql == null) {
+      return borrow(function);
+    }
+    return borrow(conn -> applyContext(conn).compose(x -> function.apply(conn)));
+  }
+
+  /**
+   * Run function in a transaction.
+   *
+   * <p>If there is a per-tenant connection limit, this waits until the tenant is below its
+   * limit and it is the tenant's turn. The connection is counted as active until the
+   * function's future completes; with metrics, the wait is recorded. For a shared pool,
+   * the tenant context is applied to the transaction only, by a statement that is sent
+   * together with BEGIN and the first statements of the function. As with
+   * {@link #withConnection(Function)}, the function must not run queries on this pool.
+   */
+  @Override
+  public <T> Future<T> withTransaction(Function<SqlConnection, Future<T>> function) {
+    return borrow(conn -> transaction(conn, function));
+  }
+
+  private <T> Future<T> transaction(SqlConnection conn,
+      Function<SqlConnection, Future<T>> function) {
+
+    if (localContextSql == null) {
+      return conn.begin()
+          .compose(tx -> end(tx, Future.succeededFuture(), apply(function, conn)));
+    }
+    poolRef.contextSwitches.incrementAndGet();
+    Future<Transaction> begin = conn.begin();
+    // if this fails, the transaction is aborted, and so are the statements of the function
+    Future<RowSet<Row>> context = conn.query(localContextSql).execute();
+    Future<T> result = apply(function, conn);
+    return begin.compose(tx -> end(tx, context, result));
+  }
+
+  /**
+   * Commit the transaction when context and result have succeeded; roll it back otherwise.
+   */
+  private static <T> Future<T> end(Transaction tx, Future<?> context, Future<T> result) {
+    return Future.join(context, result).transform(ar -> {
+      if (ar.succeeded()) {
+        return tx.commit().map(result.result());
+      }
+      Throwable e = context.failed() ? context.cause() : result.cause();
+      return tx.rollback().otherwiseEmpty().compose(x -> Future.failedFuture(e));
+    });
+  }
+
+  /**
+   * Run a single statement of {@link #query(String)} or {@link #preparedQuery(String)}.
+   *
+   * <p>Without tenant context and per-tenant limit the statement runs on the underlying pool,
+   * as it would without TenantPgPool; with metrics, its result is recorded. For a shared
+   * pool, the statement is sent together with statements that begin a transaction, apply
+   * the tenant context to it and commit it, so that the context costs no extra round trip
+   * and ends with the statement. A statement that can not run in a transaction block, such
+   * as CREATE INDEX CONCURRENTLY, must be run with {@link #withConnection(Function)}.
+   */
+  <T> Future<T> run(Function<SqlClient, Future<T>> execute) {
+    Function<SqlClient, Future<T>> recorded = metrics == null ? execute
+        : client -> metrics.record(() -> execute.apply(client));
+    if (contextSql == null && connectionQueue == null) {
+      return recorded.apply(pgPool);
+    }
+    if (localContextSql == null) {
+      return borrow(recorded::apply);
+    }
+    return borrow(conn -> {
+      poolRef.contextSwitches.incrementAndGet();
+      // if this fails, the transaction is aborted, and so is the statement
+      Future<RowSet<Row>> context = conn.query("BEGIN; " + localContextSql).execute();
+      Future<T> result = apply(recorded, conn);
+      // rolls back if the statement failed
+      Future<RowSet<Row>> commit = conn.query("COMMIT").execute();
+      return Future.join(context, result, commit).transform(ar -> {
+        if (context.failed()) {
+          return Future.failedFuture(context.cause());
+        }
+        return result.compose(x -> commit.map(x));
+      });
+    });
+  }
+
+  /**
+   * Run function with a connection of the underlying pool, without tenant context.
+   *
+   * <p>If there is a per-tenant connection limit, this waits for a slot of the tenant.
+   */
+  private <T> Future<T> borrow(Function<SqlConnection, Future<T>> function) {
+    long start = System.nanoTime();
+    if (connectionQueue == null) {
+      return pgPool.withConnection(measure(start, function));
+    }
+    return acquireSlot()
+        .compose(x -> pgPool.withConnection(measure(start, function))
+            .andThen(y -> releaseSlot()));
+  }
+
+  private Future<Void> acquireSlot() {
+    if (connectionQueue == null) {
+      return Future.succeededFuture();
+    }
+    return connectionQueue.acquire(tenant, tenantLimit, weight);
+  }
+
+  private void releaseSlot() {
+    if (connectionQueue != null) {
+      connectionQueue.release(tenant);
+    }
+  }
+
+  /**
+   * Wrap function so that the connection is counted as active while it runs.
+   */
+  private <T> Function<SqlConnection, Future<T>> measure(long start,
+      Function<SqlConnection, Future<T>> function) {
+
+    return conn -> {
+      if (metrics != null) {
+        metrics.acquired(System.nanoTime() - start);
+      }
+      poolRef.active.incrementAndGet();
+      return apply(function, conn).andThen(x -> {
+        poolRef.active.decrementAndGet();
+        if (metrics != null) {
+          metrics.released();
+        }
+      });
+    };
+  }
+
+  /**
+   * Apply function, returning a failed future if it throws.
+   */
+  private static <A, T> Future<T> apply(Function<A, Future<T>> function, A arg) {
+    try {
+      return function.apply(arg);
+    } catch (RuntimeException e) {
+      return Future.failedFuture(e);
+    }
+  }
+
+  /**
+   * Whether queries must be wrapped, rather than returned by the underlying pool.
+   */
+  private boolean wrapQueries() {
+    return contextSql != null || connectionQueue != null || metrics != null;
   }
 
   @Override
   public Query<RowSet<Row>> query(String s) {
     log.debug("query {}", s);
-    return pgPool.query(s);
+    if (!wrapQueries()) {
+      return pgPool.query(s);
+    }
+    return new TenantQuery<>(this, client -> client.query(s));
   }
 
   @Override
@@ -249,15 +882,28 @@ public class TenantPgPoolImpl implements TenantPgPool {
   @Override
   public PreparedQuery<RowSet<Row>> preparedQuery(String s, PrepareOptions prepareOptions) {
     log.debug("preparedQuery {}", s);
-    return pgPool.preparedQuery(s, prepareOptions);
+    if (!wrapQueries()) {
+      return pgPool.preparedQuery(s, prepareOptions);
+    }
+    return new TenantPreparedQuery<>(this, client -> client.preparedQuery(s, prepareOptions));
   }
 
+  /**
+   * Release this pool.
+   *
+   * <p>The underlying pool is shared with other TenantPgPool instances with the same
+   * connect options and is closed when the last of them is closed. Closing again
+   * does nothing.
+   *
+   * @return async result
+   */
   @Override
   public Future<Void> close() {
-    // release our pool from the map
-    while (pgPoolMap.values().remove(pgPool)) {
-      // continue
+    if (!closed.compareAndSet(false, true) || !poolRef.release()) {
+      return Future.succeededFuture();
     }
+    pgPoolMap.remove(poolRef.key, poolRef);
+    poolRef.unregisterGauges();
     return pgPool.close();
   }
 
@@ -269,12 +915,9 @@ public class TenantPgPoolImpl implements TenantPgPool {
    */
   @Override
   public Future<Void> execute(List<String> queries) {
-    Future<RowSet<Row>> future = Future.succeededFuture();
-    for (String cmd : queries) {
-      future = future.compose(res -> query(cmd).execute()
-          .onFailure(x -> log.warn("{} FAIL: {}", cmd, x.getMessage())));
-    }
-    return future.mapEmpty();
+    return executeBatch(queries, false)
+        .recover(e -> Future.failedFuture(e instanceof PgBatchException ? e.getCause() : e))
+        .mapEmpty();
   }
 
   /**
@@ -290,7 +933,258 @@ public class TenantPgPoolImpl implements TenantPgPool {
     if (Boolean.TRUE.equals(config.getBoolean("explain_analyze"))) {
       future = explainAnalyze(sql, tuple);
     }
-    return future.compose(x -> preparedQuery(sql).execute(tuple));
+    Double sampleRate = config.getDouble(EXPLAIN_SAMPLE_RATE);
+    Long slowMillis = config.getLong(EXPLAIN_SLOW_MS);
+    if (sampleRate == null && slowMillis == null) {
+      return future.compose(x -> preparedQuery(sql).execute(tuple));
+    }
+    return future.compose(x -> {
+      long start = System.nanoTime();
+      return preparedQuery(sql).execute(tuple)
+          .onSuccess(rowSet -> {
+            long nanos = System.nanoTime() - start;
+            profiler.record(sql, nanos, rowSet.rowCount());
+            if ((slowMillis != null && nanos >= slowMillis * 1_000_000L)
+                || (sampleRate != null && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+              explainSample(sql, tuple);
+            }
+          });
+    });
+  }
+
+  @Override
+  public Future<List<PgBatchResult>> executeBatch(List<String> queries, boolean transaction) {
+    if (queries.isEmpty()) {
+      return Future.succeededFuture(List.of());
+    }
+    if (transaction) {
+      return withTransaction(conn -> executePipelined(conn, queries));
+    }
+    return withConnection(conn -> executeSequential(conn, queries));
+  }
+
+  static Future<List<PgBatchResult>> executePipelined(SqlConnection conn, List<String> queries) {
+    List<PgBatchResult> results = new ArrayList<>(queries.size());
+    long[] last = {System.nanoTime()};
+    List<Future<Void>> futures = new ArrayList<>(queries.size());
+    // all queries are sent at once; the results arrive in order
+    for (String sql : queries) {
+      futures.add(conn.query(sql).execute()
+          .transform(ar -> {
+            last[0] = addResult(results, sql, ar, last[0]);
+            return Future.succeededFuture();
+          }));
+    }
+    return Future.all(futures).compose(x -> batchResults(results));
+  }
+
+  static Future<List<PgBatchResult>> executeSequential(SqlConnection conn, List<String> queries) {
+    List<PgBatchResult> results = new ArrayList<>(queries.size());
+    Future<RowSet<Row>> future = Future.succeededFuture();
+    for (String sql : queries) {
+      future = future.compose(x -> {
+        long start = System.nanoTime();
+        return conn.query(sql).execute()
+            .andThen(ar -> addResult(results, sql, ar, start));
+      });
+    }
+    return future.transform(x -> batchResults(results));
+  }
+
+  private static long addResult(List<PgBatchResult> results, String sql,
+      AsyncResult<RowSet<Row>> ar, long start) {
+
+    long now = System.nanoTime();
+    Duration duration = Duration.ofNanos(now - start);
+    if (ar.succeeded()) {
+      log.debug("{} OK: {} ms", sql, duration.toMillis());
+      results.add(new PgBatchResult(sql, ar.result().rowCount(), duration, null));
+    } else {
+      log.warn("{} FAIL: {}", sql, ar.cause().getMessage());
+      results.add(new PgBatchResult(sql, 0, duration, ar.cause()));
+    }
+    return now;
+  }
+
+  private static Future<List<PgBatchResult>> batchResults(List<PgBatchResult> results) {
+    for (PgBatchResult result : results) {
+      if (!result.succeeded()) {
+        return Future.failedFuture(new PgBatchException(results, result));
+      }
+    }
+    return Future.succeededFuture(results);
+  }
+
+  @Override
+  public <T> Future<T> withRowStream(String sql, Tuple tuple, int fetchSize,
+      Function<RowStream<Row>, Future<T>> handler) {
+    log.debug("withRowStream {}", sql);
+    // a cursor only lives in a transaction
+    return withTransaction(conn -> conn.prepare(sql)
+        .compose(preparedStatement -> {
+          RowStream<Row> stream = preparedStatement.createStream(fetchSize, tuple);
+          return handler.apply(stream)
+              .eventually(stream::close)
+              .eventually(preparedStatement::close);
+        }));
+  }
+
+  @Override
+  public Future<PgCqlCount> count(String table, PgCqlQuery query, int exactLimit) {
+    Tuple tuple = Tuple.tuple();
+    String where = query.getWhereClause(tuple);
+    String select = "SELECT 1 FROM " + table + (where == null ? "" : " WHERE " + where);
+    String sql = "SELECT count(*) FROM (" + select + " LIMIT " + (exactLimit + 1L) + ") x";
+    return execute(sql, tuple).compose(rowSet -> {
+      long counted = rowSet.iterator().next().getLong(0);
+      if (counted <= exactLimit) {
+        return Future.succeededFuture(new PgCqlCount(counted, true));
+      }
+      return preparedQuery("EXPLAIN (FORMAT JSON) " + select).execute(tuple)
+          .map(plan -> new PgCqlCount(
+              Math.max(counted, planRows(plan.iterator().next().getValue(0))), false));
+    });
+  }
+
+  /**
+   * Return the rows estimated for the top node of a plan of EXPLAIN (FORMAT JSON).
+   */
+  static long planRows(Object plan) {
+    JsonArray array = plan instanceof JsonArray a ? a : new JsonArray(plan.toString());
+    return array.getJsonObject(0).getJsonObject("Plan").getNumber("Plan Rows").longValue();
+  }
+
+  /**
+   * Return whether a statement is a SELECT that takes no row locks and calls no function
+   * that may have side effects, so that running it again with EXPLAIN ANALYZE only costs
+   * the time.
+   */
+  static boolean isAnalyzable(String sql) {
+    if (!ANALYZABLE.matcher(sql).matches() || ROW_LOCK.matcher(sql).find()) {
+      return false;
+    }
+    Matcher matcher = CALL.matcher(PgQueryProfiler.redactString(sql));
+    while (matcher.find()) {
+      if (!READ_ONLY_CALLS.contains(matcher.group(1).toLowerCase())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Capture the plan for a statement in the background.
+   *
+   * <p>A SELECT is run again with EXPLAIN ANALYZE, in a transaction that is rolled back;
+   * for other statements, and for a SELECT that calls a function which may have side
+   * effects, only the plan is captured with EXPLAIN, as they would be executed again with
+   * their locks and side effects. Nothing is done if too many are running already.
+   */
+  void explainSample(String sql, Tuple tuple) {
+    if (!profiler.tryStartExplain()) {
+      return;
+    }
+    String explain = isAnalyzable(sql)
+        ? "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " : "EXPLAIN (FORMAT JSON) ";
+    withConnection(conn -> conn.begin()
+            .compose(tx -> conn.preparedQuery(explain + sql)
+                .execute(tuple)
+                .eventually(tx::rollback)))
+        .onSuccess(rowSet -> {
+          Object plan = rowSet.iterator().next().getValue(0);
+          profiler.recordPlan(sql,
+              plan instanceof JsonArray array ? array : new JsonArray(plan.toString()));
+        })
+        .onFailure(e -> log.warn("EXPLAIN {} FAIL: {}", sql, e.getMessage()))
+        .onComplete(x -> profiler.endExplain());
+  }
+
+  /**
+   * Return statistics of statements executed with {@link #execute(String, Tuple)}.
+   *
+   * <p>Statistics are only recorded when the {@value EXPLAIN_SAMPLE_RATE} or
+   * {@value EXPLAIN_SLOW_MS} config is set.
+   *
+   * @return statistics, slowest (by 99th percentile) first
+   */
+  public static List<PgQueryStats> getQueryStats() {
+    return profiler.getStats();
+  }
+
+  public static void clearQueryStats() {
+    profiler.clear();
+  }
+
+  /**
+   * Return statistics of the underlying pools.
+   *
+   * @return statistics, one per pool
+   */
+  public static List<PgPoolStats> getPoolStats() {
+    List<PgPoolStats> stats = new ArrayList<>();
+    for (PoolRef ref : pgPoolMap.values()) {
+      PgConnectOptions options = ref.key.options;
+      PoolOptions poolOptions = ref.poolOptions != null ? ref.poolOptions : new PoolOptions();
+      stats.add(new PgPoolStats(poolOptions.getName(), options.getDatabase(),
+          options.getUser(), poolOptions.getMaxSize(), ref.tenants.size(),
+          ref.contextSwitches.get()));
+    }
+    return stats;
+  }
+
+  /**
+   * Check all pools with a cheap query.
+   *
+   * @return async result; succeeds when all checks have completed
+   */
+  public static Future<Void> probePools() {
+    List<Future<Void>> futures = new ArrayList<>();
+    for (PoolRef ref : pgPoolMap.values()) {
+      futures.add(ref.probe());
+    }
+    return Future.all(futures).mapEmpty();
+  }
+
+  /**
+   * Return the health of all pools, from the last checks of {@link #probePools()}.
+   *
+   * @return health, one per pool
+   */
+  public static List<PgPoolHealth> getPoolHealth() {
+    List<PgPoolHealth> health = new ArrayList<>();
+    long now = System.nanoTime();
+    for (PoolRef ref : pgPoolMap.values()) {
+      long nanos = ref.probeNanos;
+      long waitNanos = ref.probeWaitNanos;
+      if (ref.probing.get()) {
+        nanos = Math.max(nanos, now - ref.probeStart); // a check that hangs counts too
+        if (ref.probeWaiting) {
+          waitNanos = Math.max(waitNanos, now - ref.probeStart);
+        }
+      }
+      PoolOptions poolOptions = ref.poolOptions != null ? ref.poolOptions : new PoolOptions();
+      health.add(new PgPoolHealth(poolOptions.getName(), ref.key.options.getDatabase(),
+          ref.pool.size(), poolOptions.getMaxSize(), ref.active.get(),
+          nanos < 0 ? -1.0 : nanos / 1_000_000.0,
+          waitNanos < 0 ? -1.0 : waitNanos / 1_000_000.0, ref.probeError));
+    }
+    return health;
+  }
+
+  /**
+   * Return statistics of the per-tenant connection queues.
+   *
+   * @return statistics, one per tenant and pool
+   */
+  public static List<PgTenantQueueStats> getTenantQueueStats() {
+    List<PgTenantQueueStats> stats = new ArrayList<>();
+    for (PoolRef ref : pgPoolMap.values()) {
+      TenantConnectionQueue queue = ref.getQueue();
+      if (queue != null) {
+        stats.addAll(queue.getStats());
+      }
+    }
+    return stats;
   }
 
   Future<Void> explainAnalyze(String sql, Tuple tuple) {
@@ -305,6 +1199,17 @@ public class TenantPgPoolImpl implements TenantPgPool {
         }).mapEmpty();
   }
 
+  @Override
+  public Future<PgSubscriber> getSubscriber() {
+    ConnectKey key = poolRef.key;
+    Future<PgSubscriber> future = subscriberMap.computeIfAbsent(key, k -> {
+      PgSubscriber subscriber = PgSubscriber.subscriber(vertx, connectOptions)
+          .reconnectPolicy(retries -> SUBSCRIBER_RECONNECT_MS);
+      return subscriber.connect().map(subscriber);
+    });
+    return future.onFailure(e -> subscriberMap.remove(key, future));
+  }
+
   @Override
   public int size() {
     return pgPool.size();
@@ -316,10 +1221,21 @@ public class TenantPgPoolImpl implements TenantPgPool {
    * @return async result
    */
   public static Future<Void> closeAll() {
+    settingsMap.clear();
     List<Future<Void>> futures = new ArrayList<>(pgPoolMap.size());
-    pgPoolMap.forEach((a, b) -> futures.add(b.close()));
-    return Future.all(futures)
-        .onComplete(x -> pgPoolMap.clear())
-        .mapEmpty();
+    for (PoolRef ref : pgPoolMap.values()) {
+      pgPoolMap.remove(ref.key, ref);
+      ref.unregisterGauges();
+      if (ref.kill()) {
+        futures.add(ref.pool.close());
+      }
+    }
+    for (var entry : subscriberMap.entrySet()) {
+      subscriberMap.remove(entry.getKey(), entry.getValue());
+      futures.add(entry.getValue()
+          .compose(PgSubscriber::close)
+          .otherwiseEmpty());
+    }
+    return Future.all(futures).mapEmpty();
   }
 }
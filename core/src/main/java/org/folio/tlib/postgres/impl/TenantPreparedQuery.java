@@ -0,0 +1,54 @@
+package org.folio.tlib.postgres.impl;
+
+import io.vertx.core.Future;
+import io.vertx.sqlclient.PreparedQuery;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlResult;
+import io.vertx.sqlclient.Tuple;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Prepared query that is executed by {@link TenantPgPoolImpl#run(Function)}, rather than
+ * directly on the underlying pool, so that the tenant context, the per-tenant connection
+ * limit and metrics apply.
+ */
+class TenantPreparedQuery<T> implements PreparedQuery<T> {
+  private final TenantPgPoolImpl pool;
+  private final Function<SqlClient, PreparedQuery<T>> query;
+
+  TenantPreparedQuery(TenantPgPoolImpl pool, Function<SqlClient, PreparedQuery<T>> query) {
+    this.pool = pool;
+    this.query = query;
+  }
+
+  @Override
+  public Future<T> execute() {
+    return pool.run(client -> query.apply(client).execute());
+  }
+
+  @Override
+  public Future<T> execute(Tuple tuple) {
+    return pool.run(client -> query.apply(client).execute(tuple));
+  }
+
+  @Override
+  public Future<T> executeBatch(List<Tuple> batch) {
+    return pool.run(client -> query.apply(client).executeBatch(batch));
+  }
+
+  @Override
+  public <R> PreparedQuery<SqlResult<R>> collecting(Collector<Row, ?, R> collector) {
+    return new TenantPreparedQuery<>(pool,
+        client -> query.apply(client).collecting(collector));
+  }
+
+  @Override
+  public <U> PreparedQuery<RowSet<U>> mapping(Function<Row, U> mapper) {
+    return new TenantPreparedQuery<>(pool,
+        client -> query.apply(client).mapping(mapper));
+  }
+}
@@ -0,0 +1,40 @@
+package org.folio.tlib.postgres.impl;
+
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Query;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlResult;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Query that is executed by {@link TenantPgPoolImpl#run(Function)}, rather than directly on
+ * the underlying pool, so that the tenant context, the per-tenant connection limit and
+ * metrics apply.
+ */
+class TenantQuery<T> implements Query<T> {
+  private final TenantPgPoolImpl pool;
+  private final Function<SqlClient, Query<T>> query;
+
+  TenantQuery(TenantPgPoolImpl pool, Function<SqlClient, Query<T>> query) {
+    this.pool = pool;
+    this.query = query;
+  }
+
+  @Override
+  public Future<T> execute() {
+    return pool.run(client -> query.apply(client).execute());
+  }
+
+  @Override
+  public <R> Query<SqlResult<R>> collecting(Collector<Row, ?, R> collector) {
+    return new TenantQuery<>(pool, client -> query.apply(client).collecting(collector));
+  }
+
+  @Override
+  public <U> Query<RowSet<U>> mapping(Function<Row, U> mapper) {
+    return new TenantQuery<>(pool, client -> query.apply(client).mapping(mapper));
+  }
+}
@@ -0,0 +1,156 @@
+package org.folio.tlib.util;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * Writes a stream of items as a JSON object with an array property to an HTTP response.
+ *
+ * <p>The response is {@code {"property":[item,item,...]}}. The items are encoded one at a time
+ * into a small buffer that is written as a chunk when full, and the stream is paused while the
+ * response write queue is full. Memory use is thus bounded by the chunk size and whatever the
+ * stream itself buffers (the fetch size for a {@link TenantPgPool#withRowStream} stream),
+ * rather than the size of the result. A result that fits in one chunk is written as a
+ * regular response with Content-Length.
+ */
+public final class JsonStreamResponse {
+
+  private static final Logger log = LogManager.getLogger(JsonStreamResponse.class);
+
+  static final int CHUNK_SIZE = 8192;
+
+  private final HttpServerResponse response;
+  private final ReadStream<?> stream;
+  private final Promise<Void> promise = Promise.promise();
+  private Buffer buffer;
+  private boolean empty = true;
+
+  private JsonStreamResponse(HttpServerResponse response, String property, ReadStream<?> stream) {
+    this.response = response;
+    this.stream = stream;
+    buffer = Buffer.buffer(CHUNK_SIZE + 1024)
+        .appendString("{")
+        .appendBuffer(Json.encodeToBuffer(property))
+        .appendString(":[");
+  }
+
+  /**
+   * Query rows and write them as a JSON response.
+   *
+   * @param response HTTP response; status 200 is returned if the query succeeds
+   * @param property name of the array property
+   * @param pool Postgres pool
+   * @param sql query
+   * @param tuple parameters
+   * @param fetchSize number of rows to fetch per round trip
+   * @param mapper converts a row to JSON
+   * @return async result; failed if nothing has been written yet
+   * @see #writeArray(HttpServerResponse, String, ReadStream, Function)
+   */
+  public static Future<Void> writeRows(HttpServerResponse response, String property,
+      TenantPgPool pool, String sql, Tuple tuple, int fetchSize,
+      Function<Row, JsonObject> mapper) {
+
+    return pool.withRowStream(sql, tuple, fetchSize,
+        stream -> writeArray(response, property, stream, mapper));
+  }
+
+  /**
+   * Write the items of a stream as a JSON response.
+   *
+   * <p>The response status and headers are only written with the first chunk. If the stream
+   * fails before that, the returned future fails and the response is left untouched so that the
+   * caller can return an error. If it fails later, the status has been sent already, so the
+   * response is reset (the client sees an incomplete response) and the returned future
+   * succeeds.
+   *
+   * @param response HTTP response; status 200 is returned
+   * @param property name of the array property
+   * @param stream items; must not have been started (no handler set)
+   * @param mapper converts an item to JSON
+   * @param <T> item type
+   * @return async result
+   */
+  public static <T> Future<Void> writeArray(HttpServerResponse response, String property,
+      ReadStream<T> stream, Function<T, JsonObject> mapper) {
+
+    JsonStreamResponse writer = new JsonStreamResponse(response, property, stream);
+    response.closeHandler(x -> writer.fail(new IllegalStateException("Response closed")));
+    stream.exceptionHandler(writer::fail);
+    stream.endHandler(x -> writer.end());
+    stream.handler(item -> {
+      JsonObject json;
+      try {
+        json = mapper.apply(item);
+      } catch (Exception e) {
+        writer.fail(e);
+        return;
+      }
+      writer.add(json);
+    });
+    return writer.promise.future();
+  }
+
+  private void add(JsonObject json) {
+    if (promise.future().isComplete()) {
+      return;
+    }
+    if (!empty) {
+      buffer.appendString(",");
+    }
+    empty = false;
+    buffer.appendBuffer(json.toBuffer());
+    if (buffer.length() < CHUNK_SIZE) {
+      return;
+    }
+    if (!response.headWritten()) {
+      response.setStatusCode(200);
+      response.setChunked(true);
+      response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+    }
+    response.write(buffer);
+    buffer = Buffer.buffer(CHUNK_SIZE + 1024);
+    if (response.writeQueueFull()) {
+      stream.pause();
+      response.drainHandler(x -> stream.resume());
+    }
+  }
+
+  private void end() {
+    if (promise.future().isComplete()) {
+      return;
+    }
+    buffer.appendString("]}");
+    if (!response.headWritten()) {
+      response.setStatusCode(200);
+      response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+    }
+    response.end(buffer);
+    promise.complete();
+  }
+
+  private void fail(Throwable cause) {
+    if (promise.future().isComplete()) {
+      return;
+    }
+    if (!response.headWritten()) {
+      promise.fail(cause);
+      return;
+    }
+    log.warn("Response aborted: {}", cause.getMessage(), cause);
+    response.reset();
+    promise.complete();
+  }
+}
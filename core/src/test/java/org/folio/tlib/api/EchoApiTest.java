@@ -11,13 +11,18 @@ import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import org.folio.tlib.RouterCreator;
 import org.folio.tlib.TenantInitHooks;
+import org.folio.tlib.postgres.TenantPgPool;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import static org.folio.tlib.api.EchoApi.BODY_LIMIT;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
 
 @Testcontainers
 @ExtendWith({VertxExtension.class})
@@ -41,6 +46,9 @@ class EchoApiTest {
         new EchoApi(),
         new Tenant2Api(tenantInitHooks),
         new HealthApi(),
+        new PgStatsApi(),
+        new MetricsApi(),
+        new PgHealthApi(),
     };
     RouterCreator.mountAll(vertx, routerCreators)
         .compose(router -> {
@@ -52,6 +60,11 @@ class EchoApiTest {
         .onComplete(context.succeedingThenComplete());
   }
 
+  @AfterAll
+  static void afterAll() {
+    TenantPgPool.setMeterRegistry(null);
+  }
+
   @Test
   void testHealth() {
     RestAssured.given()
@@ -61,6 +74,47 @@ class EchoApiTest {
         .body(is("OK"));
   }
 
+  @Test
+  void testHealthLive() {
+    RestAssured.given()
+        .get("/admin/health/live")
+        .then().statusCode(200)
+        .contentType(ContentType.TEXT)
+        .body(is("OK"));
+  }
+
+  @Test
+  void testHealthReady() {
+    RestAssured.given()
+        .get("/admin/health/ready")
+        .then().statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("ready", is(true))
+        .body("pools", is(notNullValue()));
+  }
+
+  @Test
+  void testMetrics() {
+    RestAssured.given()
+        .get("/admin/metrics")
+        .then().statusCode(200)
+        .contentType(startsWith("text/plain"));
+  }
+
+  @Test
+  void testPgStats() {
+    RestAssured.given()
+        .delete("/admin/pg-stats")
+        .then().statusCode(204);
+
+    RestAssured.given()
+        .get("/admin/pg-stats")
+        .then().statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("queries", is(empty()))
+        .body("pools", is(notNullValue()));
+  }
+
   @Test
   void testEcho200_1() {
     String request = "x".repeat(5);
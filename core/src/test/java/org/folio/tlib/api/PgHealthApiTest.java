@@ -0,0 +1,81 @@
+package org.folio.tlib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.VerticleBase;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.List;
+import java.util.function.Supplier;
+import org.folio.tlib.postgres.PgPoolHealth;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith({VertxExtension.class})
+class PgHealthApiTest {
+
+  static PgPoolHealth health(int active, double latencyMillis, String error) {
+    return health(active, latencyMillis, 0, error);
+  }
+
+  static PgPoolHealth health(int active, double latencyMillis, double waitMillis,
+      String error) {
+    return new PgPoolHealth("pool", "db", 4, 4, active, latencyMillis, waitMillis, error);
+  }
+
+  @Test
+  void ready() {
+    PgHealthApi api = new PgHealthApi(1000, 100, 10);
+    assertThat(api.isReady(health(0, -1, -1, null)), is(true));
+    assertThat(api.isReady(health(3, 100, null)), is(true));
+    // active only counts some uses; the wait for a connection tells saturation
+    assertThat(api.isReady(health(4, 1, null)), is(true));
+    assertThat(api.isReady(health(0, 11, 11, null)), is(false));
+    assertThat(api.isReady(health(0, 101, null)), is(false));
+    assertThat(api.isReady(health(0, 1, "connection refused")), is(false));
+  }
+
+  @Test
+  void oneTimerPerVertx(Vertx vertx, VertxTestContext context) {
+    Supplier<VerticleBase> verticle = () -> new VerticleBase() {
+      @Override
+      public Future<?> start() {
+        return new PgHealthApi(10, 1000).createRouter(vertx);
+      }
+    };
+    vertx.deployVerticle(verticle, new DeploymentOptions().setInstances(2))
+        .compose(id -> {
+          assertThat(PgHealthApi.timers.get(vertx).users.size(), is(2));
+          assertThat(vertx.deploymentIDs().size(), is(2)); // the verticles and the timer
+          return vertx.undeploy(id);
+        })
+        .onComplete(context.succeeding(x -> {
+          // the timer finds that it is no longer used
+          vertx.setPeriodic(10, id -> {
+            if (PgHealthApi.timers.get(vertx) == null && vertx.deploymentIDs().isEmpty()) {
+              vertx.cancelTimer(id);
+              context.completeNow();
+            }
+          });
+        }));
+  }
+
+  @Test
+  void readiness() {
+    PgHealthApi api = new PgHealthApi();
+    assertThat(api.readiness(List.of()).getBoolean("ready"), is(true));
+
+    JsonObject readiness = api.readiness(List.of(health(2, 5, null), health(0, 5, "down")));
+    assertThat(readiness.getBoolean("ready"), is(false));
+    JsonObject pool = readiness.getJsonArray("pools").getJsonObject(0);
+    assertThat(pool.getBoolean("ready"), is(true));
+    assertThat(pool.getDouble("saturation"), is(0.5));
+    assertThat(pool.getString("database"), is("db"));
+    assertThat(readiness.getJsonArray("pools").getJsonObject(1).getBoolean("ready"), is(false));
+  }
+}
@@ -25,6 +25,8 @@ import io.vertx.pgclient.PgConnectOptions;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import org.folio.tlib.RouterCreator;
 import org.folio.tlib.TenantInitConf;
 import org.folio.tlib.postgres.TenantPgPool;
@@ -521,4 +523,147 @@ class Tenant2ApiTest {
       vtc.completeNow();
     }));
   }
+
+  @Test
+  void testWaitOtherInstance(Vertx vertx) throws Exception {
+    // a second instance of the module; only this one runs the job
+    int port2 = vertx.createHttpServer()
+        .requestHandler(new Tenant2Api(hooks).createRouter(vertx)
+            .toCompletionStage().toCompletableFuture().get())
+        .listen(0)
+        .toCompletionStage().toCompletableFuture().get()
+        .actualPort();
+
+    String tenant = "testlib";
+    hooks.postInitPromise = Promise.promise(); // not completed yet
+    String location = RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", tenant)
+        .contentType(ContentType.JSON)
+        .body("{\"module_to\" : \"mod-eusage-reports-1.0.0\"}")
+        .post("/_/tenant")
+        .then().statusCode(201)
+        .extract().header("Location");
+
+    vertx.setTimer(1000 /* ms */, timerFired -> hooks.postInitPromise.tryComplete());
+
+    // woken by the notification from the other instance, not by the timeout
+    RestAssured.given()
+        .header("X-Okapi-Tenant", tenant)
+        .get(location + "?wait=5000")
+    .then()
+        .statusCode(200)
+        .body("complete", is(true))
+        .time(greaterThan(500L /* ms */))
+        .time(lessThan(1500L /* ms */));
+
+    RestAssured.given()
+        .header("X-Okapi-Tenant", tenant)
+        .delete(location)
+        .then().statusCode(204);
+  }
+
+  @Test
+  void testQueueAndDuplicate(Vertx vertx) throws Exception {
+    // an instance that runs one job at a time
+    int port2 = vertx.createHttpServer()
+        .requestHandler(new Tenant2Api(hooks, new TenantInitScheduler(1)).createRouter(vertx)
+            .toCompletionStage().toCompletableFuture().get())
+        .listen(0)
+        .toCompletionStage().toCompletableFuture().get()
+        .actualPort();
+
+    hooks.postInitPromise = Promise.promise(); // not completed yet
+    String body = "{\"module_to\" : \"mod-eusage-reports-1.0.0\"}";
+    String location1 = RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", "testlib")
+        .contentType(ContentType.JSON)
+        .body(body)
+        .post("/_/tenant")
+        .then().statusCode(201)
+        .body("queuePosition", is(nullValue()))
+        .extract().header("Location");
+
+    // identical request while the first one is running: same job
+    RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", "testlib")
+        .contentType(ContentType.JSON)
+        .body(body)
+        .post("/_/tenant")
+        .then().statusCode(201)
+        .header("Location", is(location1));
+
+    String location2 = RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", "testlib2")
+        .contentType(ContentType.JSON)
+        .body(body)
+        .post("/_/tenant")
+        .then().statusCode(201)
+        .body("queuePosition", is(1))
+        .extract().header("Location");
+
+    RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", "testlib2")
+        .get(location2)
+        .then().statusCode(200)
+        .body("complete", is(false))
+        .body("queuePosition", is(1));
+
+    hooks.postInitPromise.complete();
+
+    RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", "testlib2")
+        .get(location2 + "?wait=5000")
+    .then()
+        .statusCode(200)
+        .body("complete", is(true))
+        .body("queuePosition", is(nullValue()));
+
+    RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", "testlib")
+        .delete(location1)
+        .then().statusCode(204);
+
+    RestAssured.given()
+        .port(port2)
+        .header("X-Okapi-Tenant", "testlib2")
+        .delete(location2)
+        .then().statusCode(204);
+  }
+
+  @Test
+  void testConcurrentDuplicate() throws Exception {
+    hooks.preInitPromise = Promise.promise(); // first request waits before the job is saved
+    hooks.postInitPromise = Promise.promise(); // job keeps running
+    Supplier<String> post = () -> RestAssured.given()
+        .header("X-Okapi-Tenant", "testlib")
+        .contentType(ContentType.JSON)
+        .body("{\"module_to\" : \"mod-eusage-reports-1.0.1\"}")
+        .post("/_/tenant")
+        .then().statusCode(201)
+        .extract().header("Location");
+    CompletableFuture<String> location1 = CompletableFuture.supplyAsync(post);
+    CompletableFuture<String> location2 = CompletableFuture.supplyAsync(post);
+    Thread.sleep(200);
+    hooks.preInitPromise.complete();
+    assertThat(location2.get(), is(location1.get()));
+
+    hooks.postInitPromise.complete();
+    RestAssured.given()
+        .header("X-Okapi-Tenant", "testlib")
+        .get(location1.get() + "?wait=5000")
+        .then().statusCode(200)
+        .body("complete", is(true));
+
+    RestAssured.given()
+        .header("X-Okapi-Tenant", "testlib")
+        .delete(location1.get())
+        .then().statusCode(204);
+  }
 }
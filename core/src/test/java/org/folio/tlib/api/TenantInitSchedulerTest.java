@@ -0,0 +1,151 @@
+package org.folio.tlib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith({VertxExtension.class})
+class TenantInitSchedulerTest {
+
+  static JsonObject attributes(String moduleTo) {
+    return new JsonObject().put("module_to", moduleTo);
+  }
+
+  @Test
+  void badMaxRunning() {
+    assertThrows(IllegalArgumentException.class, () -> new TenantInitScheduler(0));
+  }
+
+  @Test
+  void defaultScheduler() {
+    TenantInitScheduler scheduler = TenantInitScheduler.getDefault();
+    assertThat(TenantInitScheduler.getDefault() == scheduler, is(true));
+    assertThat(scheduler.getMaxRunning() > 0, is(true));
+  }
+
+  @Test
+  void runExclusiveNoContext() {
+    TenantInitScheduler scheduler = new TenantInitScheduler(1);
+    assertThrows(IllegalStateException.class,
+        () -> scheduler.runExclusive("t1", Future::succeededFuture));
+  }
+
+  @Test
+  void runExclusive(Vertx vertx, VertxTestContext context) {
+    TenantInitScheduler scheduler = new TenantInitScheduler(1);
+    List<String> events = new ArrayList<>();
+    Promise<String> first = Promise.promise();
+    vertx.runOnContext(x -> {
+      scheduler.runExclusive("t1", () -> {
+        events.add("t1 first");
+        return first.future();
+      });
+      Future<String> second = scheduler.runExclusive("t1", () -> {
+        events.add("t1 second");
+        return Future.succeededFuture("b");
+      });
+      scheduler.runExclusive("t2", () -> {
+        events.add("t2");
+        throw new IllegalStateException("task failure");
+      }).onComplete(context.failing(e -> context.verify(() -> {
+        // other tenant is not held up by t1
+        assertThat(events, is(List.of("t1 first", "t2")));
+        first.fail("first failure");
+      })));
+      second.onComplete(context.succeeding(res -> context.verify(() -> {
+        assertThat(res, is("b"));
+        assertThat(events, is(List.of("t1 first", "t2", "t1 second")));
+        context.completeNow();
+      })));
+    });
+  }
+
+  @Test
+  void submitNoContext() {
+    TenantInitScheduler scheduler = new TenantInitScheduler(1);
+    UUID id = UUID.randomUUID();
+    JsonObject tenantAttributes = attributes("mod-a-1.0.0");
+    assertThrows(IllegalStateException.class,
+        () -> scheduler.submit(id, "t1", tenantAttributes, Future::succeededFuture));
+  }
+
+  @Test
+  void queue(Vertx vertx, VertxTestContext context) {
+    TenantInitScheduler scheduler = new TenantInitScheduler(2);
+    Context ctx = vertx.getOrCreateContext();
+    List<Promise<Void>> promises = new ArrayList<>();
+    List<UUID> ids = new ArrayList<>();
+    List<Integer> started = new ArrayList<>();
+    Handler<Void> allStarted = x -> context.verify(() -> {
+      assertThat(started, is(List.of(0, 1, 2, 3)));
+      assertThat(scheduler.getRunning(), is(1));
+      assertThat(scheduler.getQueued(), is(0));
+      promises.get(3).complete();
+      context.completeNow();
+    });
+    Handler<Void> thirdStarted = x -> context.verify(() -> {
+      assertThat(started, is(List.of(0, 1, 2)));
+      assertThat(scheduler.getQueuePosition(ids.get(3)), is(1));
+      assertThat(scheduler.findJob("t1", attributes("mod-a-1.0.0")), is(nullValue()));
+      promises.get(0).complete();
+      promises.get(2).complete();
+    });
+    ctx.runOnContext(x -> context.verify(() -> {
+      for (int i = 0; i < 4; i++) {
+        int no = i;
+        Promise<Void> promise = Promise.promise();
+        promises.add(promise);
+        ids.add(UUID.randomUUID());
+        scheduler.submit(ids.get(i), "t" + i, attributes("mod-a-1.0.0"), () -> {
+          started.add(no);
+          if (no == 2) {
+            ctx.runOnContext(thirdStarted);
+          } else if (no == 3) {
+            ctx.runOnContext(allStarted);
+          }
+          return promise.future();
+        });
+      }
+      assertThat(scheduler.getRunning(), is(2));
+      assertThat(scheduler.getQueued(), is(2));
+      assertThat(scheduler.getQueuePosition(ids.get(0)), is(0));
+      assertThat(scheduler.getQueuePosition(ids.get(2)), is(1));
+      assertThat(scheduler.getQueuePosition(ids.get(3)), is(2));
+      assertThat(scheduler.getQueuePosition(UUID.randomUUID()), is(0));
+      assertThat(scheduler.findJob("t0", attributes("mod-a-1.0.0")), is(ids.get(0)));
+      assertThat(scheduler.findJob("t3", attributes("mod-a-1.0.0")), is(ids.get(3)));
+      assertThat(scheduler.findJob("t3", attributes("mod-a-1.0.1")), is(nullValue()));
+      assertThat(scheduler.findJob("t4", attributes("mod-a-1.0.0")), is(nullValue()));
+      promises.get(1).fail("failure releases too");
+    }));
+  }
+
+  @Test
+  void taskThrows(Vertx vertx, VertxTestContext context) {
+    TenantInitScheduler scheduler = new TenantInitScheduler(1);
+    vertx.runOnContext(x -> {
+      scheduler.submit(UUID.randomUUID(), "t1", attributes("mod-a-1.0.0"), () -> {
+        throw new IllegalStateException("task failure");
+      });
+      scheduler.submit(UUID.randomUUID(), "t2", attributes("mod-a-1.0.0"), () -> {
+        context.completeNow();
+        return Future.succeededFuture();
+      });
+    });
+  }
+}
@@ -1,8 +1,17 @@
 package org.folio.tlib.postgres;
 
+import io.vertx.sqlclient.Tuple;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldBase;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldBoolean;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
@@ -13,9 +22,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.z3950.zing.cql.CQLTermNode;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class PgCqlQueryTest {
@@ -27,11 +38,11 @@ class PgCqlQueryTest {
         Arguments.of(null, "dc.Title==value", "title = 'value'"),
         Arguments.of("dc.Title==value", "cql.allRecords=1", "title = 'value'"),
         Arguments.of("cql.allRecords=1", "dc.Title==value", "title = 'value'"),
-        Arguments.of(null, "dc.Title==value2 OR dc.title==value3", "(title = 'value2' OR title = 'value3')"),
+        Arguments.of(null, "dc.Title==value2 OR dc.title==value3", "title IN ('value2', 'value3')"),
         Arguments.of("dc.Title==value1", "dc.Title==value2 OR dc.title==value3",
-            "(title = 'value1' AND (title = 'value2' OR title = 'value3'))"),
+            "(title = 'value1' AND title IN ('value2', 'value3'))"),
         Arguments.of("dc.Title==value1 sortby title", "dc.Title==value2 OR dc.title==value3",
-            "(title = 'value1' AND (title = 'value2' OR title = 'value3'))"),
+            "(title = 'value1' AND title IN ('value2', 'value3'))"),
         Arguments.of("cql.allRecords = 1", "dc.title==value1", "title = 'value1'"),
         Arguments.of("cql.allRecords = 1 sortby title", "dc.title==value1", "title = 'value1'")
     );
@@ -47,12 +58,53 @@ class PgCqlQueryTest {
     assertThat(pgCqlQuery.getWhereClause(), is(expect));
   }
 
+  @Test
+  void testCqlQueriesSortbyInQ2() {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withExact());
+    var e = assertThrows(PgCqlException.class,
+        () -> pgCqlDefinition.parse("title==a", "title==b sortby title"));
+    assertThat(e.getMessage(), is("sortby not allowed in second query: title==b sortby title"));
+    assertThrows(PgCqlException.class, () -> pgCqlDefinition.parse("title==a", "title=="));
+  }
+
+  @Test
+  void testParseConcurrently() {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withExact());
+    List<String> got = IntStream.range(0, 1000).parallel()
+        .mapToObj(i -> pgCqlDefinition.parse("title==a" + i + " or title==b", "title==c" + i)
+            .getWhereClause())
+        .toList();
+    for (int i = 0; i < 1000; i++) {
+      assertThat(got.get(i),
+          is("(title IN ('a" + i + "', 'b') AND title = 'c" + i + "')"));
+    }
+  }
+
   @Test
   void withFullTextNull() {
     PgCqlFieldText pgCqlFieldText = new PgCqlFieldText();
     Assertions.assertThrows(PgCqlException.class, () -> pgCqlFieldText.withFullText(null));
   }
 
+  @Test
+  void withTsvectorColumn() {
+    PgCqlFieldText pgCqlFieldText = new PgCqlFieldText();
+    Assertions.assertThrows(PgCqlException.class,
+        () -> pgCqlFieldText.withTsvectorColumn("title_tsv"));
+
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("title",
+        new PgCqlFieldText().withFullText("english").withTsvectorColumn("title_tsv"));
+    assertThat(pgCqlDefinition.parse("title all \"a b\"").getWhereClause(),
+        is("title_tsv @@ plainto_tsquery('english', 'a b')"));
+    Tuple tuple = Tuple.tuple();
+    assertThat(pgCqlDefinition.parse("title = \"a b\"").getWhereClause(tuple),
+        is("title_tsv @@ phraseto_tsquery('english', $1)"));
+    assertThat(tuple.getString(0), is("a b"));
+  }
+
   static String ftResponseAdj(String column, String term) {
     return ftResponse(column, term, "phraseto_tsquery", "simple");
   }
@@ -109,7 +161,13 @@ class PgCqlQueryTest {
         Arguments.of( "Title==\"d\\\\\\\\\"", "title = 'd\\\\'" ),
         Arguments.of( "Title==\"e\\\\\\\"\\\\\"", "title = 'e\\\"\\'" ),
         Arguments.of( "Title>\"\"", "error: Unsupported operator for: Title > \"\"" ),
-        Arguments.of( "Title==v1 or title==v2",  "(title = 'v1' OR title = 'v2')"),
+        Arguments.of( "Title==v1 or title==v2",  "title IN ('v1', 'v2')"),
+        Arguments.of( "Title==v1 or isbn=v2",  "(title = 'v1' OR isbn = 'v2')"),
+        Arguments.of( "Title==v1 or title==\"v'2\" or isbn=v3 or title==v4",
+            "(title IN ('v1', 'v''2', 'v4') OR isbn = 'v3')"),
+        Arguments.of( "Title==v1 or title=v2",
+            "(title = 'v1' OR to_tsvector('simple', title) @@ phraseto_tsquery('simple', 'v2'))"),
+        Arguments.of( "Title==v1 or title==v2*",  "(title = 'v1' OR title LIKE 'v2%')"),
         Arguments.of( "isbn=978-3-16-148410-0", "isbn = '978-3-16-148410-0'" ),
         Arguments.of( "isbn=978-3-16-148410-*", "error: Masking op * unsupported for: isbn = 978-3-16-148410-*" ),
         Arguments.of( "cql.allRecords=1 or title==v1", null ),
@@ -118,11 +176,23 @@ class PgCqlQueryTest {
         Arguments.of( "Title==v1 and cql.allRecords=1", "title = 'v1'" ),
         Arguments.of( "cql.allRecords=1 and Title==v2", "title = 'v2'" ),
         Arguments.of( "Title==v1 not title==v2", "(title = 'v1' AND NOT title = 'v2')" ),
-        Arguments.of( "cql.allRecords=1 not title==v2", "NOT (title = 'v2')" ),
+        Arguments.of( "cql.allRecords=1 not title==v2", "NOT title = 'v2'" ),
         Arguments.of( "title==v1 not cql.allRecords=1", "FALSE" ),
         Arguments.of( "title==v1 prox title==v2", "error: Unsupported operator PROX" ),
         Arguments.of( "cost=1 or cost=2 and cost=3", "((cost=1 OR cost=2) AND cost=3)" ), // boolean are left-assoc and same precedence in CQL
         Arguments.of( "cost=1 or (cost=2 and cost=3)", "(cost=1 OR (cost=2 AND cost=3))" ),
+        Arguments.of( "cost=1 or (cost=2 or cost=3)", "(cost=1 OR cost=2 OR cost=3)" ),
+        Arguments.of( "(cost=1 and cost=2) and (cost=3 and cost=1)", "(cost=1 AND cost=2 AND cost=3)" ),
+        Arguments.of( "cost=1 or cost=1", "cost=1" ),
+        Arguments.of( "cost=1 or (title==v1 not cql.allRecords=1)", "cost=1" ),
+        Arguments.of( "cost=1 not (cost=2 or cost=3)", "(cost=1 AND NOT cost=2 AND NOT cost=3)" ),
+        Arguments.of( "cost=1 not (cost=2 not cost=3)", "(cost=1 AND (NOT cost=2 OR cost=3))" ),
+        Arguments.of( "isbn=a not (isbn=b or isbn=c)", "(isbn = 'a' AND NOT isbn IN ('b', 'c'))" ),
+        Arguments.of( "cost>=1 and cost<=5", "cost BETWEEN 1 AND 5" ),
+        Arguments.of( "cost<=5 and title==v1 and cost>=1", "(cost BETWEEN 1 AND 5 AND title = 'v1')" ),
+        Arguments.of( "cost>=1 and cost<5", "(cost>=1 AND cost<5)" ),
+        Arguments.of( "cost>=1 not cost<=5", "(cost>=1 AND NOT cost<=5)" ),
+        Arguments.of( "cost>=1 and cost<=x", "error: Bad numeric for: cost <= x" ),
         Arguments.of( "cost=\"\" or cost<>3", "(cost IS NOT NULL OR cost<>3)" ),
         Arguments.of( "cost=1", "cost=1" ),
         Arguments.of( "cost=+1.9", "cost=+1.9" ),
@@ -202,6 +272,323 @@ class PgCqlQueryTest {
     }
   }
 
+  static Stream<Arguments> cqlParameterQueries() {
+    UUID id = UUID.fromString("6736bd11-5073-4026-81b5-b70b24179e02");
+    return Stream.of(
+        Arguments.of("cql.allRecords=1", null, List.of()),
+        Arguments.of("Title=v1", "to_tsvector('simple', title) @@ phraseto_tsquery('simple', $1)",
+            List.of("v1")),
+        Arguments.of("Title all \"men's room\"",
+            "to_tsvector('simple', title) @@ plainto_tsquery('simple', $1)", List.of("men's room")),
+        Arguments.of("Title==\"b\\\\'\"", "title = $1", List.of("b\\'")),
+        Arguments.of("Title==\"\"", "title = $1", List.of("")),
+        Arguments.of("Title=\"\"", "title IS NOT NULL", List.of()),
+        Arguments.of("issn = 2'5*", "issn LIKE $1", List.of("2'5%")),
+        Arguments.of("issn <> 2_9*", "issn NOT LIKE $1", List.of("2\\_9%")),
+        Arguments.of("issn == \"a\\\\b*\"", "issn LIKE $1", List.of("a\\\\b%")),
+        Arguments.of("issn == \"a\\*b\"", "issn = $1", List.of("a*b")),
+        Arguments.of("Title==v1 or isbn=v2", "(title = $1 OR isbn = $2)", List.of("v1", "v2")),
+        Arguments.of("Title==v1 not isbn=3 sortby title", "(title = $1 AND NOT isbn = $2)",
+            List.of("v1", "3")),
+        Arguments.of("cost=1", "cost=$1::integer", List.of(1)),
+        Arguments.of("cost>-12345678901", "cost>$1::bigint", List.of(-12345678901L)),
+        Arguments.of("cost<=123456789012345678901", "cost<=$1::numeric",
+            List.of(new BigDecimal("123456789012345678901"))),
+        Arguments.of("cost<>+1.5e3", "cost<>$1::numeric", List.of(new BigDecimal("1.5e3"))),
+        Arguments.of("paid=True", "paid=$1", List.of(true)),
+        Arguments.of("id==6736BD11-5073-4026-81B5-B70B24179E02", "id=$1", List.of(id)),
+        Arguments.of("date>=2022-02-03", "date>=$1::date", List.of(LocalDate.of(2022, 2, 3))),
+        Arguments.of("date>=2022-02-03 and date<=2022-02-05T04:05:06",
+            "date BETWEEN $1::date AND $2::timestamp",
+            List.of(LocalDate.of(2022, 2, 3), LocalDateTime.of(2022, 2, 5, 4, 5, 6))),
+        Arguments.of("cost>=1 and cost<=12345678901", "cost BETWEEN $1::integer AND $2::bigint",
+            List.of(1, 12345678901L)),
+        Arguments.of("date<2022-02-03T04:05:06", "date<$1::timestamp",
+            List.of(LocalDateTime.of(2022, 2, 3, 4, 5, 6)))
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("cqlParameterQueries")
+  void testCqlParameterQueries(String query, String expect, List<Object> values) {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withFullText().withLikeOps());
+    pgCqlDefinition.addField("isbn", new PgCqlFieldText().withExact());
+    pgCqlDefinition.addField("issn", new PgCqlFieldText().withLikeOps());
+    pgCqlDefinition.addField("cost", new PgCqlFieldNumber());
+    pgCqlDefinition.addField("paid", new PgCqlFieldBoolean());
+    pgCqlDefinition.addField("id", new PgCqlFieldUuid());
+    pgCqlDefinition.addField("date", new PgCqlFieldTimestamp());
+    PgCqlQuery pgCqlQuery = pgCqlDefinition.parse(query);
+    Tuple tuple = Tuple.tuple();
+    assertThat(pgCqlQuery.getWhereClause(tuple), is(expect));
+    List<Object> got = new ArrayList<>();
+    for (int i = 0; i < tuple.size(); i++) {
+      got.add(tuple.getValue(i));
+    }
+    assertThat(got, is(values));
+  }
+
+  @Test
+  void testCqlParameterOffset() {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withExact());
+    PgCqlQuery pgCqlQuery = pgCqlDefinition.parse("title==v1 or title==v2");
+    Tuple tuple = Tuple.of("tenant");
+    assertThat(pgCqlQuery.getWhereClause(tuple), is("title = ANY($2)"));
+    assertThat(tuple.size(), is(2));
+    assertThat(tuple.getArrayOfStrings(1), is(new String[] {"v1", "v2"}));
+  }
+
+  @Test
+  void testCqlParameterAnyOf() {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    pgCqlDefinition.addField("id", new PgCqlFieldUuid());
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withExact());
+    pgCqlDefinition.addField("cost", new PgCqlFieldNumber());
+    StringBuilder query = new StringBuilder();
+    UUID[] ids = new UUID[100];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = UUID.randomUUID();
+      query.append(i > 0 ? " or " : "").append("id=").append(ids[i]);
+    }
+    Tuple tuple = Tuple.tuple();
+    assertThat(pgCqlDefinition.parse(query.toString()).getWhereClause(tuple),
+        is("id = ANY($1)"));
+    assertThat(tuple.size(), is(1));
+    assertThat(tuple.getArrayOfUUIDs(0), is(ids));
+
+    tuple = Tuple.tuple();
+    assertThat(pgCqlDefinition.parse("title==a or cost=1 or id=" + ids[0] + " or title==b"
+        + " or id=" + ids[1] + " or id=" + ids[2]).getWhereClause(tuple),
+        is("(title = ANY($1) OR cost=$2::integer OR id = ANY($3))"));
+    assertThat(tuple.size(), is(3));
+    assertThat(tuple.getArrayOfStrings(0), is(new String[] {"a", "b"}));
+    assertThat(tuple.getArrayOfUUIDs(2), is(new UUID[] {ids[0], ids[1], ids[2]}));
+
+    // one value per field is not collapsed
+    tuple = Tuple.tuple();
+    assertThat(pgCqlDefinition.parse("title==a or id=" + ids[0]).getWhereClause(tuple),
+        is("(title = $1 OR id=$2)"));
+    assertThat(tuple.size(), is(2));
+
+    // grouping by AND is kept
+    assertThat(pgCqlDefinition.parse("(title==a or title==b) and (id=" + ids[0]
+        + " or id=" + ids[1] + ")").getWhereClause(),
+        is("(title IN ('a', 'b') AND id IN ('" + ids[0] + "', '" + ids[1] + "'))"));
+
+    // always true anywhere in the chain
+    tuple = Tuple.tuple();
+    assertThat(pgCqlDefinition.parse("title==a or title==b or cql.allRecords=1 or cost=2")
+        .getWhereClause(tuple), is(nullValue()));
+    assertThat(tuple.size(), is(0));
+  }
+
+  static Stream<Arguments> cqlParameterAlwaysQueries() {
+    return Stream.of(
+        Arguments.of("title==v1 or cql.allRecords=1", null, 0),
+        Arguments.of("cql.allRecords=1 or title==v1", null, 0),
+        Arguments.of("title==v1 and cql.allRecords=1", "title = $2", 1),
+        Arguments.of("cql.allRecords=1 and title==v1", "title = $2", 1),
+        Arguments.of("title==v1 not cql.allRecords=1", "FALSE", 0),
+        Arguments.of("cql.allRecords=1 not title==v1", "NOT title = $2", 1),
+        Arguments.of("title==v1 and (title==v2 or cql.allRecords=1) and title==v3",
+            "(title = $2 AND title = $3)", 2),
+        Arguments.of("title==v1 and (title==v2 not (title==v3 or cql.allRecords=1))",
+            "FALSE", 0)
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("cqlParameterAlwaysQueries")
+  void testCqlParameterAlwaysMatches(String query, String expect, int size) {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withExact());
+    PgCqlQuery pgCqlQuery = pgCqlDefinition.parse(query);
+    Tuple tuple = Tuple.of("tenant");
+    assertThat(pgCqlQuery.getWhereClause(tuple), is(expect));
+    assertThat(tuple.size(), is(size + 1));
+    assertThat(tuple.getString(0), is("tenant"));
+  }
+
+  @Test
+  void testCqlParameterCustomField() {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("custom", new PgCqlFieldBase() {
+      @Override
+      public String handleTermNode(CQLTermNode termNode) {
+        return getColumn() + " = 1";
+      }
+    });
+    PgCqlQuery pgCqlQuery = pgCqlDefinition.parse("custom=x");
+    Tuple tuple = Tuple.tuple();
+    assertThat(pgCqlQuery.getWhereClause(tuple), is("custom = 1"));
+    assertThat(tuple.size(), is(0));
+  }
+
+  @Test
+  void testCache() {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create().withCache(2);
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withExact());
+    pgCqlDefinition.addField("cost", new PgCqlFieldNumber());
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(0, 0, 0, 0, 2)));
+
+    PgCqlQuery pgCqlQuery1 = pgCqlDefinition.parse("title==v1 or cost=3 sortby title");
+    assertThat(pgCqlQuery1.getWhereClause(), is("(title = 'v1' OR cost=3)"));
+    PgCqlQuery pgCqlQuery2 = pgCqlDefinition.parse("title==v1 or cost=3 sortby title");
+    assertThat(pgCqlQuery2.getWhereClause(), is("(title = 'v1' OR cost=3)"));
+    assertThat(pgCqlQuery2.getOrderByClause(), is("title ASC"));
+    assertThat(pgCqlQuery2.getOrderByFields(), is("title"));
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(1, 1, 0, 1, 2)));
+
+    Tuple tuple1 = Tuple.tuple();
+    assertThat(pgCqlQuery1.getWhereClause(tuple1), is("(title = $1 OR cost=$2::integer)"));
+    Tuple tuple2 = Tuple.tuple();
+    assertThat(pgCqlQuery2.getWhereClause(tuple2), is("(title = $1 OR cost=$2::integer)"));
+    assertThat(tuple2.size(), is(2));
+    assertThat(tuple2.getString(0), is("v1"));
+    assertThat(tuple2.getInteger(1), is(3));
+    Tuple tuple3 = Tuple.of("x");
+    assertThat(pgCqlQuery2.getWhereClause(tuple3), is("(title = $2 OR cost=$3::integer)"));
+    assertThat(tuple3.size(), is(3));
+
+    // q2 is part of the key
+    assertThat(pgCqlDefinition.parse("title==v1 or cost=3 sortby title", "cost=4")
+        .getWhereClause(), is("((title = 'v1' OR cost=3) AND cost=4)"));
+    // least recently used is evicted
+    pgCqlDefinition.parse("cost=5");
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(1, 3, 1, 2, 2)));
+    pgCqlDefinition.parse("cost=5");
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(2, 3, 1, 2, 2)));
+
+    // errors are not cached
+    assertThrows(PgCqlException.class, () -> pgCqlDefinition.parse("cost="));
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(2, 4, 1, 2, 2)));
+    PgCqlQuery pgCqlQuery3 = pgCqlDefinition.parse("foo=1");
+    assertThrows(PgCqlException.class, pgCqlQuery3::getWhereClause);
+    assertThrows(PgCqlException.class, pgCqlDefinition.parse("foo=1")::getWhereClause);
+
+    // adding a field clears the cache
+    pgCqlDefinition.addField("foo", new PgCqlFieldNumber());
+    assertThat(pgCqlDefinition.getCacheStats().size(), is(0));
+    assertThat(pgCqlDefinition.parse("foo=1").getWhereClause(), is("foo=1"));
+
+    pgCqlDefinition.withCache(0);
+    pgCqlDefinition.parse("cost=5");
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(0, 0, 0, 0, 0)));
+  }
+
+  static PgCqlDefinition shapeDefinition() {
+    return PgCqlDefinition.create()
+        .addField("cql.allRecords", new PgCqlFieldAlwaysMatches())
+        .addField("id", new PgCqlFieldUuid())
+        .addField("cost", new PgCqlFieldNumber())
+        .addField("paid", new PgCqlFieldBoolean())
+        .addField("date", new PgCqlFieldTimestamp())
+        .addField("title", new PgCqlFieldText().withExact());
+  }
+
+  static final String UUID1 = "6b33ba46-c3fc-4a1d-8b5e-0a0f1a4d2b01";
+  static final String UUID2 = "6b33ba46-c3fc-4a1d-8b5e-0a0f1a4d2b02";
+  static final String UUID3 = "6b33ba46-c3fc-4a1d-8b5e-0a0f1a4d2b03";
+
+  /**
+   * Queries of the same shape, each with the shapes that it is a hit for.
+   */
+  static Stream<Arguments> cqlShapeQueries() {
+    return Stream.of(
+        Arguments.of(List.of("id==" + UUID1, "ID==" + UUID2)),
+        Arguments.of(List.of(
+            "id==" + UUID1 + " or id==" + UUID2 + " or id==" + UUID3 + " sortby cost",
+            "id==" + UUID3 + " or id==" + UUID1 + " or id==" + UUID2 + " sortby cost")),
+        Arguments.of(List.of(
+            "cost>=1 and cost<=5 and paid=true not id==" + UUID1,
+            "cost>=7 and cost<=9 and paid=false not id==" + UUID2)),
+        Arguments.of(List.of(
+            "date>=2024-01-01 and date<2024-02-01 or cost=1.5 or cost=\"\"",
+            "date>=2025-03-01 and date<2025-03-02 or cost=2e3 or cost=\"\"")),
+        Arguments.of(List.of(
+            "(id==" + UUID1 + " or cost=1) not (id==" + UUID2 + " or id==" + UUID3 + ")",
+            "(id==" + UUID3 + " or cost=9) not (id==" + UUID1 + " or id==" + UUID2 + ")")),
+        Arguments.of(List.of(
+            "cql.allRecords=1 and cost=1 and cost=1",
+            "cql.allRecords=1 and cost=2 and cost=2")),
+        Arguments.of(List.of(
+            "title==a or title==\"b c\" or title=\"\" or title<>a",
+            "title==x or title==\"y'z\" or title=\"\" or title<>x"))
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("cqlShapeQueries")
+  void testCacheShape(List<String> queries) {
+    PgCqlDefinition cached = shapeDefinition().withCache(10);
+    PgCqlDefinition uncached = shapeDefinition();
+    for (int i = 0; i < queries.size(); i++) {
+      String query = queries.get(i);
+      PgCqlQuery pgCqlQuery = cached.parse(query);
+      Tuple tuple = Tuple.tuple();
+      Tuple expectTuple = Tuple.tuple();
+      String expect = uncached.parse(query).getWhereClause(expectTuple);
+      assertThat(query, pgCqlQuery.getWhereClause(tuple), is(expect));
+      assertThat(query, tuple.size(), is(expectTuple.size()));
+      for (int j = 0; j < tuple.size(); j++) {
+        assertThat(query, tuple.getValue(j), is(expectTuple.getValue(j)));
+      }
+      assertThat(query, pgCqlQuery.getWhereClause(),
+          is(uncached.parse(query).getWhereClause()));
+      assertThat(query, pgCqlQuery.getOrderByClause(),
+          is(uncached.parse(query).getOrderByClause()));
+      assertThat(cached.getCacheStats(), is(new PgCqlCacheStats(i, 1, 0, 1, 10)));
+    }
+  }
+
+  @Test
+  void testCacheShapeKeys() {
+    PgCqlDefinition pgCqlDefinition = shapeDefinition().withCache(10);
+    pgCqlDefinition.parse("cost=1");
+    // type of number is part of the shape
+    pgCqlDefinition.parse("cost=3000000000");
+    pgCqlDefinition.parse("cost=1.5");
+    pgCqlDefinition.parse("cost=\"\"");
+    // which terms are the same is part of the shape
+    pgCqlDefinition.parse("cost=1 or cost=2");
+    pgCqlDefinition.parse("cost=1 or cost=1");
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(0, 6, 0, 6, 10)));
+    assertThat(pgCqlDefinition.parse("cost=5 or cost=5").getWhereClause(Tuple.tuple()),
+        is("cost=$1::integer"));
+    assertThat(pgCqlDefinition.parse("cost=5 or cost=6").getWhereClause(Tuple.tuple()),
+        is("(cost=$1::integer OR cost=$2::integer)"));
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(2, 6, 0, 6, 10)));
+
+    // text terms share the shape
+    pgCqlDefinition.parse("title==a and cost=1");
+    pgCqlDefinition.parse("title==b and cost=1");
+    pgCqlDefinition.parse("title==a and cost=1");
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(4, 7, 0, 7, 10)));
+
+    // an invalid term has no shape, so the error is not hidden by the cache
+    pgCqlDefinition.parse("id==" + UUID1);
+    PgCqlQuery pgCqlQuery = pgCqlDefinition.parse("id==x");
+    assertThrows(PgCqlException.class, () -> pgCqlQuery.getWhereClause(Tuple.tuple()));
+    PgCqlQuery pgCqlQuery2 = pgCqlDefinition.parse("title==a* and cost=1");
+    assertThrows(PgCqlException.class, () -> pgCqlQuery2.getWhereClause(Tuple.tuple()));
+    assertThat(pgCqlDefinition.getCacheStats(), is(new PgCqlCacheStats(4, 10, 0, 10, 10)));
+
+    // masking is part of the shape of a text term searched with LIKE
+    PgCqlDefinition like = PgCqlDefinition.create().withCache(10)
+        .addField("title", new PgCqlFieldText().withLikeOps());
+    assertThat(like.parse("title==a").getWhereClause(Tuple.tuple()), is("title = $1"));
+    assertThat(like.parse("title==b*").getWhereClause(Tuple.tuple()), is("title LIKE $1"));
+    Tuple tuple = Tuple.tuple();
+    assertThat(like.parse("title==c?").getWhereClause(tuple), is("title LIKE $1"));
+    assertThat(tuple.getString(0), is("c_"));
+    assertThat(like.getCacheStats(), is(new PgCqlCacheStats(1, 2, 0, 2, 10)));
+  }
+
   static Stream<Arguments> cqlSortQueries() {
     return Stream.of(
         Arguments.of("isbn=1234 sortby foo", "error: Unsupported CQL index: foo", null),
@@ -247,6 +634,9 @@ class PgCqlQueryTest {
     PgCqlQuery pgCqlQuery3 = pgCqlDefinition.parse("datestamp >= 2022-02-03 and datestamp < 2022-05-03");
     assertThat(pgCqlQuery3.getWhereClause(), is("(datestamp>='2022-02-03' AND datestamp<'2022-05-03')"));
 
+    assertThat(pgCqlDefinition.parse("datestamp >= 2022-02-03 and datestamp <= 2022-05-03")
+        .getWhereClause(), is("datestamp BETWEEN '2022-02-03' AND '2022-05-03'"));
+
     PgCqlQuery pgCqlQuery4 = pgCqlDefinition.parse("datestamp >= 2022-02-03T04:05:06");
     assertThat(pgCqlQuery4.getWhereClause(), is("datestamp>='2022-02-03T04:05:06'"));
 
@@ -0,0 +1,43 @@
+package org.folio.tlib.postgres;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.junit.jupiter.api.Test;
+
+class PgCqlRegistryTest {
+
+  @Test
+  void register() {
+    PgCqlDefinition definition = PgCqlDefinition.create()
+        .addField("title", new PgCqlFieldText().withExact())
+        .addField("cost", new PgCqlFieldNumber());
+    assertThat(PgCqlRegistry.register("registry1", definition, "title==a", "cost=1 sortby title"),
+        is(definition));
+    assertThat(PgCqlRegistry.get("registry1"), is(definition));
+    // frozen
+    assertThrows(IllegalStateException.class,
+        () -> definition.addField("isbn", new PgCqlFieldText()));
+
+    var e = assertThrows(IllegalStateException.class,
+        () -> PgCqlRegistry.register("registry1", PgCqlDefinition.create()));
+    assertThat(e.getMessage(), is("CQL definition already registered: registry1"));
+    assertThat(PgCqlRegistry.get("registry1"), is(definition));
+  }
+
+  @Test
+  void registerBadSample() {
+    PgCqlDefinition definition = PgCqlDefinition.create()
+        .addField("title", new PgCqlFieldText().withExact());
+    var e = assertThrows(PgCqlException.class,
+        () -> PgCqlRegistry.register("registry2", definition, "title all a"));
+    assertThat(e.getMessage(), is("Unsupported operator for: title all a"));
+    assertThrows(PgCqlException.class,
+        () -> PgCqlRegistry.register("registry2", definition, "isbn==1"));
+    var e2 = assertThrows(IllegalArgumentException.class, () -> PgCqlRegistry.get("registry2"));
+    assertThat(e2.getMessage(), is("No CQL definition registered: registry2"));
+  }
+}
@@ -8,6 +8,10 @@ import io.vertx.pgclient.PgBuilder;
 import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.sqlclient.Pool;
 import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -21,6 +25,7 @@ import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -64,6 +69,8 @@ class PgCqlStorageTest {
 
     pgPool.query("CREATE TABLE entries (id UUID, title TEXT, author TEXT)")
         .execute()
+        .compose(x -> pgPool.query(tsvectorTitle().getColumnStatements("entries").get(0))
+            .execute())
         .compose(x -> insertSample())
         .onComplete(context.succeedingThenComplete());
   }
@@ -79,32 +86,55 @@ class PgCqlStorageTest {
     pgPool.close().onComplete(context.succeedingThenComplete());
   }
 
-  private Future<Void> test(String query, List<Integer> expected) {
+  private static PgCqlFieldText tsvectorTitle() {
+    PgCqlFieldText field = new PgCqlFieldText().withFullText("english")
+        .withTsvectorColumn("title_tsv");
+    field.withColumn("title");
+    return field;
+  }
+
+  private static PgCqlQuery parse(String query) {
     PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
     pgCqlDefinition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
     pgCqlDefinition.addField("id", new PgCqlFieldUuid());
     pgCqlDefinition.addField("stitle", new PgCqlFieldText().withColumn("title"));
     pgCqlDefinition.addField("title", new PgCqlFieldText().withFullText("english"));
     pgCqlDefinition.addField("author", new PgCqlFieldText().withLikeOps());
-    PgCqlQuery parse = pgCqlDefinition.parse(query);
+    pgCqlDefinition.addField("ttitle", tsvectorTitle());
+    return pgCqlDefinition.parse(query);
+  }
+
+  private Future<Void> test(String query, List<Integer> expected) {
+    PgCqlQuery parse = parse(query);
     String where = parse.getWhereClause() == null ? ""
         : "WHERE " + parse.getWhereClause();
     return pgPool.query("SELECT * FROM entries " + where)
         .execute()
-        .compose(rowSet -> {
-          Set<Integer> got = new HashSet<>();
-          rowSet.forEach(row -> {
-            UUID id = row.getUUID("id");
-            Iterator<Tuple> iterator = batch.iterator();
-            int off = 0;
-            while (iterator.hasNext() && !iterator.next().getUUID(0).equals(id)) {
-              off++;
-            }
-            got.add(off);
-          });
-          assertThat(got, containsInAnyOrder(expected.toArray()));
-          return Future.succeededFuture();
-        });
+        .compose(rowSet -> verify(rowSet, expected));
+  }
+
+  private Future<Void> testParameters(String query, List<Integer> expected) {
+    PgCqlQuery parse = parse(query);
+    Tuple tuple = Tuple.tuple();
+    String where = parse.getWhereClause(tuple);
+    return pgPool.preparedQuery("SELECT * FROM entries" + (where == null ? "" : " WHERE " + where))
+        .execute(tuple)
+        .compose(rowSet -> verify(rowSet, expected));
+  }
+
+  private static Future<Void> verify(RowSet<Row> rowSet, List<Integer> expected) {
+    Set<Integer> got = new HashSet<>();
+    rowSet.forEach(row -> {
+      UUID id = row.getUUID("id");
+      Iterator<Tuple> iterator = batch.iterator();
+      int off = 0;
+      while (iterator.hasNext() && !iterator.next().getUUID(0).equals(id)) {
+        off++;
+      }
+      got.add(off);
+    });
+    assertThat(got, containsInAnyOrder(expected.toArray()));
+    return Future.succeededFuture();
   }
 
   static Stream<Arguments> cqlQueries() {
@@ -121,6 +151,9 @@ class PgCqlStorageTest {
         Arguments.of("title all \"bob the road\"", List.of(0)),
         Arguments.of("title=\"with cry\"", List.of(1)), // "with" a stop word
         Arguments.of("title=\"bob cry\"", List.of()),
+        Arguments.of("ttitle=\"Road the bob\"", List.of(0)),
+        Arguments.of("ttitle all \"bob the road\"", List.of(0)),
+        Arguments.of("ttitle=\"bob the road\"", List.of()),
         Arguments.of("author=\"\"", List.of(0, 1)),
         Arguments.of("author = Garnet Mi?ms", List.of(1))
     );
@@ -132,6 +165,12 @@ class PgCqlStorageTest {
     test(q, exp).onComplete(context.succeedingThenComplete());
   }
 
+  @ParameterizedTest
+  @MethodSource("cqlQueries")
+  void testCqlParameterQueries(String q, List<Integer> exp, Vertx vertx, VertxTestContext context) {
+    testParameters(q, exp).onComplete(context.succeedingThenComplete());
+  }
+
   private Future<Void> matchField(PgCqlFieldType pgCqlFieldType, String cql, String value, boolean expected) {
     PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
     pgCqlDefinition.addField("field", pgCqlFieldType);
@@ -180,5 +219,69 @@ class PgCqlStorageTest {
     matchField(pgCqlFieldType, query, value, expected).onComplete(context.succeedingThenComplete());
   }
 
+  private static int indexOf(UUID id) {
+    for (int i = 0; i < batch.size(); i++) {
+      if (batch.get(i).getUUID(0).equals(id)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Read one row per page with keyset pagination and collect their offsets in batch.
+   */
+  private Future<List<Integer>> keysetPages(PgCqlQuery query, String cursor, List<Integer> got) {
+    Tuple tuple = Tuple.tuple();
+    List<String> conditions = new ArrayList<>();
+    String where = query.getWhereClause(tuple);
+    if (where != null) {
+      conditions.add(where);
+    }
+    String keyset = query.getKeysetWhereClause("id", cursor, tuple);
+    if (keyset != null) {
+      conditions.add(keyset);
+    }
+    String sql = "SELECT * FROM entries"
+        + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+        + " ORDER BY " + query.getKeysetOrderByClause("id") + " LIMIT 1";
+    return pgPool.preparedQuery(sql).execute(tuple).compose(rowSet -> {
+      if (rowSet.size() == 0) {
+        return Future.succeededFuture(got);
+      }
+      Row row = rowSet.iterator().next();
+      got.add(indexOf(row.getUUID("id")));
+      return keysetPages(query, query.getCursor(row, "id"), got);
+    });
+  }
 
+  @Test
+  void testKeysetPagination(Vertx vertx, VertxTestContext context) {
+    List<Integer> byId = new ArrayList<>(List.of(0, 1, 2, 3));
+    // PostgreSQL compares UUIDs byte by byte, like their string form
+    byId.sort(Comparator.comparing(i -> batch.get(i).getUUID(0).toString()));
+    keysetPages(parse("cql.allRecords=1 sortby id"), null, new ArrayList<>())
+        .compose(got -> {
+          assertThat(got, is(byId));
+          return keysetPages(parse("author=\"\" sortby stitle/sort.descending"), null,
+              new ArrayList<>());
+        })
+        .compose(got -> {
+          assertThat(got, is(List.of(0, 1)));
+          // NULL authors sort last, in order of the tie-breaker
+          return keysetPages(parse("cql.allRecords=1 sortby author"), null, new ArrayList<>());
+        })
+        .compose(got -> {
+          assertThat(got, is(List.of(1, 0, byId.indexOf(2) < byId.indexOf(3) ? 2 : 3,
+              byId.indexOf(2) < byId.indexOf(3) ? 3 : 2)));
+          return keysetPages(parse("cql.allRecords=1 sortby author/sort.descending"), null,
+              new ArrayList<>());
+        })
+        .onComplete(context.succeeding(got -> context.verify(() -> {
+          // NULL first when descending
+          assertThat(got, is(List.of(byId.indexOf(2) < byId.indexOf(3) ? 3 : 2,
+              byId.indexOf(2) < byId.indexOf(3) ? 2 : 3, 0, 1)));
+          context.completeNow();
+        })));
+  }
 }
@@ -1,23 +1,41 @@
 package org.folio.tlib.postgres;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import io.vertx.sqlclient.PrepareOptions;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.RowStream;
 import io.vertx.sqlclient.Tuple;
 import io.vertx.sqlclient.templates.SqlTemplate;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
 import org.folio.tlib.postgres.impl.TenantPgPoolImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -91,6 +109,9 @@ class TenantPgPoolTest {
 
   @AfterEach
   void after(Vertx vertx, VertxTestContext context) {
+    TenantPgPool.setSharedPool(false);
+    TenantPgPool.setMaxPoolSizeTenant(null);
+    TenantPgPool.setMeterRegistry(null);
     TenantPgPool.closeAll().onComplete(context.succeedingThenComplete());
   }
 
@@ -169,6 +190,169 @@ class TenantPgPoolTest {
         }));
   }
 
+  /**
+   * Wait until a plan has been captured for the statement.
+   */
+  private static Future<PgQueryStats> awaitPlan(Vertx vertx, String sql) {
+    for (PgQueryStats stats : TenantPgPool.getQueryStats()) {
+      if (stats.sql().equals(sql) && stats.explains() > 0) {
+        return Future.succeededFuture(stats);
+      }
+    }
+    return vertx.timer(20).compose(x -> awaitPlan(vertx, sql));
+  }
+
+  @Test
+  void count(Vertx vertx, VertxTestContext context) {
+    PgCqlDefinition definition = PgCqlDefinition.create();
+    definition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    definition.addField("year", new PgCqlFieldNumber());
+    withPool(vertx, pool -> pool.execute(List.of(
+            "CREATE TABLE a (year int)",
+            "INSERT INTO a SELECT generate_series(1, 10000)",
+            "ANALYZE a"))
+        .compose(x -> pool.count("a", definition.parse("year > 9990"), 100))
+        .compose(count -> {
+          assertThat(count, is(new PgCqlCount(10, true)));
+          return pool.count("a", definition.parse("year > 9990"), 10);
+        })
+        .compose(count -> {
+          assertThat(count, is(new PgCqlCount(10, true)));
+          return pool.count("a", definition.parse("cql.allRecords=1"), 100);
+        })
+        .eventually(() -> pool.execute(List.of("DROP TABLE a"))))
+        .onComplete(context.succeeding(count -> context.verify(() -> {
+          assertThat(count.exact(), is(false));
+          // statistics from ANALYZE of the whole table
+          assertThat(count.count(), is(10000L));
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void missingIndexes(Vertx vertx, VertxTestContext context) {
+    PgCqlDefinition definition = PgCqlDefinition.create()
+        .addField("id", new PgCqlFieldUuid())
+        .addField("title", new PgCqlFieldText().withFullText("english"))
+        .addField("year", new PgCqlFieldNumber());
+    withPool(vertx, pool -> {
+      String table = pool.getSchema() + ".b";
+      return pool.execute(List.of(
+              "CREATE SCHEMA IF NOT EXISTS " + pool.getSchema(),
+              "CREATE TABLE " + table + " (id uuid PRIMARY KEY, title text, year int)",
+              "CREATE INDEX other_name ON " + table + " USING gin (to_tsvector('english', title))"))
+          .compose(x -> definition.getMissingIndexes(pool, "b"))
+          .compose(missing -> {
+            assertThat(missing, is(List.of("CREATE INDEX IF NOT EXISTS b_year_idx ON "
+                + table + " USING btree (year)")));
+            return pool.execute(missing);
+          })
+          .compose(x -> definition.getMissingIndexes(pool, "b"))
+          .eventually(() -> pool.execute(List.of("DROP SCHEMA " + pool.getSchema() + " CASCADE")));
+    }).onComplete(context.succeeding(missing -> context.verify(() -> {
+      assertThat(missing, is(empty()));
+      context.completeNow();
+    })));
+  }
+
+  @Test
+  void executeProfiled(Vertx vertx, VertxTestContext context) {
+    JsonObject config = vertx.getOrCreateContext().config();
+    config.put("explain_sample_rate", 1.0);
+    TenantPgPool.clearQueryStats();
+    String insert = "INSERT INTO a VALUES ($1)";
+    withPool(vertx, pool -> pool.execute(List.of("CREATE TABLE a (year int)"))
+        .compose(x -> pool.execute(insert, Tuple.of(2024)))
+        .compose(x -> awaitPlan(vertx, insert))
+        .compose(stats -> {
+          assertThat(stats.count(), is(1L));
+          assertThat(stats.rows(), is(1L));
+          assertThat(stats.lastPlan().getJsonObject(0).getJsonObject("Plan")
+              .getString("Node Type"), is("ModifyTable"));
+          // the insert was only explained, not executed again
+          return pool.execute("SELECT * FROM a", Tuple.tuple());
+        })
+        .compose(rowSet -> {
+          assertThat(rowSet.size(), is(1));
+          return awaitPlan(vertx, "SELECT * FROM a");
+        })
+        .eventually(() -> pool.execute(List.of("DROP TABLE a"))))
+        .onComplete(context.succeeding(stats -> context.verify(() -> {
+          config.remove("explain_sample_rate");
+          assertThat(stats.rows(), is(1L));
+          assertThat(stats.sharedHitBlocks() + stats.sharedReadBlocks() > 0, is(true));
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void executeNotProfiled(Vertx vertx, VertxTestContext context) {
+    TenantPgPool.clearQueryStats();
+    withPool(vertx, pool -> pool.execute("SELECT 1", Tuple.tuple()))
+        .onComplete(context.succeeding(x -> context.verify(() -> {
+          assertThat(TenantPgPool.getQueryStats(), is(empty()));
+          context.completeNow();
+        })));
+  }
+
+  /**
+   * Sum the first column of the rows; pause the stream for a while after the first row.
+   */
+  private static Future<Long> sum(Vertx vertx, RowStream<Row> stream) {
+    Promise<Long> promise = Promise.promise();
+    long[] sum = {0};
+    stream.handler(row -> {
+      if (sum[0] == 0) {
+        stream.pause();
+        vertx.setTimer(50, x -> stream.resume());
+      }
+      sum[0] += row.getInteger(0);
+    });
+    stream.endHandler(x -> promise.complete(sum[0]));
+    stream.exceptionHandler(promise::tryFail);
+    return promise.future();
+  }
+
+  @Test
+  void withRowStream(Vertx vertx, VertxTestContext context) {
+    withPool(vertx, pool -> pool.withRowStream("SELECT i FROM generate_series(1, $1) AS i",
+        Tuple.of(1000), 100, stream -> sum(vertx, stream)))
+        .onComplete(context.succeeding(sum -> {
+          assertThat(sum, is(500500L));
+          context.completeNow();
+        }));
+  }
+
+  @Test
+  void withRowStreamEmpty(Vertx vertx, VertxTestContext context) {
+    withPool(vertx, pool -> pool.withRowStream("SELECT i FROM generate_series(1, $1) AS i",
+        Tuple.of(0), 100, stream -> sum(vertx, stream)))
+        .onComplete(context.succeeding(sum -> {
+          assertThat(sum, is(0L));
+          context.completeNow();
+        }));
+  }
+
+  @Test
+  void withRowStreamBadQuery(Vertx vertx, VertxTestContext context) {
+    withPool(vertx, pool -> pool.withRowStream("SELECT i FROM no_such_table", Tuple.tuple(),
+        100, stream -> sum(vertx, stream)))
+        .onComplete(context.failing(e -> {
+          assertThat(e.getMessage(), containsString("no_such_table"));
+          context.completeNow();
+        }));
+  }
+
+  @Test
+  void withRowStreamHandlerFails(Vertx vertx, VertxTestContext context) {
+    withPool(vertx, pool -> pool.withRowStream("SELECT 1", Tuple.tuple(), 100,
+        stream -> Future.failedFuture("handler failed")))
+        .onComplete(context.failing(e -> {
+          assertThat(e.getMessage(), is("handler failed"));
+          context.completeNow();
+        }));
+  }
+
   @Test
   void applicationName(Vertx vertx, VertxTestContext context) {
     withPool(vertx, pool -> pool
@@ -224,6 +408,73 @@ class TenantPgPoolTest {
     .onComplete(context.succeedingThenComplete());
   }
 
+  @Test
+  void executeBatch(Vertx vertx, VertxTestContext context) {
+    List<String> list = List.of(
+        "CREATE TABLE a (year int)",
+        "INSERT INTO a VALUES (1), (2)",
+        "SELECT * FROM a",
+        "DROP TABLE a");
+    withPool(vertx, pool -> pool.executeBatch(list, true))
+        .onComplete(context.succeeding(results -> context.verify(() -> {
+          assertThat(results.stream().map(PgBatchResult::sql).toList(), is(list));
+          assertThat(results.stream().map(PgBatchResult::rowCount).toList(),
+              is(List.of(0, 2, 2, 0)));
+          for (PgBatchResult result : results) {
+            assertThat(result.succeeded(), is(true));
+            assertThat(result.duration().isNegative(), is(false));
+          }
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void executeBatchEmpty(Vertx vertx, VertxTestContext context) {
+    withPool(vertx, pool -> pool.executeBatch(List.of(), true))
+        .onComplete(context.succeeding(results -> context.verify(() -> {
+          assertThat(results, is(empty()));
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void executeBatchRollback(Vertx vertx, VertxTestContext context) {
+    List<String> list = List.of(
+        "CREATE TABLE a (year int)",
+        "DROP TABLOIDS a",
+        "DROP TABLE a");
+    withPool(vertx, pool -> pool.executeBatch(list, true)
+        .onComplete(context.failing(e -> context.verify(() -> {
+          assertThat(e, is(instanceOf(PgBatchException.class)));
+          assertThat(e.getMessage(), startsWith("DROP TABLOIDS a FAIL: "));
+          List<PgBatchResult> results = ((PgBatchException) e).getResults();
+          assertThat(results.stream().map(PgBatchResult::succeeded).toList(),
+              is(List.of(true, false, false)));
+          assertThat(results.get(2).cause().getMessage(), containsString("25P02"));
+        })))
+        .recover(e -> pool.executeBatch(List.of("SELECT * FROM a"), false)))  // rolled back
+        .onComplete(context.failing(e -> context.verify(() -> {
+          assertThat(e.getMessage(), containsString("42P01"));
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void executeBatchNoTransaction(Vertx vertx, VertxTestContext context) {
+    List<String> list = List.of(
+        "CREATE TABLE a (year int)",
+        "DROP TABLOIDS a",
+        "DROP TABLE a");
+    withPool(vertx, pool -> pool.executeBatch(list, false)
+        .onComplete(context.failing(e -> context.verify(() -> {
+          List<PgBatchResult> results = ((PgBatchException) e).getResults();
+          assertThat(results.stream().map(PgBatchResult::succeeded).toList(),
+              is(List.of(true, false)));
+        })))
+        .recover(e -> pool.executeBatch(List.of("DROP TABLE a"), true)))  // not rolled back
+        .onComplete(context.succeedingThenComplete());
+  }
+
   @Test
   void testGetPoolOptions(Vertx vertx, VertxTestContext context) {
     TenantPgPool.setMaxPoolSize("4");
@@ -274,6 +525,115 @@ class TenantPgPoolTest {
     pool.close().onComplete(context.succeedingThenComplete());
   }
 
+  @Test
+  void sharedPool(Vertx vertx, VertxTestContext context) {
+    TenantPgPool.setSharedPool(true);
+    TenantPgPool pool1 = TenantPgPool.pool(vertx, "diku1");
+    TenantPgPool pool2 = TenantPgPool.pool(vertx, "diku2");
+    assertThat(pool1.getPool() == pool1, is(true));
+    pool1.query("SHOW search_path").execute()
+        .map(rowSet -> rowSet.iterator().next().getString(0))
+        .onSuccess(path -> assertThat(path, is("diku1_mod_foo, public")))
+        .compose(x -> pool2.preparedQuery("SELECT current_setting($1)")
+            .execute(Tuple.of("search_path")))
+        .map(rowSet -> rowSet.iterator().next().getString(0))
+        .onSuccess(path -> assertThat(path, is("diku2_mod_foo, public")))
+        .compose(x -> pool1.execute("SHOW search_path", Tuple.tuple()))
+        .map(rowSet -> rowSet.iterator().next().getString(0))
+        .onSuccess(path -> assertThat(path, is("diku1_mod_foo, public")))
+        .compose(x -> pool2.withTransaction(conn -> conn.query("SHOW search_path").execute()))
+        .map(rowSet -> rowSet.iterator().next().getString(0))
+        .onSuccess(path -> assertThat(path, is("diku2_mod_foo, public")))
+        .compose(x -> pool2.query("SHOW search_path").execute())
+        .compose(x -> pool2.getPool().getConnection())
+        .compose(conn -> conn.query("SELECT current_setting('search_path'), current_user")
+            .execute()
+            .eventually(() -> conn.close()))
+        .map(rowSet -> rowSet.iterator().next().getString(0))
+        .onSuccess(path -> assertThat(path, is("diku2_mod_foo, public")))
+        .compose(x -> pool1.getPool().getConnection())
+        .compose(conn -> conn.query("SHOW search_path").execute()
+            .eventually(() -> conn.close()))
+        .onComplete(context.succeeding(x -> {
+          List<PgPoolStats> stats = TenantPgPool.getPoolStats();
+          assertThat(stats.size(), is(1));
+          assertThat(stats.get(0).tenants(), is(2));
+          assertThat(stats.get(0).connectionsSaved(), is(stats.get(0).maxSize()));
+          // applied for each use
+          assertThat(stats.get(0).contextSwitches(), is(7L));
+          context.completeNow();
+        }));
+  }
+
+  @Test
+  void tenantLimit(Vertx vertx, VertxTestContext context) {
+    TenantPgPool.setMaxPoolSizeTenant("1");
+    TenantPgPool pool1 = TenantPgPool.pool(vertx, "diku1");
+    TenantPgPool pool2 = TenantPgPool.pool(vertx, "diku2");
+    List<Future<RowSet<Row>>> futures = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      futures.add(pool1.query("SELECT pg_sleep(0.1)").execute());
+    }
+    futures.add(pool2.preparedQuery("SELECT pg_sleep(0.1)").execute());
+    Future.all(futures)
+        .onComplete(context.succeeding(x -> {
+          assertThat(pool1.size() <= 2, is(true)); // at most one for each tenant
+          List<PgTenantQueueStats> stats = TenantPgPool.getTenantQueueStats();
+          stats.sort(Comparator.comparing(PgTenantQueueStats::tenant));
+          assertThat(stats.size(), is(2));
+          assertThat(stats.get(0).tenant(), is("diku1"));
+          assertThat(stats.get(0).waited(), is(2L));
+          assertThat(stats.get(0).maxWaitMillis() > 100, is(true));
+          assertThat(stats.get(0).active(), is(0));
+          assertThat(stats.get(1).waited(), is(0L));
+          context.completeNow();
+        }));
+  }
+
+  @Test
+  void metrics(Vertx vertx, VertxTestContext context) {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TenantPgPool.setMeterRegistry(registry);
+    TenantPgPool pool = TenantPgPool.pool(vertx, "diku");
+    pool.query("SELECT * FROM generate_series(1, 3)").execute()
+        .compose(x -> pool.execute("SELECT 1", Tuple.tuple()))
+        .compose(x -> pool.query("SELECT * FROM nosuchtable").execute())
+        .onComplete(context.failing(e -> context.verify(() -> {
+          assertThat(registry.get("folio.pg.query").tag("tenant", "diku")
+              .tag("module", "mod_foo").tag("poolKey", "").timer().count(), is(3L));
+          assertThat(registry.get("folio.pg.query.rows").tag("tenant", "diku")
+              .summary().totalAmount(), is(4.0));
+          assertThat(registry.get("folio.pg.query.failures").tag("tenant", "diku")
+              .counter().count(), is(1.0));
+          assertThat(registry.get("folio.pg.connection.wait").tag("tenant", "diku")
+              .timer().count(), is(3L));
+          assertThat(registry.get("folio.pg.connections.active").tag("tenant", "diku")
+              .gauge().value(), is(0.0));
+          assertThat(registry.get("folio.pg.pool.size").tag("poolKey", "")
+              .gauge().value(), is(1.0));
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void poolHealth(Vertx vertx, VertxTestContext context) {
+    TenantPgPool pool = TenantPgPool.pool(vertx, "diku");
+    pool.query("SELECT 1").execute()
+        .compose(x -> {
+          assertThat(TenantPgPool.getPoolHealth().get(0).latencyMillis(), is(-1.0));
+          return TenantPgPool.probePools();
+        })
+        .onComplete(context.succeeding(x -> context.verify(() -> {
+          List<PgPoolHealth> health = TenantPgPool.getPoolHealth();
+          assertThat(health.size(), is(1));
+          assertThat(health.get(0).error(), is(nullValue()));
+          assertThat(health.get(0).latencyMillis() >= 0, is(true));
+          assertThat(health.get(0).active(), is(0));
+          assertThat(health.get(0).size(), is(1));
+          context.completeNow();
+        })));
+  }
+
   @Test
   void closeAll(Vertx vertx, VertxTestContext context) {
     TenantPgPool pool = TenantPgPool.pool(vertx, "diku");
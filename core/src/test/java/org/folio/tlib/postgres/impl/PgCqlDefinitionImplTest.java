@@ -0,0 +1,121 @@
+package org.folio.tlib.postgres.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.PgCqlIndex;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldBoolean;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
+import org.junit.jupiter.api.Test;
+
+class PgCqlDefinitionImplTest {
+
+  @Test
+  void indexStatements() {
+    PgCqlDefinition definition = PgCqlDefinition.create()
+        .addField("cql.allRecords", new PgCqlFieldAlwaysMatches())
+        .addField("id", new PgCqlFieldUuid())
+        .addField("title", new PgCqlFieldText().withFullText("english").withLikeOps())
+        .addField("isbn", new PgCqlFieldText().withExact())
+        .addField("ident", new PgCqlFieldUuid().withColumn("id"))
+        .addField("cost", new PgCqlFieldNumber())
+        .addField("paid", new PgCqlFieldBoolean());
+    assertThat(definition.getIndexStatements("s.book"), is(List.of(
+        "CREATE INDEX IF NOT EXISTS book_cost_idx ON s.book USING btree (cost)",
+        "CREATE INDEX IF NOT EXISTS book_id_idx ON s.book USING btree (id)",
+        "CREATE INDEX IF NOT EXISTS book_isbn_idx ON s.book USING btree (isbn)",
+        "CREATE INDEX IF NOT EXISTS book_to_tsvector_english_title_idx ON s.book"
+            + " USING gin (to_tsvector('english', title))",
+        "CREATE INDEX IF NOT EXISTS book_title_text_pattern_ops_idx ON s.book"
+            + " USING btree (title text_pattern_ops)")));
+  }
+
+  @Test
+  void tsvectorColumn() {
+    PgCqlDefinition definition = PgCqlDefinition.create()
+        .addField("title", new PgCqlFieldText().withFullText("english")
+            .withTsvectorColumn("title_tsv"))
+        .addField("title2", new PgCqlFieldText().withFullText("english").withColumn("title"));
+    assertThat(definition.getIndexStatements("book"), is(List.of(
+        "ALTER TABLE book ADD COLUMN IF NOT EXISTS title_tsv tsvector"
+            + " GENERATED ALWAYS AS (to_tsvector('english', title)) STORED",
+        "CREATE INDEX IF NOT EXISTS book_title_tsv_idx ON book USING gin (title_tsv)",
+        "CREATE INDEX IF NOT EXISTS book_to_tsvector_english_title_idx ON book"
+            + " USING gin (to_tsvector('english', title))")));
+
+    PgCqlDefinitionImpl impl = (PgCqlDefinitionImpl) definition;
+    assertThat(impl.getStatements("book", Set.of(new PgCqlIndex("gin", "title_tsv"))),
+        is(List.of("CREATE INDEX IF NOT EXISTS book_to_tsvector_english_title_idx ON book"
+            + " USING gin (to_tsvector('english', title))")));
+  }
+
+  @Test
+  void indexName() {
+    PgCqlIndex index = new PgCqlIndex("btree", "a".repeat(70));
+    String name = PgCqlDefinitionImpl.indexName("t", index);
+    assertThat(name.length(), is(PgCqlDefinitionImpl.MAX_IDENTIFIER_LENGTH));
+    assertThat(name.startsWith("t_aaaa"), is(true));
+  }
+
+  @Test
+  void parseIndexDef() {
+    assertThat(PgCqlDefinitionImpl.parseIndexDef(
+            "CREATE INDEX x ON s.book USING gin (to_tsvector('english'::regconfig, title))"),
+        is(new PgCqlIndex("gin", "to_tsvector('english',title)")));
+    assertThat(PgCqlDefinitionImpl.parseIndexDef(
+            "CREATE UNIQUE INDEX book_pkey ON s.book USING btree (id)"),
+        is(new PgCqlIndex("btree", "id")));
+    assertThat(PgCqlDefinitionImpl.parseIndexDef(
+            "CREATE INDEX y ON s.book USING btree (\"Title\" text_pattern_ops)"),
+        is(new PgCqlIndex("btree", "titletext_pattern_ops")));
+    assertThat(PgCqlDefinitionImpl.parseIndexDef(
+            "CREATE INDEX z ON s.book USING btree (isbn) WHERE (isbn IS NOT NULL)").expression(),
+        is("isbn)where(isbnisnotnull"));
+    assertThat(PgCqlDefinitionImpl.parseIndexDef("CREATE INDEX"), is(nullValue()));
+    assertThat(PgCqlDefinitionImpl.normalizeIndexKey("title text_pattern_ops"),
+        is("titletext_pattern_ops"));
+  }
+
+  @Test
+  void freeze() {
+    PgCqlFieldUuid id = new PgCqlFieldUuid();
+    PgCqlFieldText title = new PgCqlFieldText().withExact();
+    PgCqlDefinition definition = PgCqlDefinition.create()
+        .addField("id", id)
+        .addField("dc.Title", title)
+        .freeze();
+    assertThat(definition.getFieldType("ID"), is(id));
+    assertThat(definition.getFieldType("dc.title"), is(title));
+    assertThat(definition.getFieldType("DC.TITLE"), is(title));
+    assertThat(definition.getFieldType("title"), is(nullValue()));
+    assertThat(definition.parse("dc.title==x").getWhereClause(), is("dc.title = 'x'"));
+    assertThrows(IllegalStateException.class,
+        () -> definition.addField("isbn", new PgCqlFieldText()));
+  }
+
+  @Test
+  void fieldTable() {
+    Map<String, PgCqlFieldType> fields = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      fields.put("field" + i, new PgCqlFieldNumber());
+    }
+    PgCqlFieldTable table = new PgCqlFieldTable(fields);
+    fields.forEach((name, type) -> {
+      assertThat(table.get(name), is(type));
+      assertThat(table.get(name.toUpperCase()), is(type));
+    });
+    assertThat(table.get("field100"), is(nullValue()));
+    assertThat(new PgCqlFieldTable(Map.of()).get("x"), is(nullValue()));
+  }
+}
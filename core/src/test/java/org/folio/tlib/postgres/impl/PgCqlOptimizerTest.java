@@ -0,0 +1,113 @@
+package org.folio.tlib.postgres.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import io.vertx.sqlclient.Tuple;
+import java.util.List;
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlFieldType;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldBase;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.junit.jupiter.api.Test;
+import org.z3950.zing.cql.CQLParser;
+import org.z3950.zing.cql.CQLTermNode;
+
+class PgCqlOptimizerTest {
+
+  /**
+   * Field type that is always true for term "any", and does not support ranges.
+   */
+  static class PgCqlFieldAny extends PgCqlFieldBase implements PgCqlFieldType {
+    @Override
+    public String handleTermNode(CQLTermNode termNode) {
+      if ("any".equals(termNode.getTerm())) {
+        return null;
+      }
+      return getColumn() + handleOrderedRelation(termNode) + termNode.getTerm();
+    }
+  }
+
+  static PgCqlDefinition definition() {
+    return PgCqlDefinition.create()
+        .addField("cql.allRecords", new PgCqlFieldAlwaysMatches())
+        .addField("title", new PgCqlFieldText().withExact())
+        .addField("cost", new PgCqlFieldNumber())
+        .addField("x", new PgCqlFieldAny());
+  }
+
+  static final PgCqlDefinition DEFINITION = definition();
+
+  static PgCqlExpr optimize(String query) throws Exception {
+    return PgCqlOptimizer.optimize(new CQLParser().parse(query), DEFINITION);
+  }
+
+  @Test
+  void constants() throws Exception {
+    assertThat(PgCqlOptimizer.optimize(null, definition()), is(PgCqlExpr.Constant.TRUE));
+    assertThat(optimize("cql.allRecords=1"), is(PgCqlExpr.Constant.TRUE));
+    assertThat(optimize("cql.allRecords=1 not cql.allRecords=1"),
+        is(PgCqlExpr.Constant.FALSE));
+    assertThat(optimize("(cost=1 not cql.allRecords=1) or (cost=2 not cql.allRecords=1)"),
+        is(PgCqlExpr.Constant.FALSE));
+    assertThat(optimize("cost=1 not (cost=2 or cql.allRecords=1)"),
+        is(PgCqlExpr.Constant.FALSE));
+    assertThat(optimize("cost=1 or (cost=2 or cql.allRecords=1)"),
+        is(PgCqlExpr.Constant.TRUE));
+  }
+
+  @Test
+  void duplicates() throws Exception {
+    assertThat(optimize("Title==a or title==a"), instanceOf(PgCqlExpr.Term.class));
+    assertThat(optimize("title==a or title=a"), instanceOf(PgCqlExpr.Or.class));
+    assertThat(optimize("title==a or title==b or Title==a"),
+        is(optimize("title==a or title==b")));
+    PgCqlExpr expr = optimize("cost=1 and (cost=2 and (cost=1 and cost=3))");
+    assertThat(((PgCqlExpr.And) expr).operands().size(), is(3));
+  }
+
+  @Test
+  void not() throws Exception {
+    PgCqlExpr term = optimize("cost=1");
+    assertThat(PgCqlOptimizer.not(PgCqlOptimizer.not(term)), is(term));
+    assertThat(optimize("cost=1 not (cost=2 not cost=3)"), is(optimize(
+        "cost=1 and ((cql.allRecords=1 not cost=2) or cost=3)")));
+  }
+
+  @Test
+  void ranges() throws Exception {
+    PgCqlExpr expr = optimize("cost<=5 and cost>=1 and cost>=2");
+    List<PgCqlExpr> operands = ((PgCqlExpr.And) expr).operands();
+    PgCqlExpr.Range range = (PgCqlExpr.Range) operands.get(0);
+    assertThat(range.lower().node().getTerm(), is("1"));
+    assertThat(range.upper().node().getTerm(), is("5"));
+    assertThat(((PgCqlExpr.Term) operands.get(1)).node().getTerm(), is("2"));
+    assertThat(optimize("cost>=1 or cost<=5"), instanceOf(PgCqlExpr.Or.class));
+    assertThat(optimize("cost>=1 and title==a"), instanceOf(PgCqlExpr.And.class));
+  }
+
+  @Test
+  void sql() {
+    PgCqlDefinition definition = definition();
+    // range not supported by field type
+    assertThat(definition.parse("x>=1 and x<=2").getWhereClause(), is("(x>=1 AND x<=2)"));
+    // always true found when SQL is generated
+    assertThat(definition.parse("x=any").getWhereClause(), is(nullValue()));
+    assertThat(definition.parse("x=any and x=1").getWhereClause(), is("x=1"));
+    assertThat(definition.parse("x=any and x=any").getWhereClause(), is(nullValue()));
+    assertThat(definition.parse("x=any or x=1").getWhereClause(), is(nullValue()));
+    assertThat(definition.parse("x=1 not x=any").getWhereClause(), is("(x=1 AND FALSE)"));
+
+    Tuple tuple = Tuple.tuple();
+    assertThat(definition.parse("title==a not (title==b or title==c) not title==d")
+        .getWhereClause(tuple), is("(title = $1 AND NOT title = ANY($2))"));
+    assertThat(tuple.size(), is(2));
+    assertThat(tuple.getArrayOfStrings(1), is(new String[] {"b", "c", "d"}));
+    assertThat(definition.parse("title==a not (title==b or title==c)").getWhereClause(),
+        is("(title = 'a' AND NOT title IN ('b', 'c'))"));
+  }
+}
@@ -0,0 +1,55 @@
+package org.folio.tlib.postgres.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PgCqlQueryCacheTest {
+
+  static final PgCqlQueryCache.Entry ENTRY = new PgCqlQueryCache.Entry(null, null);
+
+  @Test
+  void evictLeastRecentlyUsedTenth() {
+    PgCqlQueryCache cache = new PgCqlQueryCache(20);
+    for (int i = 0; i < 20; i++) {
+      cache.put(i, ENTRY);
+    }
+    assertThat(cache.get(0), is(notNullValue()));
+    cache.put(20, ENTRY);
+    assertThat(cache.getStats().evictions(), is(2L));
+    assertThat(cache.getStats().size(), is(19));
+    assertThat(cache.get(0), is(notNullValue()));
+    assertThat(cache.get(1), is(nullValue()));
+    assertThat(cache.get(2), is(nullValue()));
+    assertThat(cache.get(3), is(notNullValue()));
+  }
+
+  @Test
+  void concurrent() throws InterruptedException {
+    PgCqlQueryCache cache = new PgCqlQueryCache(100);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int offset = t * 1000;
+      threads.add(Thread.ofPlatform().start(() -> {
+        for (int i = 0; i < 1000; i++) {
+          if (cache.get(offset + i % 150) == null) {
+            cache.put(offset + i % 150, ENTRY);
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // a put after other threads evicted brings the size back within bounds
+    cache.put(-1, ENTRY);
+    assertThat(cache.getStats().size(), is(lessThanOrEqualTo(100)));
+    assertThat(cache.get(-1), is(notNullValue()));
+  }
+}
@@ -2,10 +2,28 @@ package org.folio.tlib.postgres.impl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import io.vertx.sqlclient.data.Numeric;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.folio.tlib.postgres.PgCqlDefinition;
 import org.folio.tlib.postgres.PgCqlException;
+import org.folio.tlib.postgres.PgCqlQuery;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldNumber;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
 import org.junit.jupiter.api.Test;
 import org.z3950.zing.cql.CQLNode;
 
@@ -19,4 +37,154 @@ class PgCqlQueryImplTest {
     assertThat(e.getMessage(), is("Unsupported CQL construct: null"));
   }
 
+  @Test
+  void shapeTemplate() {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create().withCache(10)
+        .addField("cql.allRecords", new PgCqlFieldAlwaysMatches())
+        .addField("id", new PgCqlFieldUuid())
+        .addField("cost", new PgCqlFieldNumber());
+    UUID id1 = UUID.randomUUID();
+    UUID id2 = UUID.randomUUID();
+    for (String query : List.of("id==" + id1, "cost>=1 and cost<=2",
+        "id==" + id1 + " or id==" + id2 + " not cost=1", "cql.allRecords=1 or cost=1")) {
+      var first = (PgCqlQueryImpl) pgCqlDefinition.parse(query);
+      first.getWhereClause(Tuple.tuple());
+      PgCqlQueryImpl.Template template = first.clauses.shape.template;
+      assertThat(query, template.sources() == null, is(false));
+
+      var second = (PgCqlQueryImpl) pgCqlDefinition.parse(query.replace("1", "3"));
+      Tuple tuple = Tuple.tuple();
+      assertThat(second.getWhereClause(tuple), is(template.sql()));
+      assertThat(second.clauses.shape.template, is(template));
+      assertThat(second.extractValues(template.sources()).size(), is(tuple.size()));
+    }
+  }
+
+  static PgCqlQuery parse(String query) {
+    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
+    pgCqlDefinition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    pgCqlDefinition.addField("id", new PgCqlFieldUuid());
+    pgCqlDefinition.addField("title", new PgCqlFieldText().withExact().withColumn("b.title"));
+    pgCqlDefinition.addField("cost", new PgCqlFieldNumber());
+    return pgCqlDefinition.parse(query);
+  }
+
+  static Row row(List<String> columns, Object... values) {
+    Row row = mock(Row.class);
+    for (int i = 0; i < values.length; i++) {
+      when(row.getColumnIndex(columns.get(i))).thenReturn(i);
+      when(row.getValue(i)).thenReturn(values[i]);
+    }
+    when(row.getColumnIndex("missing")).thenReturn(-1);
+    return row;
+  }
+
+  @Test
+  void cursorRoundTrip() {
+    List<Object> values = Arrays.asList("a\"b", true, 1L, 2.5, new BigDecimal("1.10"),
+        UUID.randomUUID(), LocalDate.of(2024, 2, 29), LocalDateTime.of(2024, 1, 2, 3, 4, 5),
+        OffsetDateTime.parse("2024-01-02T03:04:05+02:00"));
+    String cursor = PgCqlCursor.encode("a", values);
+    assertThat(cursor.matches("[A-Za-z0-9_-]+"), is(true));
+    assertThat(PgCqlCursor.decode(cursor, "a", values.size()), is(values));
+    assertThat(PgCqlCursor.decode(PgCqlCursor.encode("a", List.of(3)), "a", 1),
+        is(List.of(3L)));
+    List<Object> withNull = Arrays.asList(null, 1L);
+    assertThat(PgCqlCursor.decode(PgCqlCursor.encode("a", withNull), "a", 2), is(withNull));
+
+    var e = assertThrows(PgCqlException.class, () -> PgCqlCursor.decode(cursor, "a", 2));
+    assertThat(e.getMessage(), is("Invalid cursor"));
+    e = assertThrows(PgCqlException.class,
+        () -> PgCqlCursor.decode(cursor, "b", values.size()));
+    assertThat(e.getMessage(), is("Invalid cursor"));
+    assertThrows(PgCqlException.class, () -> PgCqlCursor.decode("!", "a", 1));
+    assertThrows(PgCqlException.class, () -> PgCqlCursor.decode("WyJ4Il0", "a", 1));
+    assertThrows(PgCqlException.class, () -> PgCqlCursor.encode("a", List.of(new Object())));
+  }
+
+  @Test
+  void keysetSameDirection() {
+    PgCqlQuery query = parse("cost > 1 sortby title cost");
+    assertThat(query.getKeysetOrderByClause("id"),
+        is("b.title ASC NULLS LAST, cost ASC NULLS LAST, id ASC NULLS LAST"));
+    Tuple tuple = Tuple.tuple();
+    assertThat(query.getKeysetWhereClause("id", null, tuple), is(nullValue()));
+
+    UUID id = UUID.randomUUID();
+    Row row = row(List.of("title", "cost", "id"), "t", Numeric.create(new BigDecimal("1.5")), id);
+    String cursor = query.getCursor(row, "id");
+    tuple.addValue("tenant");
+    assertThat(query.getKeysetWhereClause("id", cursor, tuple),
+        is("((b.title, cost, id) > ($2, $3, $4) OR b.title IS NULL"
+            + " OR (b.title = $2 AND cost IS NULL))"));
+    assertThat(tuple.getValue(1), is("t"));
+    assertThat(tuple.getValue(2), is(new BigDecimal("1.5")));
+    assertThat(tuple.getValue(3), is(id));
+
+    query = parse("cql.allRecords=1 sortby id/sort.descending");
+    assertThat(query.getKeysetOrderByClause("id"), is("id DESC NULLS FIRST"));
+    cursor = query.getCursor(row, "id");
+    assertThat(query.getKeysetWhereClause("id", cursor, Tuple.tuple()), is("(id) < ($1)"));
+
+    query = parse("cql.allRecords=1");
+    assertThat(query.getKeysetOrderByClause("id"), is("id ASC NULLS LAST"));
+    cursor = query.getCursor(row, "id");
+    assertThat(query.getKeysetWhereClause("id", cursor, Tuple.tuple()), is("(id) > ($1)"));
+  }
+
+  @Test
+  void keysetMixedDirection() {
+    PgCqlQuery query = parse("cost > 1 sortby title/sort.descending cost");
+    assertThat(query.getKeysetOrderByClause("id"),
+        is("b.title DESC NULLS FIRST, cost ASC NULLS LAST, id ASC NULLS LAST"));
+    Row row = row(List.of("title", "cost", "id"), "t", 3, UUID.randomUUID());
+    String cursor = query.getCursor(row, "id");
+    Tuple tuple = Tuple.tuple();
+    assertThat(query.getKeysetWhereClause("id", cursor, tuple),
+        is("(b.title < $1 OR (b.title = $1 AND ((cost > $2 OR cost IS NULL)"
+            + " OR (cost = $2 AND id > $3))))"));
+    assertThat(tuple.size(), is(3));
+
+    // cursor of another sort
+    var e = assertThrows(PgCqlException.class,
+        () -> parse("cql.allRecords=1").getKeysetWhereClause("id", cursor, Tuple.tuple()));
+    assertThat(e.getMessage(), is("Invalid cursor"));
+    // another sort with as many keys
+    e = assertThrows(PgCqlException.class,
+        () -> parse("cost > 1 sortby title cost/sort.descending")
+            .getKeysetWhereClause("id", cursor, Tuple.tuple()));
+    assertThat(e.getMessage(), is("Invalid cursor"));
+  }
+
+  @Test
+  void keysetNull() {
+    PgCqlQuery query = parse("cql.allRecords=1 sortby title cost");
+    UUID id = UUID.randomUUID();
+    String cursor = query.getCursor(row(List.of("title", "cost", "id"), null, 2, id), "id");
+    Tuple tuple = Tuple.tuple();
+    // NULL sorts last: only rows with NULL title come after
+    assertThat(query.getKeysetWhereClause("id", cursor, tuple),
+        is("(b.title IS NULL AND ((cost > $1 OR cost IS NULL) OR (cost = $1 AND id > $2)))"));
+    assertThat(tuple.size(), is(2));
+
+    cursor = query.getCursor(row(List.of("title", "cost", "id"), null, null, id), "id");
+    assertThat(query.getKeysetWhereClause("id", cursor, Tuple.tuple()),
+        is("(b.title IS NULL AND (cost IS NULL AND id > $1))"));
+
+    query = parse("cql.allRecords=1 sortby title/sort.descending");
+    cursor = query.getCursor(row(List.of("title", "id"), null, id), "id");
+    assertThat(query.getKeysetWhereClause("id", cursor, Tuple.tuple()),
+        is("(b.title IS NOT NULL OR (b.title IS NULL AND id < $1))"));
+  }
+
+  @Test
+  void cursorBadRow() {
+    PgCqlQuery query = parse("cql.allRecords=1 sortby title");
+    Row row = row(List.of("title", "id"), "t", null);
+    var e = assertThrows(PgCqlException.class, () -> query.getCursor(row, "id"));
+    assertThat(e.getMessage(), is("Tie-breaker is null: id"));
+    Row row2 = row(List.of("title", "id"), "t", UUID.randomUUID());
+    e = assertThrows(PgCqlException.class, () -> query.getCursor(row2, "missing"));
+    assertThat(e.getMessage(), is("Sort column not in row: missing"));
+  }
 }
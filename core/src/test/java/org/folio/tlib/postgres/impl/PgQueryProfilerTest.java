@@ -0,0 +1,163 @@
+package org.folio.tlib.postgres.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.List;
+import org.folio.tlib.postgres.PgQueryStats;
+import org.junit.jupiter.api.Test;
+
+class PgQueryProfilerTest {
+
+  static JsonArray plan(long hit, long read) {
+    return new JsonArray().add(new JsonObject()
+        .put("Plan", new JsonObject()
+            .put("Node Type", "Seq Scan")
+            .put("Shared Hit Blocks", hit)
+            .put("Shared Read Blocks", read))
+        .put("Execution Time", 0.1));
+  }
+
+  @Test
+  void percentile() {
+    assertThat(PgQueryProfiler.percentile(new long[0], 0.5), is(0L));
+    assertThat(PgQueryProfiler.percentile(new long[] {7}, 0.5), is(7L));
+    assertThat(PgQueryProfiler.percentile(new long[] {7}, 0.99), is(7L));
+    long[] sorted = new long[100];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = i + 1L;
+    }
+    assertThat(PgQueryProfiler.percentile(sorted, 0.5), is(50L));
+    assertThat(PgQueryProfiler.percentile(sorted, 0.99), is(99L));
+    assertThat(PgQueryProfiler.percentile(sorted, 1.0), is(100L));
+  }
+
+  @Test
+  void record() {
+    PgQueryProfiler profiler = new PgQueryProfiler();
+    assertThat(profiler.getStats(), is(empty()));
+    for (int i = 1; i <= 100; i++) {
+      profiler.record("SELECT a", i * 1_000_000L, 1);
+    }
+    profiler.record("SELECT b", 500_000_000L, 3);
+    profiler.recordPlan("SELECT b", plan(10, 2));
+    profiler.recordPlan("SELECT b", plan(5, 0));
+    profiler.recordPlan("SELECT c", plan(5, 0)); // not recorded: never executed
+
+    List<PgQueryStats> stats = profiler.getStats();
+    assertThat(stats, hasSize(2));
+    PgQueryStats slow = stats.get(0);
+    assertThat(slow.sql(), is("SELECT b"));
+    assertThat(slow.count(), is(1L));
+    assertThat(slow.rows(), is(3L));
+    assertThat(slow.p50Millis(), is(500.0));
+    assertThat(slow.explains(), is(2L));
+    assertThat(slow.sharedHitBlocks(), is(15L));
+    assertThat(slow.sharedReadBlocks(), is(2L));
+    assertThat(slow.lastPlan(), is(plan(5, 0)));
+    assertThat(slow.toJson().getLong("sharedHitBlocks"), is(15L));
+
+    PgQueryStats fast = stats.get(1);
+    assertThat(fast.sql(), is("SELECT a"));
+    assertThat(fast.count(), is(100L));
+    assertThat(fast.rows(), is(100L));
+    assertThat(fast.p50Millis(), is(50.0));
+    assertThat(fast.p99Millis(), is(99.0));
+    assertThat(fast.maxMillis(), is(100.0));
+    assertThat(fast.explains(), is(0L));
+    assertThat(fast.lastPlan(), is(nullValue()));
+    assertThat(fast.toJson().getValue("lastPlan"), is(nullValue()));
+
+    profiler.clear();
+    assertThat(profiler.getStats(), is(empty()));
+  }
+
+  @Test
+  void recentSamples() {
+    PgQueryProfiler profiler = new PgQueryProfiler();
+    for (int i = 0; i < PgQueryProfiler.MAX_SAMPLES; i++) {
+      profiler.record("SELECT 1", 100_000_000L, 0);
+    }
+    for (int i = 0; i < PgQueryProfiler.MAX_SAMPLES; i++) {
+      profiler.record("SELECT 1", 1_000_000L, 0);
+    }
+    PgQueryStats stats = profiler.getStats().get(0);
+    assertThat(stats.count(), is(2L * PgQueryProfiler.MAX_SAMPLES));
+    assertThat(stats.p99Millis(), is(1.0));
+    assertThat(stats.maxMillis(), is(100.0));
+  }
+
+  @Test
+  void maxQueries() {
+    PgQueryProfiler profiler = new PgQueryProfiler();
+    for (int i = 0; i < PgQueryProfiler.MAX_QUERIES + 10; i++) {
+      profiler.record("SELECT c" + i, 1, 1);
+    }
+    profiler.record("SELECT c0", 1, 1);
+    List<PgQueryStats> stats = profiler.getStats();
+    assertThat(stats, hasSize(PgQueryProfiler.MAX_QUERIES + 1));
+    assertThat(stats.stream().mapToLong(PgQueryStats::count).sum(),
+        is(PgQueryProfiler.MAX_QUERIES + 11L));
+    assertThat(stats.stream().filter(x -> x.sql().equals(PgQueryProfiler.OTHER))
+        .findFirst().orElseThrow().count(), is(10L));
+  }
+
+  @Test
+  void shape() {
+    assertThat(PgQueryProfiler.shape("SELECT * FROM t1 WHERE id = 'a' AND n > 5"),
+        is("SELECT * FROM t1 WHERE id = '?' AND n > ?"));
+    assertThat(PgQueryProfiler.shape("SELECT * FROM t WHERE id IN ('a', 'b','c') AND n = $1"),
+        is("SELECT * FROM t WHERE id IN ('?', ...) AND n = $1"));
+    assertThat(PgQueryProfiler.shape("SELECT * FROM t WHERE n IN (1,2)"),
+        is(PgQueryProfiler.shape("SELECT * FROM t WHERE n IN (3, 4, 5)")));
+
+    PgQueryProfiler profiler = new PgQueryProfiler();
+    profiler.record("SELECT * FROM t WHERE id = 'a'", 1, 1);
+    profiler.record("SELECT * FROM t WHERE id = 'b'", 1, 1);
+    profiler.recordPlan("SELECT * FROM t WHERE id = 'c'", plan(1, 0));
+    List<PgQueryStats> stats = profiler.getStats();
+    assertThat(stats, hasSize(1));
+    assertThat(stats.get(0).sql(), is("SELECT * FROM t WHERE id = '?'"));
+    assertThat(stats.get(0).count(), is(2L));
+    assertThat(stats.get(0).explains(), is(1L));
+  }
+
+  @Test
+  void redact() {
+    assertThat(PgQueryProfiler.redactString("((title)::text = 'a''b c'::text)"),
+        is("((title)::text = '?'::text)"));
+    assertThat(PgQueryProfiler.redactString("((cost > 5) AND (cost < 1.5e3) AND (a1 = $1))"),
+        is("((cost > ?) AND (cost < ?) AND (a1 = $1))"));
+    assertThat(PgQueryProfiler.redactString("t.id2"), is("t.id2"));
+
+    PgQueryProfiler profiler = new PgQueryProfiler();
+    profiler.record("SELECT 1", 1, 1);
+    JsonArray plan = plan(1, 0);
+    plan.getJsonObject(0).getJsonObject("Plan")
+        .put("Filter", "(name = 'secret'::text)")
+        .put("Plans", new JsonArray().add(new JsonObject().put("Index Cond", "(id = 42)")));
+    profiler.recordPlan("SELECT 1", plan);
+    JsonObject top = profiler.getStats().get(0).lastPlan().getJsonObject(0).getJsonObject("Plan");
+    assertThat(top.getString("Filter"), is("(name = '?'::text)"));
+    assertThat(top.getJsonArray("Plans").getJsonObject(0).getString("Index Cond"),
+        is("(id = ?)"));
+    assertThat(top.getString("Node Type"), is("Seq Scan"));
+    assertThat(top.getLong("Shared Hit Blocks"), is(1L));
+  }
+
+  @Test
+  void explainSlots() {
+    PgQueryProfiler profiler = new PgQueryProfiler();
+    for (int i = 0; i < PgQueryProfiler.MAX_EXPLAINS_RUNNING; i++) {
+      assertThat(profiler.tryStartExplain(), is(true));
+    }
+    assertThat(profiler.tryStartExplain(), is(false));
+    profiler.endExplain();
+    assertThat(profiler.tryStartExplain(), is(true));
+  }
+}
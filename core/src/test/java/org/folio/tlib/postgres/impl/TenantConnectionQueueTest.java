@@ -0,0 +1,120 @@
+package org.folio.tlib.postgres.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import org.folio.tlib.postgres.PgTenantQueueStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith({VertxExtension.class})
+class TenantConnectionQueueTest {
+
+  static PgTenantQueueStats stats(TenantConnectionQueue queue, String tenant) {
+    return queue.getStats().stream()
+        .filter(s -> s.tenant().equals(tenant))
+        .findFirst().orElseThrow();
+  }
+
+  @Test
+  void tenantLimit() {
+    TenantConnectionQueue queue = new TenantConnectionQueue("pool", 10);
+    assertThat(queue.acquire("a", 2, 1).succeeded(), is(true));
+    assertThat(queue.acquire("a", 2, 1).succeeded(), is(true));
+    Future<Void> third = queue.acquire("a", 2, 1);
+    assertThat(third.isComplete(), is(false));
+    assertThat(queue.acquire("b", 2, 1).succeeded(), is(true));
+    assertThat(stats(queue, "a").active(), is(2));
+    assertThat(stats(queue, "a").queued(), is(1));
+
+    queue.release("b");
+    assertThat(third.isComplete(), is(false));
+    queue.release("a");
+    assertThat(third.succeeded(), is(true));
+    PgTenantQueueStats a = stats(queue, "a");
+    assertThat(a.active(), is(2));
+    assertThat(a.queued(), is(0));
+    assertThat(a.waited(), is(1L));
+    assertThat(a.toJson().getString("pool"), is("pool"));
+  }
+
+  @Test
+  void fair() {
+    TenantConnectionQueue queue = new TenantConnectionQueue("pool", 2);
+    // noisy tenant takes the whole pool and has more waiting
+    assertThat(queue.acquire("noisy", 5, 1).succeeded(), is(true));
+    assertThat(queue.acquire("noisy", 5, 1).succeeded(), is(true));
+    Future<Void> noisy3 = queue.acquire("noisy", 5, 1);
+    Future<Void> quiet1 = queue.acquire("quiet", 5, 1);
+    Future<Void> quiet2 = queue.acquire("quiet", 5, 1);
+
+    // quiet has fewer connections, so it is served first even if it came later
+    queue.release("noisy");
+    assertThat(quiet1.succeeded(), is(true));
+    assertThat(noisy3.isComplete(), is(false));
+    // now noisy has fewer
+    queue.release("noisy");
+    assertThat(noisy3.succeeded(), is(true));
+    assertThat(quiet2.isComplete(), is(false));
+    queue.release("noisy");
+    assertThat(quiet2.succeeded(), is(true));
+  }
+
+  @Test
+  void weighted() {
+    TenantConnectionQueue queue = new TenantConnectionQueue("pool", 3);
+    assertThat(queue.acquire("heavy", 5, 2).succeeded(), is(true));
+    assertThat(queue.acquire("light", 5, 1).succeeded(), is(true));
+    assertThat(queue.acquire("light", 5, 1).succeeded(), is(true));
+    Future<Void> light = queue.acquire("light", 5, 1);
+    Future<Void> heavy = queue.acquire("heavy", 5, 2);
+    // heavy has 1 connection per weight 2; light has 1 per weight 1
+    queue.release("light");
+    assertThat(heavy.succeeded(), is(true));
+    assertThat(light.isComplete(), is(false));
+    queue.release("heavy");
+    assertThat(light.succeeded(), is(true));
+
+    List<PgTenantQueueStats> stats = queue.getStats();
+    stats.sort(Comparator.comparing(PgTenantQueueStats::tenant));
+    assertThat(stats.get(0).tenant(), is("heavy"));
+    assertThat(stats.get(0).weight(), is(2));
+    assertThat(stats.get(0).active(), is(1));
+    assertThat(stats.get(1).active(), is(2));
+  }
+
+  @Test
+  void timeout(Vertx vertx, VertxTestContext context) {
+    TenantConnectionQueue queue = new TenantConnectionQueue("pool", 10, 50);
+    vertx.runOnContext(x -> {
+      // nested acquire at the limit, as a pool query inside withTransaction
+      queue.acquire("a", 1, 1)
+          .compose(y -> queue.acquire("a", 1, 1))
+          .onComplete(context.failing(e -> context.verify(() -> {
+            assertThat(e instanceof TimeoutException, is(true));
+            PgTenantQueueStats a = stats(queue, "a");
+            assertThat(a.queued(), is(0));
+            assertThat(a.timedOut(), is(1L));
+            queue.release("a");
+            assertThat(stats(queue, "a").active(), is(0));
+            // granted before the timeout
+            Future<Void> first = queue.acquire("a", 1, 1);
+            Future<Void> second = queue.acquire("a", 1, 1);
+            queue.release("a");
+            vertx.setTimer(100, z -> context.verify(() -> {
+              assertThat(first.succeeded(), is(true));
+              assertThat(second.succeeded(), is(true));
+              assertThat(stats(queue, "a").timedOut(), is(1L));
+              context.completeNow();
+            }));
+          })));
+    });
+  }
+}
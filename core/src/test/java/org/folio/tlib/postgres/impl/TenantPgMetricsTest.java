@@ -0,0 +1,54 @@
+package org.folio.tlib.postgres.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import org.junit.jupiter.api.Test;
+
+class TenantPgMetricsTest {
+
+  @Test
+  void record() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TenantPgMetrics metrics = new TenantPgMetrics(registry, "diku", "mod_a", "key");
+    metrics.record(() -> Future.succeededFuture("x"));
+    metrics.record(() -> Future.failedFuture("y"));
+    assertThat(registry.get(TenantPgMetrics.QUERY).tag("tenant", "diku")
+        .tag("module", "mod_a").tag("poolKey", "key").timer().count(), is(2L));
+    assertThat(registry.get(TenantPgMetrics.QUERY_FAILURES).tag("tenant", "diku")
+        .counter().count(), is(1.0));
+    assertThat(registry.get(TenantPgMetrics.QUERY_ROWS).tag("tenant", "diku")
+        .summary().count(), is(0L));
+  }
+
+  @Test
+  void connections() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TenantPgMetrics metrics = new TenantPgMetrics(registry, "diku", "mod_a", "");
+    metrics.acquired(2_000_000L);
+    metrics.acquired(0L);
+    metrics.released();
+    assertThat(registry.get(TenantPgMetrics.CONNECTIONS_ACTIVE).tag("tenant", "diku")
+        .gauge().value(), is(1.0));
+    assertThat(registry.get(TenantPgMetrics.CONNECTION_WAIT).tag("tenant", "diku")
+        .timer().count(), is(2L));
+  }
+
+  @Test
+  void connectionsSameTags() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TenantPgMetrics metrics1 = new TenantPgMetrics(registry, "diku", "mod_a", "");
+    TenantPgMetrics metrics2 = new TenantPgMetrics(registry, "diku", "mod_a", "");
+    metrics1.acquired(0L);
+    metrics2.acquired(0L);
+    assertThat(registry.get(TenantPgMetrics.CONNECTIONS_ACTIVE).tag("tenant", "diku")
+        .gauge().value(), is(2.0));
+    metrics1.released();
+    metrics2.released();
+    assertThat(registry.get(TenantPgMetrics.CONNECTIONS_ACTIVE).tag("tenant", "diku")
+        .gauge().value(), is(0.0));
+  }
+}
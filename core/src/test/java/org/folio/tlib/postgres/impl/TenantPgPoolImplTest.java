@@ -1,11 +1,27 @@
 package org.folio.tlib.postgres.impl;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.Pool;
 import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Query;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlConnection;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -28,6 +44,11 @@ class TenantPgPoolImplTest {
     TenantPgPoolImpl.maxLifetime = null;
     TenantPgPoolImpl.serverPem = null;
     TenantPgPoolImpl.connectionReleaseDelay = null;
+    TenantPgPoolImpl.sharedUser = null;
+    TenantPgPoolImpl.sharedPassword = null;
+    TenantPgPoolImpl.setSharedPool(false);
+    TenantPgPoolImpl.maxPoolSizeTenant = null;
+    TenantPgPoolImpl.tenantWeights = null;
     TenantPgPoolImpl.setModule("mod-a");
   }
 
@@ -107,6 +128,149 @@ class TenantPgPoolImplTest {
     context.completeNow();
   }
 
+  @Test
+  void testPoolSharedMode(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl.user = "{tenant}_user";
+    TenantPgPoolImpl.password = "tenant_pw";
+    TenantPgPoolImpl pool = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "");
+    Assertions.assertEquals("diku1_user", pool.connectOptions.getUser());
+    Assertions.assertNull(pool.contextSql);
+
+    TenantPgPoolImpl.setSharedPool(true);
+    Assertions.assertThrows(IllegalStateException.class,
+        () -> TenantPgPoolImpl.tenantPgPool(vertx, "diku1", ""));
+
+    TenantPgPoolImpl.sharedUser = "shared_user";
+    TenantPgPoolImpl.sharedPassword = "shared_pw";
+    TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "");
+    TenantPgPoolImpl pool2 = TenantPgPoolImpl.tenantPgPool(vertx, "diku2", "");
+    Assertions.assertEquals(pool1.pgPool, pool2.pgPool);
+    Assertions.assertEquals("shared_user", pool1.connectOptions.getUser());
+    Assertions.assertEquals("shared_pw", pool1.connectOptions.getPassword());
+    Assertions.assertEquals("SELECT set_config('search_path', 'diku1_mod_a, public', false),"
+        + " set_config('role', 'diku1_user', false)", pool1.contextSql);
+    Assertions.assertEquals("SELECT set_config('search_path', 'diku1_mod_a, public', true),"
+        + " set_config('role', 'diku1_user', true)", pool1.localContextSql);
+    Assertions.assertEquals("diku1_mod_a", pool1.getSchema());
+    Assertions.assertSame(pool1, pool1.getPool());
+
+    TenantPgPoolImpl.user = "user_val";
+    TenantPgPoolImpl.setSharedPool(true);
+    TenantPgPoolImpl pool3 = TenantPgPoolImpl.tenantPgPool(vertx, "diku3", "");
+    Assertions.assertEquals("SELECT set_config('search_path', 'diku3_mod_a, public', false)",
+        pool3.contextSql);
+
+    var stats = TenantPgPoolImpl.getPoolStats().stream()
+        .filter(s -> "shared_user".equals(s.user()))
+        .findFirst().orElseThrow();
+    Assertions.assertEquals(3, stats.tenants());
+    Assertions.assertEquals(2 * stats.maxSize(), stats.connectionsSaved());
+    Assertions.assertEquals(0, stats.contextSwitches());
+    context.completeNow();
+  }
+
+  @SuppressWarnings("unchecked")
+  static Query<RowSet<Row>> mockQuery(Future<RowSet<Row>> result) {
+    Query<RowSet<Row>> query = mock(Query.class);
+    when(query.execute()).thenReturn(result);
+    return query;
+  }
+
+  @Test
+  void testSharedQueryPipelined(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl.sharedUser = "shared_user";
+    TenantPgPoolImpl.setSharedPool(true);
+    Pool pgPool = mock(Pool.class);
+    SqlConnection conn = mock(SqlConnection.class);
+    when(pgPool.withConnection(any())).thenAnswer(invocation ->
+        invocation.<Function<SqlConnection, Future<?>>>getArgument(0).apply(conn));
+    when(pgPool.close()).thenReturn(Future.succeededFuture());
+    var key = TenantPgPoolImpl.createSettings("diku", "").connectKey;
+    TenantPgPoolImpl.pgPoolMap.put(key, new TenantPgPoolImpl.PoolRef(key, pgPool));
+    TenantPgPoolImpl pool = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    Assertions.assertSame(pgPool, pool.pgPool);
+
+    Promise<RowSet<Row>> begin = Promise.promise();
+    RowSet<Row> rowSet = mock(RowSet.class);
+    Query<RowSet<Row>> select = mockQuery(Future.succeededFuture(rowSet));
+    Query<RowSet<Row>> commit = mockQuery(Future.succeededFuture());
+    Query<RowSet<Row>> context1 = mockQuery(begin.future());
+    Query<RowSet<Row>> context2 = mockQuery(Future.failedFuture("no role"));
+    when(conn.query("BEGIN; " + pool.localContextSql)).thenReturn(context1, context2);
+    when(conn.query("SELECT 1")).thenReturn(select);
+    when(conn.query("COMMIT")).thenReturn(commit);
+
+    Future<RowSet<Row>> result = pool.query("SELECT 1").execute();
+    // statement and commit are sent without waiting for the context
+    verify(select).execute();
+    verify(commit).execute();
+    Assertions.assertFalse(result.isComplete());
+    begin.complete();
+    Assertions.assertSame(rowSet, result.result());
+
+    pool.query("SELECT 1").execute()
+        .onComplete(context.failing(e -> context.verify(() -> {
+          Assertions.assertEquals("no role", e.getMessage());
+          Assertions.assertEquals(2, pool.poolRef.contextSwitches.get());
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void testPoolGauges(Vertx vertx, VertxTestContext context) {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    TenantPgPoolImpl.setMeterRegistry(registry);
+    try {
+      TenantPgPoolImpl.user = "{tenant}_user";
+      TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "");
+      TenantPgPoolImpl pool2 = TenantPgPoolImpl.tenantPgPool(vertx, "diku2", "");
+      Assertions.assertEquals(0.0, registry.get(TenantPgMetrics.POOL_SIZE)
+          .tag("user", "diku1_user").gauge().value());
+      Assertions.assertEquals(2, registry.find(TenantPgMetrics.POOL_SIZE).gauges().size());
+      pool1.close()
+          .onComplete(context.succeeding(x -> context.verify(() -> {
+            Assertions.assertNull(registry.find(TenantPgMetrics.POOL_SIZE)
+                .tag("user", "diku1_user").gauge());
+            Assertions.assertNotNull(registry.find(TenantPgMetrics.POOL_IDLE)
+                .tag("user", "diku2_user").gauge());
+            Assertions.assertFalse(pool2.closed.get());
+            context.completeNow();
+          })));
+    } finally {
+      TenantPgPoolImpl.setMeterRegistry(null);
+    }
+  }
+
+  @Test
+  void testTenantWeight() {
+    Assertions.assertEquals(1, TenantPgPoolImpl.tenantWeight(null, "diku"));
+    Assertions.assertEquals(3, TenantPgPoolImpl.tenantWeight("a:2, diku : 3", "diku"));
+    Assertions.assertEquals(1, TenantPgPoolImpl.tenantWeight("a:2", "diku"));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> TenantPgPoolImpl.tenantWeight("diku", "diku"));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> TenantPgPoolImpl.tenantWeight("diku:0", "diku"));
+    Assertions.assertThrows(NumberFormatException.class,
+        () -> TenantPgPoolImpl.tenantWeight("diku:x", "diku"));
+  }
+
+  @Test
+  void testTenantLimit(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl pool = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "");
+    Assertions.assertNull(pool.connectionQueue);
+    TenantPgPoolImpl.setMaxPoolSizeTenant("2");
+    TenantPgPoolImpl.setTenantWeights("diku1:3");
+    TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "");
+    TenantPgPoolImpl pool2 = TenantPgPoolImpl.tenantPgPool(vertx, "diku2", "");
+    Assertions.assertEquals(2, pool1.tenantLimit);
+    Assertions.assertEquals(3, pool1.weight);
+    Assertions.assertEquals(1, pool2.weight);
+    Assertions.assertNotNull(pool1.connectionQueue);
+    Assertions.assertSame(pool1.connectionQueue, pool2.connectionQueue);
+    Assertions.assertEquals(0, TenantPgPoolImpl.getTenantQueueStats().size());
+    context.completeNow();
+  }
+
   @Test
   void testPoolSplit(Vertx vertx, VertxTestContext context) {
     TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "diku1");
@@ -120,6 +284,124 @@ class TenantPgPoolImplTest {
     context.completeNow();
   }
 
+  @Test
+  void testPoolRefCount(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "");
+    TenantPgPoolImpl pool2 = TenantPgPoolImpl.tenantPgPool(vertx, "diku2", "");
+    Assertions.assertSame(pool1.poolRef, pool2.poolRef);
+    Assertions.assertEquals(2, pool1.poolRef.refs.get());
+    pool1.close()
+        .compose(x -> pool1.close())
+        .onComplete(context.succeeding(x -> {
+          Assertions.assertEquals(1, pool2.poolRef.refs.get());
+          Assertions.assertSame(pool2.poolRef, TenantPgPoolImpl.pgPoolMap.get(pool2.poolRef.key));
+        }))
+        .compose(x -> pool2.close())
+        .onComplete(context.succeeding(x -> {
+          Assertions.assertEquals(0, pool2.poolRef.refs.get());
+          Assertions.assertTrue(TenantPgPoolImpl.pgPoolMap.isEmpty());
+          TenantPgPoolImpl pool3 = TenantPgPoolImpl.tenantPgPool(vertx, "diku1", "");
+          Assertions.assertNotSame(pool2.pgPool, pool3.pgPool);
+          Assertions.assertEquals(1, pool3.poolRef.refs.get());
+          context.completeNow();
+        }));
+  }
+
+  @Test
+  void testPoolRefDead() {
+    var key = new TenantPgPoolImpl.ConnectKey(new PgConnectOptions());
+    var dead = new TenantPgPoolImpl.PoolRef(key, null);
+    Assertions.assertTrue(dead.release());
+    Assertions.assertFalse(dead.release());
+    Assertions.assertFalse(dead.tryAcquire());
+    Assertions.assertFalse(dead.kill());
+    TenantPgPoolImpl.pgPoolMap.put(key, dead);
+    var ref = TenantPgPoolImpl.acquire(key, () -> null);
+    Assertions.assertNotSame(dead, ref);
+    Assertions.assertSame(ref, TenantPgPoolImpl.pgPoolMap.get(key));
+    Assertions.assertSame(ref, TenantPgPoolImpl.acquire(key, Assertions::fail));
+    Assertions.assertEquals(2, ref.refs.get());
+    Assertions.assertTrue(ref.kill());
+    TenantPgPoolImpl.pgPoolMap.clear();
+  }
+
+  @Test
+  void testCloseAllReleased(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl pool = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    TenantPgPoolImpl.closeAll()
+        .compose(x -> {
+          Assertions.assertTrue(TenantPgPoolImpl.pgPoolMap.isEmpty());
+          return pool.close();
+        })
+        .onComplete(context.succeedingThenComplete());
+  }
+
+  @Test
+  void testSettingsCached(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    TenantPgPoolImpl pool2 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    Assertions.assertNotSame(pool1, pool2);
+    Assertions.assertSame(pool1.poolOptions, pool2.poolOptions);
+    Assertions.assertSame(pool1.poolRef, pool2.poolRef);
+    Assertions.assertEquals(2, pool1.poolRef.refs.get());
+    TenantPgPoolImpl pool3 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "key");
+    Assertions.assertNotSame(pool1.poolOptions, pool3.poolOptions);
+
+    TenantPgPoolImpl.setMaxPoolSize("7");
+    TenantPgPoolImpl pool4 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    Assertions.assertEquals(7, pool4.poolOptions.getMaxSize());
+    Assertions.assertSame(pool1.pgPool, pool4.pgPool); // same connect options
+    Assertions.assertEquals(3, pool1.poolRef.refs.get());
+    TenantPgPoolImpl.maxPoolSize = null;
+
+    pool1.close()
+        .compose(x -> pool2.close())
+        .compose(x -> pool4.close())
+        .onComplete(context.succeeding(x -> {
+          // settings are kept but pool was closed; a new pool is created
+          TenantPgPoolImpl pool5 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "key");
+          Assertions.assertSame(pool3.pgPool, pool5.pgPool);
+          TenantPgPoolImpl pool6 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+          Assertions.assertNotSame(pool1.pgPool, pool6.pgPool);
+          Assertions.assertEquals(1, pool6.poolRef.refs.get());
+          context.completeNow();
+        }));
+  }
+
+  @Test
+  void testPoolPerCall(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    TenantPgPoolImpl pool2 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    pool1.close()
+        .compose(x -> pool1.close())
+        .onComplete(context.succeeding(x -> context.verify(() -> {
+          // closing one does not affect the other
+          Assertions.assertTrue(pool1.closed.get());
+          Assertions.assertFalse(pool2.closed.get());
+          Assertions.assertEquals(1, pool2.poolRef.refs.get());
+          Assertions.assertSame(pool2.poolRef,
+              TenantPgPoolImpl.pgPoolMap.get(pool2.poolRef.key));
+          context.completeNow();
+        })));
+  }
+
+  @Test
+  void testSettingsDiscarded(Vertx vertx, VertxTestContext context) {
+    TenantPgPoolImpl pool1 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    TenantPgPoolImpl.setTenantWeights(null);
+    TenantPgPoolImpl pool2 = TenantPgPoolImpl.tenantPgPool(vertx, "diku", "");
+    Assertions.assertSame(pool1.poolRef, pool2.poolRef);
+    Assertions.assertEquals(2, pool1.poolRef.refs.get());
+    // the references are held by the pools, not the discarded settings
+    pool1.close()
+        .compose(x -> pool2.close())
+        .onComplete(context.succeeding(x -> context.verify(() -> {
+          Assertions.assertEquals(0, pool2.poolRef.refs.get());
+          Assertions.assertTrue(TenantPgPoolImpl.pgPoolMap.isEmpty());
+          context.completeNow();
+        })));
+  }
+
   // Use assertNotEquals | assertEquals instead
   @SuppressWarnings({"java:S5785"})
   @Test
@@ -145,4 +427,30 @@ class TenantPgPoolImplTest {
     b = new TenantPgPoolImpl.ConnectKey(options);
     Assertions.assertNotEquals(a, b);
   }
+
+  @Test
+  void isAnalyzable() {
+    Assertions.assertTrue(TenantPgPoolImpl.isAnalyzable("SELECT * FROM a WHERE b = $1"));
+    Assertions.assertTrue(TenantPgPoolImpl.isAnalyzable(" (select 1)\nUNION (SELECT 2)"));
+    Assertions.assertTrue(TenantPgPoolImpl.isAnalyzable("SELECT format FROM a"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("SELECT * FROM a FOR UPDATE"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("SELECT * FROM a for\nshare"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("INSERT INTO a VALUES ($1)"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("UPDATE a SET b = 1"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable(
+        "WITH d AS (DELETE FROM a RETURNING *) SELECT * FROM d"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("SELECTED"));
+    Assertions.assertTrue(TenantPgPoolImpl.isAnalyzable(
+        "SELECT count(*) FROM (SELECT 1 FROM a WHERE lower(b) IN ('nextval(x)') LIMIT 11) x"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("SELECT nextval('seq')"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("SELECT * FROM a WHERE f (b)"));
+    Assertions.assertFalse(TenantPgPoolImpl.isAnalyzable("SELECT public.setval('s', 1)"));
+  }
+
+  @Test
+  void planRows() {
+    String plan = "[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Plan Rows\": 12345}}]";
+    Assertions.assertEquals(12345L, TenantPgPoolImpl.planRows(plan));
+    Assertions.assertEquals(12345L, TenantPgPoolImpl.planRows(new JsonArray(plan)));
+  }
 }
@@ -0,0 +1,204 @@
+package org.folio.tlib.util;
+
+import io.restassured.RestAssured;
+import io.restassured.builder.RequestSpecBuilder;
+import io.restassured.http.ContentType;
+import io.restassured.specification.RequestSpecification;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith({VertxExtension.class})
+class JsonStreamResponseTest {
+  static int port = 9231;
+
+  /**
+   * Stream of integers 0 .. count-1 that fails at the end if fail is set.
+   */
+  static class CountStream implements ReadStream<Integer> {
+    final Context context;
+    final Iterator<Integer> iterator;
+    final boolean fail;
+    Handler<Integer> handler;
+    Handler<Throwable> exceptionHandler;
+    Handler<Void> endHandler;
+    long demand = Long.MAX_VALUE;
+    boolean scheduled;
+    boolean done;
+
+    CountStream(Context context, int count, boolean fail) {
+      this.context = context;
+      this.iterator = IntStream.range(0, count).iterator();
+      this.fail = fail;
+    }
+
+    void schedule() {
+      if (!scheduled) {
+        scheduled = true;
+        context.runOnContext(x -> {
+          scheduled = false;
+          emit();
+        });
+      }
+    }
+
+    void emit() {
+      while (demand > 0 && iterator.hasNext()) {
+        if (demand != Long.MAX_VALUE) {
+          demand--;
+        }
+        handler.handle(iterator.next());
+      }
+      if (!iterator.hasNext() && !done) {
+        done = true;
+        if (fail) {
+          exceptionHandler.handle(new RuntimeException("stream failure"));
+        } else {
+          endHandler.handle(null);
+        }
+      }
+    }
+
+    @Override
+    public ReadStream<Integer> exceptionHandler(Handler<Throwable> handler) {
+      exceptionHandler = handler;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Integer> handler(Handler<Integer> handler) {
+      this.handler = handler;
+      if (handler != null) {
+        schedule();
+      }
+      return this;
+    }
+
+    @Override
+    public ReadStream<Integer> pause() {
+      demand = 0;
+      return this;
+    }
+
+    @Override
+    public ReadStream<Integer> resume() {
+      return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public ReadStream<Integer> fetch(long amount) {
+      demand = amount;
+      schedule();
+      return this;
+    }
+
+    @Override
+    public ReadStream<Integer> endHandler(Handler<Void> endHandler) {
+      this.endHandler = endHandler;
+      return this;
+    }
+  }
+
+  @BeforeAll
+  static void beforeAll(Vertx vertx, VertxTestContext context) {
+    RestAssured.enableLoggingOfRequestAndResponseIfValidationFails();
+    RestAssured.baseURI = "http://localhost:" + port;
+    RestAssured.requestSpecification = new RequestSpecBuilder().build();
+
+    vertx.createHttpServer()
+        .requestHandler(req -> {
+          int count = Integer.parseInt(req.getParam("count"));
+          boolean fail = req.getParam("fail") != null;
+          String property = req.getParam("property", "items");
+          CountStream stream = new CountStream(Vertx.currentContext(), count, fail);
+          JsonStreamResponse.writeArray(req.response(), property, stream, i -> {
+                if (i == 7 && req.getParam("mapperFail") != null) {
+                  throw new IllegalArgumentException("mapper failure");
+                }
+                return new JsonObject().put("id", i).put("title", "title " + i);
+              })
+              .onFailure(cause -> req.response().setStatusCode(500).end(cause.getMessage()));
+        })
+        .listen(port)
+        .onComplete(context.succeedingThenComplete());
+  }
+
+  @Test
+  void empty() {
+    RestAssured.given()
+        .queryParam("count", 0)
+        .get("/")
+        .then().statusCode(200)
+        .contentType(ContentType.JSON)
+        .header("Content-Length", is("12"))
+        .body(is("{\"items\":[]}"));
+  }
+
+  @Test
+  void small() {
+    RestAssured.given()
+        .queryParam("count", 3)
+        .queryParam("property", "a\"b")
+        .get("/")
+        .then().statusCode(200)
+        .contentType(ContentType.JSON)
+        .header("Transfer-Encoding", is(nullValue()))
+        .body(is("{\"a\\\"b\":[{\"id\":0,\"title\":\"title 0\"},"
+            + "{\"id\":1,\"title\":\"title 1\"},{\"id\":2,\"title\":\"title 2\"}]}"));
+  }
+
+  @Test
+  void large() {
+    RestAssured.given()
+        .queryParam("count", 100000)
+        .get("/")
+        .then().statusCode(200)
+        .contentType(ContentType.JSON)
+        .header("Transfer-Encoding", is("chunked"))
+        .body("items", hasSize(100000))
+        .body("items[0].id", is(0))
+        .body("items[99999].title", is("title 99999"));
+  }
+
+  @Test
+  void failBeforeFirstChunk() {
+    RestAssured.given()
+        .queryParam("count", 10)
+        .queryParam("fail", true)
+        .get("/")
+        .then().statusCode(500)
+        .body(is("stream failure"));
+  }
+
+  @Test
+  void mapperFailure() {
+    RestAssured.given()
+        .queryParam("count", 10)
+        .queryParam("mapperFail", true)
+        .get("/")
+        .then().statusCode(500)
+        .body(is("mapper failure"));
+  }
+
+  @Test
+  void failAfterFirstChunk() {
+    RequestSpecification request = RestAssured.given()
+        .queryParam("count", 100000)
+        .queryParam("fail", true);
+    assertThrows(Exception.class, () -> request.get("/").asString());
+  }
+}
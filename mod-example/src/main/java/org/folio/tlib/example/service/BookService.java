@@ -4,7 +4,6 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpHeaders;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
@@ -95,16 +94,7 @@ public class BookService implements RouterCreator, TenantInitHooks {
   private Future<Void> getBooks(Vertx vertx, RoutingContext ctx) {
     String tenant = TenantUtil.tenant(ctx);
     BookStorage storage = new BookStorage(vertx, tenant);
-    return storage.getBooks(ctx)
-        .map(books -> {
-          JsonArray ar = new JsonArray();
-          for (Book book : books) {
-            ar.add(JsonObject.mapFrom(book));
-          }
-          JsonObject result = new JsonObject().put("books", books);
-          HttpResponse.responseJson(ctx, 200).end(result.encode());
-          return null;
-        });
+    return storage.getBooks(ctx);
   }
 
   private Future<Void> getBook(Vertx vertx, RoutingContext ctx) {
@@ -6,23 +6,34 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.sqlclient.RowIterator;
-import io.vertx.sqlclient.templates.SqlTemplate;
+import io.vertx.sqlclient.Tuple;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 import org.folio.tlib.example.data.Book;
 import org.folio.tlib.postgres.PgCqlDefinition;
 import org.folio.tlib.postgres.PgCqlQuery;
+import org.folio.tlib.postgres.PgCqlRegistry;
 import org.folio.tlib.postgres.TenantPgPool;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
+import org.folio.tlib.util.JsonStreamResponse;
 
 /**
  * Database CRUD for {@link Book}.
  */
 public class BookStorage {
 
+  private static final PgCqlDefinition pgCqlDefinition = PgCqlRegistry.register("mytable",
+      PgCqlDefinition.create()
+          .withCache(1000)
+          .addField("cql.allRecords", new PgCqlFieldAlwaysMatches())
+          .addField("id", new PgCqlFieldUuid())
+          .addField("title", new PgCqlFieldText().withFullText()),
+      "cql.allRecords=1 sortby title", "id=" + UUID.randomUUID(), "title=a");
+
+  private static final int FETCH_SIZE = 100;
+
   TenantPgPool pool;
 
   public BookStorage(Vertx vertx, String tenant) {
@@ -46,7 +57,10 @@ public class BookStorage {
     Future<Void> future = pool.query(
             "CREATE TABLE IF NOT EXISTS " + getMyTable(pool)
                 + "(id UUID PRIMARY KEY, title TEXT, index_title TEXT)")
-        .execute().mapEmpty();
+        .execute()
+        // logs a warning for each index the CQL fields need that is not there
+        .compose(x -> pgCqlDefinition.getMissingIndexes(pool, "mytable"))
+        .mapEmpty();
     JsonArray parameters = tenantAttributes.getJsonArray("parameters");
     if (parameters != null) {
       for (int i = 0; i < parameters.size(); i++) {
@@ -74,10 +88,9 @@ public class BookStorage {
    * @return async with Book == null if not found
    */
   public Future<Book> getBook(UUID id) {
-    return SqlTemplate.forQuery(pool.getPool(), "SELECT * FROM " + getMyTable(pool)
-            + " WHERE id=#{id}")
-        .mapTo(Book::fromRow)
-        .execute(Map.of("id", id))
+    return pool.preparedQuery("SELECT * FROM " + getMyTable(pool) + " WHERE id=$1")
+        .mapping(Book::fromRow)
+        .execute(Tuple.of(id))
         .map(rowSet -> {
           RowIterator<Book> iterator = rowSet.iterator();
           return iterator.hasNext() ? iterator.next() : null;
@@ -91,10 +104,8 @@ public class BookStorage {
    * @return async result.
    */
   public Future<Void> postBook(Book book) {
-    return SqlTemplate.forUpdate(pool.getPool(), "INSERT INTO " + getMyTable(pool)
-            + " VALUES (#{id},#{title},#{indexTitle})")
-        .mapFrom(Book.class)
-        .execute(book)
+    return pool.preparedQuery("INSERT INTO " + getMyTable(pool) + " VALUES ($1,$2,$3)")
+        .execute(Tuple.of(book.getId(), book.getTitle(), book.getIndexTitle()))
         .mapEmpty();
   }
 
@@ -103,18 +114,14 @@ public class BookStorage {
    *
    * @param ctx routing context from HTTP request
    * @param pool PostgresQL Pool
+   * @param tuple receives the values for the query parameters
    * @return async result
    */
-  private String createQueryMyTable(RoutingContext ctx, TenantPgPool pool) {
-    PgCqlDefinition pgCqlDefinition = PgCqlDefinition.create();
-    pgCqlDefinition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
-    pgCqlDefinition.addField("id", new PgCqlFieldUuid());
-    pgCqlDefinition.addField("title", new PgCqlFieldText().withFullText());
-
+  private String createQueryMyTable(RoutingContext ctx, TenantPgPool pool, Tuple tuple) {
     List<String> query = ctx.queryParam("query");
     PgCqlQuery pgCqlQuery = pgCqlDefinition.parse(query.isEmpty() ? null : query.get(0));
     String sql = "SELECT * FROM " + getMyTable(pool);
-    String where = pgCqlQuery.getWhereClause();
+    String where = pgCqlQuery.getWhereClause(tuple);
     if (where != null) {
       sql = sql + " WHERE " + where;
     }
@@ -129,13 +136,17 @@ public class BookStorage {
   /**
    * Get books with optional CQL query.
    *
-   * @param ctx routing context for HTTP request
-   * @return async result with books list
+   * <p>The books are streamed from the database to the HTTP response, so only a
+   * few rows are held in memory regardless of the size of the result.
+   *
+   * @param ctx routing context for HTTP request; the response is written
+   * @return async result; failed if no response has been written
    */
-  public Future<List<Book>> getBooks(RoutingContext ctx) {
-    String sql = createQueryMyTable(ctx, pool);
-    return pool.getPool().query(sql).execute()
-        .map(rowSet -> rowSet.stream().map(Book::fromRow).toList());
+  public Future<Void> getBooks(RoutingContext ctx) {
+    Tuple tuple = Tuple.tuple();
+    String sql = createQueryMyTable(ctx, pool, tuple);
+    return JsonStreamResponse.writeRows(ctx.response(), "books", pool, sql, tuple,
+        FETCH_SIZE, row -> JsonObject.mapFrom(Book.fromRow(row)));
   }
 
 }